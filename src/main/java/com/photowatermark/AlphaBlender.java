@@ -0,0 +1,377 @@
+package com.photowatermark;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * 图片水印混合内核 - 直接在目标图像的DataBufferInt/DataBufferByte数组上做SRC_OVER混合，
+ * 绕过Java2D针对各种像素类型组合的通用循环。水印像素预乘alpha后缓存，并记录每行的非透明区段，
+ * 完全透明的部分直接跳过。
+ *
+ * 支持的目标类型：TYPE_INT_ARGB、TYPE_INT_RGB、TYPE_3BYTE_BGR；图形上下文只能有整数平移和矩形裁剪。
+ * 其他情况返回false，由调用方退回Graphics2D.drawImage。
+ */
+final class AlphaBlender {
+    // 与Java2D一致的8位除法表：DIV8[a][b] ≈ b*255/a（仅用于带alpha的非预乘目标）
+    private static final byte[] DIV8 = new byte[256 * 256];
+
+    static {
+        for (int i = 1; i < 256; i++) {
+            long inc = ((0xffL << 24) + (i / 2)) / i;
+            long val = 1 << 23;
+            for (int j = 0; j < i; j++) {
+                DIV8[(i << 8) + j] = (byte) (val >> 24);
+                val += inc;
+            }
+            for (int j = i; j < 256; j++) {
+                DIV8[(i << 8) + j] = (byte) 0xff;
+            }
+        }
+    }
+
+    private AlphaBlender() {
+    }
+
+    /**
+     * 8位乘法 a*b/255（四舍五入），结果与Java2D的乘法表一致
+     */
+    private static int mul8(int a, int b) {
+        return ((a * b + 128) * 257) >> 16;
+    }
+
+    private static int div8(int a, int b) {
+        return DIV8[(a << 8) + b] & 0xff;
+    }
+
+    /**
+     * 把水印以指定透明度混合到目标图像的(x, y)处（用户坐标）。
+     * 目标类型或图形上下文状态不支持时不做任何修改并返回false
+     */
+    static boolean blend(BufferedImage target, Graphics2D g2d, Source source, int x, int y, float opacity) {
+        if (target == null) {
+            return false;
+        }
+        int targetType = target.getType();
+        if (targetType != BufferedImage.TYPE_INT_ARGB
+                && targetType != BufferedImage.TYPE_INT_RGB
+                && targetType != BufferedImage.TYPE_3BYTE_BGR) {
+            return false;
+        }
+
+        // 只处理整数平移
+        AffineTransform transform = g2d.getTransform();
+        if ((transform.getType() & ~AffineTransform.TYPE_TRANSLATION) != 0) {
+            return false;
+        }
+        double tx = transform.getTranslateX();
+        double ty = transform.getTranslateY();
+        if (tx != Math.rint(tx) || ty != Math.rint(ty)) {
+            return false;
+        }
+        int translateX = (int) tx;
+        int translateY = (int) ty;
+
+        // 计算设备坐标中的混合区域：水印范围 ∩ 裁剪区域 ∩ 目标图像
+        Rectangle region = new Rectangle(x + translateX, y + translateY, source.width, source.height)
+                .intersection(new Rectangle(0, 0, target.getWidth(), target.getHeight()));
+        Shape clip = g2d.getClip();
+        if (clip != null) {
+            if (!(clip instanceof Rectangle2D)) {
+                return false;
+            }
+            Rectangle2D clipRect = (Rectangle2D) clip;
+            if (!isIntegral(clipRect)) {
+                return false;
+            }
+            region = region.intersection(new Rectangle(
+                    (int) clipRect.getX() + translateX,
+                    (int) clipRect.getY() + translateY,
+                    (int) clipRect.getWidth(),
+                    (int) clipRect.getHeight()));
+        }
+
+        int extraAlpha = (int) (opacity * 255 + 0.5f);
+        if (region.isEmpty() || extraAlpha <= 0) {
+            return true;
+        }
+        extraAlpha = Math.min(extraAlpha, 255);
+
+        int originX = x + translateX;
+        int originY = y + translateY;
+        WritableRaster raster = target.getRaster();
+        SampleModel sampleModel = raster.getSampleModel();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        int rasterX = raster.getSampleModelTranslateX();
+        int rasterY = raster.getSampleModelTranslateY();
+
+        if (targetType == BufferedImage.TYPE_3BYTE_BGR) {
+            if (!(sampleModel instanceof ComponentSampleModel) || !(dataBuffer instanceof DataBufferByte)) {
+                return false;
+            }
+            blendBytes((DataBufferByte) dataBuffer, (ComponentSampleModel) sampleModel, rasterX, rasterY,
+                    source, originX, originY, region, extraAlpha);
+        } else {
+            if (!(sampleModel instanceof SinglePixelPackedSampleModel) || !(dataBuffer instanceof DataBufferInt)) {
+                return false;
+            }
+            blendInts((DataBufferInt) dataBuffer, (SinglePixelPackedSampleModel) sampleModel, rasterX, rasterY,
+                    source, originX, originY, region, extraAlpha, targetType == BufferedImage.TYPE_INT_ARGB);
+        }
+        return true;
+    }
+
+    private static boolean isIntegral(Rectangle2D rect) {
+        return rect.getX() == Math.rint(rect.getX())
+                && rect.getY() == Math.rint(rect.getY())
+                && rect.getWidth() == Math.rint(rect.getWidth())
+                && rect.getHeight() == Math.rint(rect.getHeight());
+    }
+
+    /**
+     * 混合到TYPE_INT_ARGB（非预乘）或TYPE_INT_RGB目标
+     */
+    private static void blendInts(
+            DataBufferInt dataBuffer,
+            SinglePixelPackedSampleModel sampleModel,
+            int rasterX,
+            int rasterY,
+            Source source,
+            int originX,
+            int originY,
+            Rectangle region,
+            int extraAlpha,
+            boolean targetHasAlpha
+    ) {
+        int[] dst = dataBuffer.getData();
+        int dstStride = sampleModel.getScanlineStride();
+        int dstOffset = dataBuffer.getOffset();
+        int[] src = source.getPixels(extraAlpha);
+
+        for (int row = region.y; row < region.y + region.height; row++) {
+            int srcRow = row - originY;
+            int[] runs = source.runs[srcRow];
+            int dstRow = dstOffset + (row - rasterY) * dstStride - rasterX;
+
+            for (int r = 0; r < runs.length; r += 3) {
+                // 非透明区段与混合区域的交集
+                int start = Math.max(runs[r] + originX, region.x);
+                int end = Math.min(runs[r + 1] + originX, region.x + region.width);
+                if (start >= end) {
+                    continue;
+                }
+                int si = srcRow * source.width + start - originX;
+                int di = dstRow + start;
+
+                if (runs[r + 2] != 0 && extraAlpha == 255) {
+                    // 完全不透明的区段直接整段拷贝
+                    System.arraycopy(src, si, dst, di, end - start);
+                    continue;
+                }
+
+                for (int col = start; col < end; col++, si++, di++) {
+                    int sp = src[si];
+                    int srcA = sp >>> 24;
+                    if (srcA == 255) {
+                        dst[di] = sp;
+                        continue;
+                    }
+                    if (srcA == 0) {
+                        continue;
+                    }
+
+                    int dp = dst[di];
+                    int dstA = targetHasAlpha ? dp >>> 24 : 255;
+                    int dstF = mul8(255 - srcA, dstA);
+                    int resA = srcA + dstF;
+                    int resR = ((sp >> 16) & 0xff) + mul8(dstF, (dp >> 16) & 0xff);
+                    int resG = ((sp >> 8) & 0xff) + mul8(dstF, (dp >> 8) & 0xff);
+                    int resB = (sp & 0xff) + mul8(dstF, dp & 0xff);
+                    if (resA < 255) {
+                        // 目标为非预乘格式，需要除以alpha还原
+                        resR = div8(resA, resR);
+                        resG = div8(resA, resG);
+                        resB = div8(resA, resB);
+                    }
+                    dst[di] = (resA << 24) | (resR << 16) | (resG << 8) | resB;
+                }
+            }
+        }
+    }
+
+    /**
+     * 混合到TYPE_3BYTE_BGR目标（不透明）
+     */
+    private static void blendBytes(
+            DataBufferByte dataBuffer,
+            ComponentSampleModel sampleModel,
+            int rasterX,
+            int rasterY,
+            Source source,
+            int originX,
+            int originY,
+            Rectangle region,
+            int extraAlpha
+    ) {
+        byte[] dst = dataBuffer.getData();
+        int dstStride = sampleModel.getScanlineStride();
+        int pixelStride = sampleModel.getPixelStride();
+        int[] bandOffsets = sampleModel.getBandOffsets();
+        int offsetR = bandOffsets[0];
+        int offsetG = bandOffsets[1];
+        int offsetB = bandOffsets[2];
+        int dstOffset = dataBuffer.getOffset();
+        int[] src = source.getPixels(extraAlpha);
+
+        for (int row = region.y; row < region.y + region.height; row++) {
+            int srcRow = row - originY;
+            int[] runs = source.runs[srcRow];
+            int dstRow = dstOffset + (row - rasterY) * dstStride - rasterX * pixelStride;
+
+            for (int r = 0; r < runs.length; r += 3) {
+                int start = Math.max(runs[r] + originX, region.x);
+                int end = Math.min(runs[r + 1] + originX, region.x + region.width);
+                int si = srcRow * source.width + start - originX;
+                int di = dstRow + start * pixelStride;
+
+                for (int col = start; col < end; col++, si++, di += pixelStride) {
+                    int sp = src[si];
+                    int srcA = sp >>> 24;
+                    if (srcA == 0) {
+                        continue;
+                    }
+
+                    int resR = (sp >> 16) & 0xff;
+                    int resG = (sp >> 8) & 0xff;
+                    int resB = sp & 0xff;
+                    if (srcA < 255) {
+                        int dstF = 255 - srcA;
+                        resR += mul8(dstF, dst[di + offsetR] & 0xff);
+                        resG += mul8(dstF, dst[di + offsetG] & 0xff);
+                        resB += mul8(dstF, dst[di + offsetB] & 0xff);
+                    }
+                    dst[di + offsetR] = (byte) resR;
+                    dst[di + offsetG] = (byte) resG;
+                    dst[di + offsetB] = (byte) resB;
+                }
+            }
+        }
+    }
+
+    /**
+     * 预处理后的水印像素：预乘alpha的ARGB数组，以及每行非透明区段[开始, 结束, 是否完全不透明]的列表
+     */
+    static final class Source {
+        private final int width;
+        private final int height;
+        private final int[] pixels;
+        private final int[][] runs;
+        // 最近一次使用的透明度及按其缩放后的像素，透明度通常很少变化
+        private volatile ScaledPixels scaledPixels;
+
+        private Source(int width, int height, int[] pixels, int[][] runs) {
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+            this.runs = runs;
+        }
+
+        static Source of(BufferedImage image) {
+            int width = image.getWidth();
+            int height = image.getHeight();
+            // 预乘格式的图片直接复制像素，无需转换
+            boolean premultiplied = image.getType() == BufferedImage.TYPE_INT_ARGB_PRE;
+            int[] pixels = premultiplied
+                    ? (int[]) image.getRaster().getDataElements(0, 0, width, height, null)
+                    : image.getRGB(0, 0, width, height, null, 0, width);
+            int[][] runs = new int[height][];
+            int[] rowRuns = new int[(width + 1) * 3];
+
+            for (int y = 0; y < height; y++) {
+                int count = 0;
+                int runStart = -1;
+                boolean runOpaque = true;
+                for (int x = 0; x < width; x++) {
+                    int i = y * width + x;
+                    int argb = pixels[i];
+                    int alpha = argb >>> 24;
+                    if (!premultiplied && alpha != 0 && alpha != 255) {
+                        pixels[i] = (alpha << 24)
+                                | (mul8(alpha, (argb >> 16) & 0xff) << 16)
+                                | (mul8(alpha, (argb >> 8) & 0xff) << 8)
+                                | mul8(alpha, argb & 0xff);
+                    }
+
+                    // 区段在透明度类别（透明、半透明、不透明）变化处断开
+                    boolean opaque = alpha == 255;
+                    if (runStart >= 0 && (alpha == 0 || opaque != runOpaque)) {
+                        rowRuns[count++] = runStart;
+                        rowRuns[count++] = x;
+                        rowRuns[count++] = runOpaque ? 1 : 0;
+                        runStart = -1;
+                    }
+                    if (alpha != 0 && runStart < 0) {
+                        runStart = x;
+                        runOpaque = opaque;
+                    }
+                }
+                if (runStart >= 0) {
+                    rowRuns[count++] = runStart;
+                    rowRuns[count++] = width;
+                    rowRuns[count++] = runOpaque ? 1 : 0;
+                }
+                runs[y] = Arrays.copyOf(rowRuns, count);
+            }
+            return new Source(width, height, pixels, runs);
+        }
+
+        /**
+         * 获取应用了透明度的预乘像素
+         */
+        private int[] getPixels(int extraAlpha) {
+            if (extraAlpha == 255) {
+                return pixels;
+            }
+            ScaledPixels scaled = scaledPixels;
+            if (scaled == null || scaled.extraAlpha != extraAlpha) {
+                int[] result = new int[pixels.length];
+                for (int i = 0; i < pixels.length; i++) {
+                    int p = pixels[i];
+                    result[i] = (mul8(extraAlpha, p >>> 24) << 24)
+                            | (mul8(extraAlpha, (p >> 16) & 0xff) << 16)
+                            | (mul8(extraAlpha, (p >> 8) & 0xff) << 8)
+                            | mul8(extraAlpha, p & 0xff);
+                }
+                scaled = new ScaledPixels(extraAlpha, result);
+                scaledPixels = scaled;
+            }
+            return scaled.pixels;
+        }
+
+        long getSizeInBytes() {
+            ScaledPixels scaled = scaledPixels;
+            return (long) pixels.length * 4 + (scaled == null ? 0 : (long) scaled.pixels.length * 4);
+        }
+    }
+
+    private static final class ScaledPixels {
+        private final int extraAlpha;
+        private final int[] pixels;
+
+        ScaledPixels(int extraAlpha, int[] pixels) {
+            this.extraAlpha = extraAlpha;
+            this.pixels = pixels;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.photowatermark;
+
+/**
+ * 三次盒式模糊 - 用三次盒式滤波近似高斯模糊，水平、垂直分开处理，
+ * 每次滤波使用滑动窗口累加，耗时与模糊半径无关。只用于图章的alpha遮罩，不处理整张图片
+ */
+final class BoxBlur {
+    private static final int PASSES = 3;
+
+    private BoxBlur() {
+    }
+
+    /**
+     * 近似标准差为sigma的高斯模糊所需的三个盒式滤波半径
+     */
+    static int[] boxRadii(double sigma) {
+        int[] radii = new int[PASSES];
+        if (sigma <= 0) {
+            return radii;
+        }
+
+        // 理想的盒宽度，取相邻的两个奇数宽度组合，使总方差最接近sigma^2
+        double idealWidth = Math.sqrt(12 * sigma * sigma / PASSES + 1);
+        int lower = (int) Math.floor(idealWidth);
+        if (lower % 2 == 0) {
+            lower--;
+        }
+        int upper = lower + 2;
+        double idealLowerCount = (12 * sigma * sigma - PASSES * lower * lower - 4 * PASSES * lower - 3 * PASSES)
+                / (-4.0 * lower - 4);
+        long lowerCount = Math.round(idealLowerCount);
+
+        for (int i = 0; i < PASSES; i++) {
+            radii[i] = ((i < lowerCount ? lower : upper) - 1) / 2;
+        }
+        return radii;
+    }
+
+    /**
+     * 模糊向外扩散的像素数（三个滤波半径之和）
+     */
+    static int extent(double sigma) {
+        int extent = 0;
+        for (int radius : boxRadii(sigma)) {
+            extent += radius;
+        }
+        return extent;
+    }
+
+    /**
+     * 原地模糊按行存储的alpha数组（0-255），边界外视为透明
+     */
+    static void blur(int[] alpha, int width, int height, double sigma) {
+        int[] buffer = new int[alpha.length];
+        for (int radius : boxRadii(sigma)) {
+            if (radius <= 0) {
+                continue;
+            }
+            // 水平方向：alpha -> buffer；垂直方向：buffer -> alpha
+            blurLines(alpha, buffer, height, width, width, 1, radius);
+            blurLines(buffer, alpha, width, height, 1, width, radius);
+        }
+    }
+
+    /**
+     * 对lineCount条线分别做一维盒式滤波；lineStep为相邻两条线起点的间距，pixelStep为线内相邻像素的间距
+     */
+    private static void blurLines(
+            int[] source,
+            int[] target,
+            int lineCount,
+            int lineLength,
+            int lineStep,
+            int pixelStep,
+            int radius
+    ) {
+        int window = radius * 2 + 1;
+        int half = window / 2;
+
+        for (int line = 0; line < lineCount; line++) {
+            int start = line * lineStep;
+            int sum = 0;
+
+            // 初始窗口：[-radius, radius]，越界部分为0
+            for (int i = 0; i <= Math.min(radius, lineLength - 1); i++) {
+                sum += source[start + i * pixelStep];
+            }
+
+            for (int i = 0; i < lineLength; i++) {
+                target[start + i * pixelStep] = (sum + half) / window;
+
+                int incoming = i + radius + 1;
+                if (incoming < lineLength) {
+                    sum += source[start + incoming * pixelStep];
+                }
+                int outgoing = i - radius;
+                if (outgoing >= 0) {
+                    sum -= source[start + outgoing * pixelStep];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.photowatermark;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * 派生版本渲染器 - 一次解码生成导出配置中的所有尺寸：不带水印的原图按尺寸从大到小逐级缩小，
+ * 每一级都从上一级缩小而来；水印在每个目标尺寸上按比例缩放后直接绘制，不随图片一起被缩小，
+ * 小尺寸版本中的细文字依然清晰。尺寸和图像类型都相同的版本（如同一尺寸的不同后缀）只渲染一次
+ */
+public class DerivativeRenderer {
+    private final WatermarkCompositor compositor;
+    // 缩小的中间结果和各版本的目标缓冲区从缓冲池取得
+    private final ImageBufferPool bufferPool;
+
+    public DerivativeRenderer(WatermarkCompositor compositor) {
+        this(compositor, ImageBufferPool.getDefault());
+    }
+
+    public DerivativeRenderer(WatermarkCompositor compositor, ImageBufferPool bufferPool) {
+        this.compositor = compositor;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * 渲染所有版本，返回顺序与配置中的输出顺序一致（原图不会被修改）。
+     * 返回的图像从缓冲池取得，尺寸和类型相同的版本共用同一个图像，用完后可以归还给缓冲池
+     */
+    public List<BufferedImage> render(
+            BufferedImage originalImage,
+            List<? extends WatermarkSpec> specs,
+            ExportProfile profile,
+            RenderQuality quality
+    ) {
+        int imageWidth = originalImage.getWidth();
+        int imageHeight = originalImage.getHeight();
+        List<ExportProfile.Output> outputs = profile.getOutputs();
+
+        // 按缩放比例从大到小处理，每一级的底图从上一级缩小
+        List<Integer> order = IntStream.range(0, outputs.size()).boxed()
+                .sorted(Comparator.comparingDouble(
+                        (Integer i) -> outputs.get(i).getScaleFactor(imageWidth, imageHeight)).reversed())
+                .collect(Collectors.toList());
+
+        BufferedImage[] results = new BufferedImage[outputs.size()];
+        // 尺寸和图像类型 -> 已渲染的版本
+        Map<String, BufferedImage> rendered = new HashMap<>();
+        BufferedImage base = originalImage;
+        for (int index : order) {
+            ExportProfile.Output output = outputs.get(index);
+            double factor = output.getScaleFactor(imageWidth, imageHeight);
+            int width = Math.max(1, (int) Math.round(imageWidth * factor));
+            int height = Math.max(1, (int) Math.round(imageHeight * factor));
+            if (width != base.getWidth() || height != base.getHeight()) {
+                BufferedImage previous = base;
+                base = downscale(base, width, height, quality, bufferPool);
+                if (previous != originalImage) {
+                    bufferPool.release(previous);
+                }
+            }
+
+            int imageType = WatermarkCompositor.selectImageType(base, output.getFormatName());
+            String key = width + "x" + height + ":" + imageType;
+            BufferedImage result = rendered.get(key);
+            if (result == null) {
+                result = bufferPool.acquire(width, height, imageType);
+                compositor.composite(base, result, scaleSpecs(specs, factor), quality);
+                rendered.put(key, result);
+            }
+            results[index] = result;
+        }
+        if (base != originalImage) {
+            bufferPool.release(base);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * 渲染指定尺寸的单个版本：先把原图缩放到目标尺寸，再按比例缩放水印参数后在目标分辨率上绘制，
+     * 耗时与输出像素数成正比，水印也不会被缩放模糊。水印的缩放比例按宽度计算。
+     * 返回的图像从缓冲池取得，用完后可以归还给缓冲池
+     */
+    public BufferedImage render(
+            BufferedImage originalImage,
+            List<? extends WatermarkSpec> specs,
+            int width,
+            int height,
+            String formatName,
+            RenderQuality quality
+    ) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("输出尺寸必须大于0: " + width + "x" + height);
+        }
+        BufferedImage base = originalImage;
+        if (width != originalImage.getWidth() || height != originalImage.getHeight()) {
+            base = downscale(originalImage, width, height, quality, bufferPool);
+        }
+        try {
+            BufferedImage result = bufferPool.acquire(width, height, WatermarkCompositor.selectImageType(base, formatName));
+            double factor = width / (double) originalImage.getWidth();
+            compositor.composite(base, result, scaleSpecs(specs, factor), quality);
+            return result;
+        } finally {
+            if (base != originalImage) {
+                bufferPool.release(base);
+            }
+        }
+    }
+
+    /**
+     * 读取图片（只解码一次），渲染所有版本并写入输出目录，返回输出文件，顺序与配置中的输出顺序一致。
+     * 输出文件名为原文件名（不含扩展名）加上版本后缀和格式扩展名
+     */
+    public List<File> export(
+            File inputFile,
+            File outputDir,
+            List<? extends WatermarkSpec> specs,
+            ExportProfile profile,
+            RenderQuality quality
+    ) throws IOException {
+        String name = inputFile.getName();
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+
+        List<File> outputFiles = new ArrayList<>(profile.getOutputs().size());
+        for (ExportProfile.Output output : profile.getOutputs()) {
+            File outputFile = new File(outputDir, baseName + output.getSuffix() + "." + output.getFormatName());
+            if (outputFile.getCanonicalFile().equals(inputFile.getCanonicalFile())) {
+                throw new IOException("输出文件会覆盖原图: " + outputFile.getAbsolutePath());
+            }
+            outputFiles.add(outputFile);
+        }
+
+        BufferedImage originalImage = FileUtils.readImage(inputFile, bufferPool);
+        if (originalImage == null) {
+            throw new IOException("无法读取图片: " + inputFile.getAbsolutePath());
+        }
+
+        List<BufferedImage> images = render(originalImage, specs, profile, quality);
+        bufferPool.release(originalImage);
+        try {
+            for (int i = 0; i < outputFiles.size(); i++) {
+                ExportProfile.Output output = profile.getOutputs().get(i);
+                FileUtils.writeImage(images.get(i), output.getFormatName(), outputFiles.get(i), output.getJpegQuality());
+            }
+        } finally {
+            // 共用的图像只归还一次，避免归还后又被其他线程取走时再次放入池中
+            Set<BufferedImage> released = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (BufferedImage image : images) {
+                if (released.add(image)) {
+                    bufferPool.release(image);
+                }
+            }
+        }
+        return outputFiles;
+    }
+
+    /**
+     * 把水印参数按比例缩放到目标尺寸；比例为1时原样返回
+     */
+    static List<? extends WatermarkSpec> scaleSpecs(List<? extends WatermarkSpec> specs, double factor) {
+        if (factor == 1.0) {
+            return specs;
+        }
+        List<WatermarkSpec> scaled = new ArrayList<>(specs.size());
+        for (WatermarkSpec spec : specs) {
+            scaled.add(spec.scaled(factor));
+        }
+        return scaled;
+    }
+
+    /**
+     * 把图片缩小到指定尺寸：每一步最多缩小一半，双线性和双三次插值只采样相邻像素，
+     * 一次缩小过多会跳过大部分像素而产生锯齿。恰好缩小一半时双线性插值即为2x2像素的平均值，
+     * 中间各步和恰好缩小一半的最后一步都使用双线性插值，其他最后一步使用渲染质量对应的插值方式。
+     * 目标尺寸大于原图时一步放大，同样使用双线性插值：水印在放大后的分辨率上绘制，
+     * 双三次插值只让照片内容略微锐利，耗时却是双线性的数倍。
+     * 堆外原图（OffHeapImages）先按行带批量拷贝到池中的堆内缓冲区再缩放，Java2D对自定义数据缓冲区只能逐像素采样。
+     * 结果和中间各步的缓冲区从缓冲池取得，中间结果用完后立即归还
+     */
+    static BufferedImage downscale(
+            BufferedImage source, 
+            int width, 
+            int height, 
+            RenderQuality quality, 
+            ImageBufferPool bufferPool
+    ) {
+        int imageType = WatermarkCompositor.selectImageType(source, null);
+        BufferedImage current = source;
+        if (OffHeapImages.isOffHeap(source)) {
+            current = bufferPool.acquire(source.getWidth(), source.getHeight(), imageType);
+            Graphics2D g2d = current.createGraphics();
+            g2d.setComposite(AlphaComposite.Src);
+            OffHeapImages.draw(g2d, source);
+            g2d.dispose();
+        }
+        do {
+            int stepWidth = Math.max(width, (current.getWidth() + 1) / 2);
+            int stepHeight = Math.max(height, (current.getHeight() + 1) / 2);
+            boolean lastStep = stepWidth == width && stepHeight == height;
+            boolean halving = stepWidth * 2 == current.getWidth() && stepHeight * 2 == current.getHeight();
+            boolean upscaling = stepWidth > current.getWidth() || stepHeight > current.getHeight();
+            BufferedImage next = bufferPool.acquire(stepWidth, stepHeight, imageType);
+            Graphics2D g2d = next.createGraphics();
+            quality.applyTo(g2d);
+            if ((!lastStep || halving || upscaling) && quality != RenderQuality.DRAFT) {
+                g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            }
+            g2d.setComposite(AlphaComposite.Src);
+            g2d.drawImage(current, 0, 0, stepWidth, stepHeight, null);
+            g2d.dispose();
+            if (current != source) {
+                bufferPool.release(current);
+            }
+            current = next;
+        } while (current.getWidth() != width || current.getHeight() != height);
+        return current;
+    }
+}
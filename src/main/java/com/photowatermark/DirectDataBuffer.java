@@ -0,0 +1,34 @@
+package com.photowatermark;
+
+import java.awt.image.DataBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * 堆外数据缓冲区 - 每个元素是一个打包的int像素，存放在直接内存或内存映射文件中，
+ * 可以作为WritableRaster的数据缓冲区，Java2D按元素读写（比堆内数组慢，大块拷贝应使用getPixels）
+ */
+final class DirectDataBuffer extends DataBuffer {
+    private final IntBuffer pixels;
+
+    DirectDataBuffer(IntBuffer pixels) {
+        super(TYPE_INT, pixels.capacity());
+        this.pixels = pixels;
+    }
+
+    /**
+     * 像素缓冲区本身；批量读写时应使用duplicate()得到独立的位置，避免多个线程互相干扰
+     */
+    IntBuffer getPixels() {
+        return pixels;
+    }
+
+    @Override
+    public int getElem(int bank, int i) {
+        return pixels.get(i);
+    }
+
+    @Override
+    public void setElem(int bank, int i, int val) {
+        pixels.put(i, val);
+    }
+}
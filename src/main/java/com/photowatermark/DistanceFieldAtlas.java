@@ -0,0 +1,476 @@
+package com.photowatermark;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 有向距离场字形图集 - 每种字体只在基准字号下把用到的字形生成一次距离场，
+ * 之后任意字号的文本（含描边和阴影）都通过对距离场采样得到，不再按字号重新栅格化。
+ * 字形按需生成并缓存，线程安全。
+ *
+ * 距离场放大倍数过高时拐角会变圆，字号过小时描边精度下降，因此只用于中等字号下
+ * 带描边和阴影的文本（轮廓方式需要对描边轮廓做面积运算，最慢），见TextWatermarkProcessor。
+ */
+final class DistanceFieldAtlas {
+    // 生成距离场的基准字号
+    static final int BASE_SIZE = 64;
+    // 距离场在字形轮廓两侧记录的范围（基准字号下的像素）
+    private static final int SPREAD = 8;
+    // 最多缓存的字体图集数量
+    private static final int MAX_ATLASES = 16;
+
+    // 与字形轮廓缓存一致的渲染设置（抗锯齿、整数度量）
+    private static final FontRenderContext LAYOUT_CONTEXT = new FontRenderContext(null, true, false);
+
+    private static final LinkedHashMap<Font, DistanceFieldAtlas> ATLASES = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Font baseFont;
+    private final Map<Integer, Glyph> glyphs = new HashMap<>();
+
+    private DistanceFieldAtlas(Font baseFont) {
+        this.baseFont = baseFont;
+    }
+
+    /**
+     * 获取字体的图集；baseFont应为基准字号的字体
+     */
+    static DistanceFieldAtlas forFont(Font baseFont) {
+        synchronized (ATLASES) {
+            DistanceFieldAtlas atlas = ATLASES.get(baseFont);
+            if (atlas == null) {
+                atlas = new DistanceFieldAtlas(baseFont);
+                ATLASES.put(baseFont, atlas);
+                Iterator<DistanceFieldAtlas> iterator = ATLASES.values().iterator();
+                while (ATLASES.size() > MAX_ATLASES && iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+            return atlas;
+        }
+    }
+
+    /**
+     * 排版文本：字形位置取自目标字号的字体（与按轮廓绘制时的整数度量一致，逐字累积的前进量不会偏离），
+     * 字形本身由基准字号的距离场缩放得到
+     */
+    Layout layout(String text, Font font) {
+        double scale = font.getSize2D() / baseFont.getSize2D();
+        GlyphVector glyphVector = font.createGlyphVector(LAYOUT_CONTEXT, text);
+        GlyphVector baseVector = null;
+        List<PlacedGlyph> placed = new ArrayList<>(glyphVector.getNumGlyphs());
+        Rectangle2D bounds = null;
+
+        for (int i = 0; i < glyphVector.getNumGlyphs(); i++) {
+            Glyph glyph = getCachedGlyph(glyphVector.getGlyphCode(i));
+            if (glyph == null) {
+                if (baseVector == null) {
+                    baseVector = baseFont.createGlyphVector(LAYOUT_CONTEXT, text);
+                }
+                glyph = createGlyph(baseVector, i);
+            }
+            if (glyph.field == null) {
+                continue; // 空白字形
+            }
+            // 换算到基准字号的坐标，采样时再统一按scale缩放
+            Point2D position = glyphVector.getGlyphPosition(i);
+            double x = position.getX() / scale;
+            double y = position.getY() / scale;
+            placed.add(new PlacedGlyph(glyph, x, y));
+
+            Rectangle2D glyphBounds = new Rectangle2D.Double(
+                    (x + glyph.bounds.getX()) * scale,
+                    (y + glyph.bounds.getY()) * scale,
+                    glyph.bounds.getWidth() * scale,
+                    glyph.bounds.getHeight() * scale);
+            bounds = bounds == null ? glyphBounds : bounds.createUnion(glyphBounds);
+        }
+
+        return new Layout(Collections.unmodifiableList(placed), scale,
+                bounds != null ? bounds : new Rectangle2D.Double());
+    }
+
+    private Glyph getCachedGlyph(int glyphCode) {
+        synchronized (glyphs) {
+            return glyphs.get(glyphCode);
+        }
+    }
+
+    /**
+     * 由基准字号的字形轮廓生成距离场并缓存
+     */
+    private Glyph createGlyph(GlyphVector baseVector, int index) {
+        // 在锁外生成距离场，并发时可能重复生成，结果相同
+        Point2D position = baseVector.getGlyphPosition(index);
+        Shape outline = AffineTransform.getTranslateInstance(-position.getX(), -position.getY())
+                .createTransformedShape(baseVector.getGlyphOutline(index));
+        Glyph glyph = Glyph.create(outline);
+
+        synchronized (glyphs) {
+            glyphs.put(baseVector.getGlyphCode(index), glyph);
+        }
+        return glyph;
+    }
+
+    /**
+     * 单个字形的距离场：以字形原点为坐标原点，(x, y)为距离场左上角，内部为正、外部为负（基准字号下的像素）
+     */
+    private static final class Glyph {
+        private final float[] field;
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+        private final Rectangle2D bounds;
+
+        private Glyph(float[] field, int x, int y, int width, int height, Rectangle2D bounds) {
+            this.field = field;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.bounds = bounds;
+        }
+
+        static Glyph create(Shape outline) {
+            Rectangle2D bounds = outline.getBounds2D();
+            if (bounds.isEmpty()) {
+                return new Glyph(null, 0, 0, 0, 0, bounds);
+            }
+
+            int x = (int) Math.floor(bounds.getMinX()) - SPREAD - 1;
+            int y = (int) Math.floor(bounds.getMinY()) - SPREAD - 1;
+            int width = (int) Math.ceil(bounds.getMaxX()) + SPREAD + 1 - x;
+            int height = (int) Math.ceil(bounds.getMaxY()) + SPREAD + 1 - y;
+
+            // 以抗锯齿覆盖率栅格化字形，覆盖过半的像素视为内部
+            BufferedImage mask = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            Graphics2D g2d = mask.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2d.translate(-x, -y);
+            g2d.setColor(Color.WHITE);
+            g2d.fill(outline);
+            g2d.dispose();
+            byte[] coverage = ((DataBufferByte) mask.getRaster().getDataBuffer()).getData();
+
+            int size = width * height;
+            float[] toInside = new float[size];
+            float[] toOutside = new float[size];
+            for (int i = 0; i < size; i++) {
+                boolean inside = (coverage[i] & 0xff) >= 128;
+                toInside[i] = inside ? 0 : Float.POSITIVE_INFINITY;
+                toOutside[i] = inside ? Float.POSITIVE_INFINITY : 0;
+            }
+            distanceTransform(toInside, width, height);
+            distanceTransform(toOutside, width, height);
+
+            float[] field = new float[size];
+            for (int i = 0; i < size; i++) {
+                int value = coverage[i] & 0xff;
+                float distance;
+                if (value > 0 && value < 255) {
+                    // 边缘像素直接用覆盖率估计到轮廓的距离，比像素中心间的距离更精确
+                    distance = value / 255f - 0.5f;
+                } else if (value >= 128) {
+                    distance = (float) Math.sqrt(toOutside[i]) - 0.5f;
+                } else {
+                    distance = 0.5f - (float) Math.sqrt(toInside[i]);
+                }
+                field[i] = Math.max(-SPREAD, Math.min(SPREAD, distance));
+            }
+            return new Glyph(field, x, y, width, height, bounds);
+        }
+
+        /**
+         * 双线性采样，距离场范围外视为远离字形
+         */
+        float sample(double u, double v) {
+            double fx = u - 0.5;
+            double fy = v - 0.5;
+            int x0 = (int) Math.floor(fx);
+            int y0 = (int) Math.floor(fy);
+            if (x0 < 0 || y0 < 0 || x0 + 1 >= width || y0 + 1 >= height) {
+                return -SPREAD;
+            }
+            float tx = (float) (fx - x0);
+            float ty = (float) (fy - y0);
+            int i = y0 * width + x0;
+            float top = field[i] + (field[i + 1] - field[i]) * tx;
+            float bottom = field[i + width] + (field[i + width + 1] - field[i + width]) * tx;
+            return top + (bottom - top) * ty;
+        }
+    }
+
+    /**
+     * 精确欧氏距离变换（Felzenszwalb-Huttenlocher）：先逐列、再逐行做一维平方距离变换，结果为距离的平方
+     */
+    private static void distanceTransform(float[] grid, int width, int height) {
+        int length = Math.max(width, height);
+        float[] f = new float[length];
+        float[] d = new float[length];
+        int[] v = new int[length];
+        float[] z = new float[length + 1];
+
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                f[y] = grid[y * width + x];
+            }
+            distanceTransform1d(f, height, d, v, z);
+            for (int y = 0; y < height; y++) {
+                grid[y * width + x] = d[y];
+            }
+        }
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(grid, y * width, f, 0, width);
+            distanceTransform1d(f, width, d, v, z);
+            System.arraycopy(d, 0, grid, y * width, width);
+        }
+    }
+
+    private static void distanceTransform1d(float[] f, int n, float[] d, int[] v, float[] z) {
+        // 只有特征点（有限值）参与下包络，没有特征点的线保持无穷远
+        int k = -1;
+        for (int q = 0; q < n; q++) {
+            if (f[q] == Float.POSITIVE_INFINITY) {
+                continue;
+            }
+            if (k < 0) {
+                k = 0;
+                v[0] = q;
+                z[0] = Float.NEGATIVE_INFINITY;
+                z[1] = Float.POSITIVE_INFINITY;
+                continue;
+            }
+            float s = intersection(f, q, v[k]);
+            while (s <= z[k]) {
+                k--;
+                s = intersection(f, q, v[k]);
+            }
+            k++;
+            v[k] = q;
+            z[k] = s;
+            z[k + 1] = Float.POSITIVE_INFINITY;
+        }
+
+        if (k < 0) {
+            Arrays.fill(d, 0, n, Float.POSITIVE_INFINITY);
+            return;
+        }
+        k = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[k + 1] < q) {
+                k++;
+            }
+            int p = v[k];
+            d[q] = (q - p) * (q - p) + f[p];
+        }
+    }
+
+    /**
+     * 以q和p为顶点的两条抛物线交点的横坐标
+     */
+    private static float intersection(float[] f, int q, int p) {
+        return ((f[q] + q * q) - (f[p] + p * p)) / (2f * (q - p));
+    }
+
+    /**
+     * 字形在基准字号下的排版位置
+     */
+    private static final class PlacedGlyph {
+        private final Glyph glyph;
+        private final double x;
+        private final double y;
+
+        PlacedGlyph(Glyph glyph, double x, double y) {
+            this.glyph = glyph;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    /**
+     * 排版结果：按目标字号缩放后的字形位置，坐标原点为基线起点
+     */
+    static final class Layout {
+        private final List<PlacedGlyph> glyphs;
+        private final double scale;
+        private final Rectangle2D bounds;
+
+        private Layout(List<PlacedGlyph> glyphs, double scale, Rectangle2D bounds) {
+            this.glyphs = glyphs;
+            this.scale = scale;
+            this.bounds = bounds;
+        }
+
+        /**
+         * 目标字号下字形的实际范围（基线坐标系）
+         */
+        Rectangle2D getBounds() {
+            return bounds;
+        }
+
+        /**
+         * 在空白图章上绘制阴影、描边和文本，效果与按轮廓绘制一致：阴影在最下层，描边居中于轮廓，文本填充在最上层
+         *
+         * @param toStamp      基线坐标系到图章像素坐标的变换
+         * @param strokeColor  描边颜色，为null时不描边
+         * @param shadowColor  阴影颜色，为null时不绘制阴影
+         * @param shadowStroke 阴影是否包含描边（草稿质量下只取文本本身）
+         * @param shadowBlur   阴影模糊程度（高斯标准差，像素），0为硬边阴影
+         */
+        void paint(
+                BufferedImage stampImage,
+                AffineTransform toStamp,
+                Color fillColor,
+                Color strokeColor,
+                float strokeWidth,
+                Color shadowColor,
+                boolean shadowStroke,
+                double shadowOffset,
+                double shadowBlur,
+                boolean antialiasing
+        ) {
+            int width = stampImage.getWidth();
+            int height = stampImage.getHeight();
+            float halfStroke = strokeColor != null ? strokeWidth / 2 : 0;
+
+            float[] distance = sampleDistances(toStamp, width, height, 0);
+            int[] pixels = ((DataBufferInt) stampImage.getRaster().getDataBuffer()).getData();
+
+            if (shadowColor != null) {
+                // 阴影沿文本方向偏移
+                float[] shadowDistance = sampleDistances(toStamp, width, height, shadowOffset);
+                float shadowGrow = shadowStroke ? halfStroke : 0;
+                int[] alpha = new int[width * height];
+                for (int i = 0; i < alpha.length; i++) {
+                    alpha[i] = Math.round(coverage(shadowDistance[i] + shadowGrow, antialiasing) * 255);
+                }
+                if (shadowBlur > 0) {
+                    BoxBlur.blur(alpha, width, height, shadowBlur);
+                }
+                int shadowRgb = shadowColor.getRGB() & 0xffffff;
+                for (int i = 0; i < pixels.length; i++) {
+                    pixels[i] = ((alpha[i] * shadowColor.getAlpha() + 127) / 255) << 24 | shadowRgb;
+                }
+            }
+
+            for (int i = 0; i < pixels.length; i++) {
+                float d = distance[i];
+                if (d + halfStroke < -1) {
+                    continue; // 远离字形和描边
+                }
+                int pixel = pixels[i];
+                if (strokeColor != null) {
+                    float strokeCoverage = coverage(d + halfStroke, antialiasing) - coverage(d - halfStroke, antialiasing);
+                    pixel = blendOver(pixel, strokeColor, strokeCoverage);
+                }
+                pixels[i] = blendOver(pixel, fillColor, coverage(d, antialiasing));
+            }
+        }
+
+        /**
+         * 计算图章每个像素中心到文本轮廓的有向距离（目标字号下的像素，内部为正）；
+         * offset为沿文本方向的偏移（用于阴影）
+         */
+        private float[] sampleDistances(AffineTransform toStamp, int width, int height, double offset) {
+            float[] distance = new float[width * height];
+            Arrays.fill(distance, -Float.MAX_VALUE);
+
+            AffineTransform transform = new AffineTransform(toStamp);
+            transform.translate(offset, offset);
+            AffineTransform inverse;
+            try {
+                inverse = transform.createInverse();
+            } catch (NoninvertibleTransformException e) {
+                return distance;
+            }
+
+            double[] m = new double[6];
+            inverse.getMatrix(m);
+
+            for (PlacedGlyph placed : glyphs) {
+                Glyph glyph = placed.glyph;
+                // 距离场在基线坐标系中的范围
+                Rectangle2D fieldBounds = new Rectangle2D.Double(
+                        (placed.x + glyph.x) * scale,
+                        (placed.y + glyph.y) * scale,
+                        glyph.width * scale,
+                        glyph.height * scale);
+                Rectangle2D pixelBounds = transform.createTransformedShape(fieldBounds).getBounds2D();
+                int minX = Math.max(0, (int) Math.floor(pixelBounds.getMinX()));
+                int minY = Math.max(0, (int) Math.floor(pixelBounds.getMinY()));
+                int maxX = Math.min(width, (int) Math.ceil(pixelBounds.getMaxX()));
+                int maxY = Math.min(height, (int) Math.ceil(pixelBounds.getMaxY()));
+
+                for (int py = minY; py < maxY; py++) {
+                    double cy = py + 0.5;
+                    for (int px = minX; px < maxX; px++) {
+                        double cx = px + 0.5;
+                        // 像素中心反变换到基线坐标，再换算到基准字号下的字形坐标
+                        double tx = m[0] * cx + m[2] * cy + m[4];
+                        double ty = m[1] * cx + m[3] * cy + m[5];
+                        double u = tx / scale - placed.x - glyph.x;
+                        double v = ty / scale - placed.y - glyph.y;
+                        float d = (float) (glyph.sample(u, v) * scale);
+                        int i = py * width + px;
+                        // 多个字形的并集：取最大的有向距离
+                        if (d > distance[i]) {
+                            distance[i] = d;
+                        }
+                    }
+                }
+            }
+            return distance;
+        }
+
+        /**
+         * 由有向距离得到像素覆盖率：抗锯齿时在轮廓两侧各半个像素内线性过渡
+         */
+        private static float coverage(float distance, boolean antialiasing) {
+            if (!antialiasing) {
+                return distance >= 0 ? 1f : 0f;
+            }
+            return Math.max(0f, Math.min(1f, distance + 0.5f));
+        }
+
+        /**
+         * 非预乘ARGB的SrcOver混合，颜色的透明度再乘以覆盖率
+         */
+        private static int blendOver(int destination, Color color, float coverage) {
+            int sourceAlpha = Math.round(color.getAlpha() * coverage);
+            if (sourceAlpha <= 0) {
+                return destination;
+            }
+            int destinationAlpha = destination >>> 24;
+            int outAlpha = sourceAlpha + destinationAlpha * (255 - sourceAlpha) / 255;
+            if (outAlpha == 0) {
+                return 0;
+            }
+            int destinationWeight = destinationAlpha * (255 - sourceAlpha) / 255;
+            int red = (color.getRed() * sourceAlpha + ((destination >> 16) & 0xff) * destinationWeight) / outAlpha;
+            int green = (color.getGreen() * sourceAlpha + ((destination >> 8) & 0xff) * destinationWeight) / outAlpha;
+            int blue = (color.getBlue() * sourceAlpha + (destination & 0xff) * destinationWeight) / outAlpha;
+            return outAlpha << 24 | red << 16 | green << 8 | blue;
+        }
+    }
+}
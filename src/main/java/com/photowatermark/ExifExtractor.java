@@ -2,8 +2,11 @@ package com.photowatermark;
 
 import java.io.File;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 
 import org.apache.commons.imaging.ImageReadException;
 import org.apache.commons.imaging.Imaging;
@@ -12,41 +15,29 @@ import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
 import org.apache.commons.imaging.formats.tiff.TiffField;
 import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
 import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+import org.apache.commons.imaging.formats.tiff.taginfos.TagInfo;
 
 /**
  * 专门负责提取图片的EXIF信息，特别是拍摄日期
  */
 public class ExifExtractor {
-    
+    // 日期格式化器不可变、线程安全，只创建一次
+    // EXIF日期格式：2023:05:15 14:30:25
+    private static final DateTimeFormatter EXIF_DATE_TIME = DateTimeFormatter.ofPattern("uuuu:MM:dd HH:mm:ss");
+    private static final DateTimeFormatter PLAIN_DATE_TIME = DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("uuuu-MM-dd");
+
     /**
      * 提取图片的拍摄时间
      */
     public static String extractDateTime(File imageFile) throws IOException, ImageReadException {
         try {
-            ImageMetadata metadata = Imaging.getMetadata(imageFile);
-            
-            if (metadata instanceof JpegImageMetadata) {
-                JpegImageMetadata jpegMetadata = (JpegImageMetadata) metadata;
-                
-                // 尝试获取EXIF信息
-                TiffImageMetadata exif = jpegMetadata.getExif();
-                if (exif != null) {
-                    // 获取拍摄日期
-                    TiffField dateTimeOriginal = exif.findField(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL);
-                    if (dateTimeOriginal != null) {
-                        String dateTimeString = dateTimeOriginal.getStringValue();
-                        return formatDateTime(dateTimeString);
-                    }
-                    
-                    // 如果没有原始日期，尝试获取修改日期
-                    TiffField dateTime = exif.findField(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL);
-                    if (dateTime != null) {
-                        String dateTimeString = dateTime.getStringValue();
-                        return formatDateTime(dateTimeString);
-                    }
-                }
+            String dateTimeString = findDateTimeString(readExif(imageFile));
+            if (dateTimeString != null) {
+                return formatDateTime(dateTimeString);
             }
-            
+
             // 如果没有EXIF信息，使用文件的修改时间
             return getFileLastModifiedDate(imageFile);
         } catch (Exception e) {
@@ -54,7 +45,104 @@ public class ExifExtractor {
             return getFileLastModifiedDate(imageFile);
         }
     }
-    
+
+    /**
+     * 读取图片的EXIF信息，没有EXIF信息或读取失败时返回null
+     */
+    public static TiffImageMetadata readExif(File imageFile) {
+        try {
+            ImageMetadata metadata = Imaging.getMetadata(imageFile);
+            if (metadata instanceof JpegImageMetadata) {
+                return ((JpegImageMetadata) metadata).getExif();
+            }
+            if (metadata instanceof TiffImageMetadata) {
+                return (TiffImageMetadata) metadata;
+            }
+        } catch (Exception e) {
+            // 无法读取元数据时视为没有EXIF信息
+        }
+        return null;
+    }
+
+    /**
+     * 获取EXIF中的拍摄时间（没有原始拍摄时间时使用修改时间），没有或无法解析时返回null
+     */
+    public static LocalDateTime getDateTime(TiffImageMetadata exif) {
+        String dateTimeString = findDateTimeString(exif);
+        return dateTimeString != null ? parseDateTime(dateTimeString) : null;
+    }
+
+    /**
+     * 获取EXIF中的相机型号；型号中已包含厂商名时不重复添加，没有时返回空字符串
+     */
+    public static String getCameraModel(TiffImageMetadata exif) {
+        String make = findString(exif, TiffTagConstants.TIFF_TAG_MAKE);
+        String model = findString(exif, TiffTagConstants.TIFF_TAG_MODEL);
+        if (model == null) {
+            return make != null ? make : "";
+        }
+        if (make == null || model.toLowerCase().startsWith(make.toLowerCase())) {
+            return model;
+        }
+        return make + " " + model;
+    }
+
+    /**
+     * 获取文件的最后修改时间（本地时区）
+     */
+    public static LocalDateTime getFileLastModifiedDateTime(File file) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(file.lastModified()), ZoneId.systemDefault());
+    }
+
+    /**
+     * 拍摄日期字符串：优先原始拍摄时间，其次修改时间
+     */
+    private static String findDateTimeString(TiffImageMetadata exif) {
+        String dateTimeOriginal = findString(exif, ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL);
+        if (dateTimeOriginal != null) {
+            return dateTimeOriginal;
+        }
+        return findString(exif, TiffTagConstants.TIFF_TAG_DATE_TIME);
+    }
+
+    /**
+     * 读取字符串字段，去掉首尾空白；没有该字段、字段为空或读取失败时返回null
+     */
+    private static String findString(TiffImageMetadata exif, TagInfo tag) {
+        if (exif == null) {
+            return null;
+        }
+        try {
+            TiffField field = exif.findField(tag);
+            if (field == null) {
+                return null;
+            }
+            String value = field.getStringValue();
+            if (value == null) {
+                return null;
+            }
+            value = value.trim();
+            return value.isEmpty() ? null : value;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * 解析EXIF或"yyyy-MM-dd HH:mm:ss"格式的日期时间，无法解析时返回null
+     */
+    static LocalDateTime parseDateTime(String dateTimeString) {
+        String value = dateTimeString.trim();
+        for (DateTimeFormatter formatter : new DateTimeFormatter[] {EXIF_DATE_TIME, PLAIN_DATE_TIME}) {
+            try {
+                return LocalDateTime.parse(value, formatter);
+            } catch (DateTimeParseException e) {
+                // 尝试下一种格式
+            }
+        }
+        return null;
+    }
+
     /**
      * 格式化日期时间字符串，提取年月日
      */
@@ -69,24 +157,23 @@ public class ExifExtractor {
                     return dateComponents[0] + "-" + dateComponents[1] + "-" + dateComponents[2];
                 }
             }
-            
+
             // 尝试其他格式
-            SimpleDateFormat inputFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-            Date date = inputFormat.parse(dateTimeString);
-            SimpleDateFormat outputFormat = new SimpleDateFormat("yyyy-MM-dd");
-            return outputFormat.format(date);
+            LocalDateTime dateTime = parseDateTime(dateTimeString);
+            if (dateTime != null) {
+                return DATE.format(dateTime);
+            }
         } catch (Exception e) {
-            // 如果格式化失败，返回原始字符串的前10个字符
-            return dateTimeString.length() > 10 ? dateTimeString.substring(0, 10) : dateTimeString;
+            // 格式化失败时按下面的方式处理
         }
+        // 如果格式化失败，返回原始字符串的前10个字符
+        return dateTimeString.length() > 10 ? dateTimeString.substring(0, 10) : dateTimeString;
     }
-    
+
     /**
      * 获取文件的最后修改时间
      */
     private static String getFileLastModifiedDate(File file) {
-        Date lastModified = new Date(file.lastModified());
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-        return sdf.format(lastModified);
+        return DATE.format(getFileLastModifiedDateTime(file));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,97 @@
+package com.photowatermark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 导出配置 - 一张图片需要生成的所有派生版本（如原尺寸、网页用和缩略图），
+ * 每个版本有自己的长边尺寸、输出格式和文件名后缀。不可变对象
+ */
+public final class ExportProfile {
+    /**
+     * 常用的发布配置：原尺寸、长边2048像素的网页版本和长边400像素的缩略图，均为JPEG
+     */
+    public static final ExportProfile PUBLISH = new ExportProfile(
+            new Output("", Output.ORIGINAL_SIZE, "jpg", 95),
+            new Output("_web", 2048, "jpg", 85),
+            new Output("_thumb", 400, "jpg", 80));
+
+    private final List<Output> outputs;
+
+    public ExportProfile(Output... outputs) {
+        this(Arrays.asList(outputs));
+    }
+
+    public ExportProfile(List<Output> outputs) {
+        if (outputs.isEmpty()) {
+            throw new IllegalArgumentException("导出配置至少需要一个输出");
+        }
+        this.outputs = Collections.unmodifiableList(new ArrayList<>(outputs));
+    }
+
+    public List<Output> getOutputs() {
+        return outputs;
+    }
+
+    /**
+     * 一个派生版本
+     */
+    public static final class Output {
+        // 长边尺寸为0表示保持原图尺寸
+        public static final int ORIGINAL_SIZE = 0;
+
+        private final String suffix;
+        private final int maxSize;
+        private final String formatName;
+        private final int jpegQuality;
+
+        /**
+         * @param suffix 输出文件名在原文件名（不含扩展名）之后追加的后缀
+         * @param maxSize 长边的最大像素数，原图更小时不放大；ORIGINAL_SIZE表示原图尺寸
+         * @param formatName 输出格式（如jpg、png），同时作为文件扩展名
+         * @param jpegQuality JPEG压缩质量（0-100），其他格式忽略
+         */
+        public Output(String suffix, int maxSize, String formatName, int jpegQuality) {
+            if (maxSize < 0) {
+                throw new IllegalArgumentException("长边尺寸不能小于0: " + maxSize);
+            }
+            if (jpegQuality < 0 || jpegQuality > 100) {
+                throw new IllegalArgumentException("JPEG质量必须在0到100之间: " + jpegQuality);
+            }
+            this.suffix = Objects.requireNonNull(suffix, "suffix");
+            this.maxSize = maxSize;
+            this.formatName = Objects.requireNonNull(formatName, "formatName");
+            this.jpegQuality = jpegQuality;
+        }
+
+        public String getSuffix() {
+            return suffix;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public String getFormatName() {
+            return formatName;
+        }
+
+        public int getJpegQuality() {
+            return jpegQuality;
+        }
+
+        /**
+         * 该版本相对原图的缩放比例（不超过1）
+         */
+        public double getScaleFactor(int imageWidth, int imageHeight) {
+            int longEdge = Math.max(imageWidth, imageHeight);
+            if (maxSize == ORIGINAL_SIZE || longEdge <= maxSize) {
+                return 1.0;
+            }
+            return maxSize / (double) longEdge;
+        }
+    }
+}
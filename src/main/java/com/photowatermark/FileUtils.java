@@ -2,9 +2,20 @@ package com.photowatermark;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
 
 /**
  * 文件工具类 - 专门负责文件相关的操作
@@ -50,10 +61,89 @@ public class FileUtils {
         return "jpg";
     }
     
+    /**
+     * 按格式写出图片；JPEG使用指定的压缩质量（0-100），其他格式忽略该参数
+     */
+    public static void writeImage(BufferedImage image, String formatName, File outputFile, int jpegQuality) 
+            throws IOException {
+        String format = formatName.toLowerCase();
+        if (!format.equals("jpg") && !format.equals("jpeg")) {
+            if (!ImageIO.write(image, format, outputFile)) {
+                throw new IOException("不支持的输出格式: " + formatName);
+            }
+            return;
+        }
+        
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpg");
+        if (!writers.hasNext()) {
+            // 如果无法获取writer，降级处理
+            ImageIO.write(image, "jpg", outputFile);
+            return;
+        }
+        
+        ImageWriter writer = writers.next();
+        ImageWriteParam writeParam = writer.getDefaultWriteParam();
+        writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        // 将0-100的范围转换为0.0-1.0
+        writeParam.setCompressionQuality(jpegQuality / 100.0f);
+        
+        // 通过FileOutputStream写入，已存在的文件会被截断
+        try (OutputStream stream = new FileOutputStream(outputFile);
+             ImageOutputStream output = ImageIO.createImageOutputStream(stream)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), writeParam);
+        } finally {
+            writer.dispose();
+        }
+    }
+    
     /**
      * 读取图片文件
      */
     public static BufferedImage readImage(File file) throws IOException {
         return ImageIO.read(file);
     }
+    
+    /**
+     * 读取图片文件，解码结果直接写入从缓冲池取得的缓冲区（解码器输出不带调色板的标准图像类型时），
+     * 批量读取同尺寸图片时不再分配新的像素数组；用完后可以归还给缓冲池。没有对应的解码器时返回null
+     */
+    public static BufferedImage readImage(File file, ImageBufferPool pool) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) {
+                throw new IOException("无法读取文件: " + file.getAbsolutePath());
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                
+                // 与ImageIO.read相同，使用解码器给出的第一种图像类型；调色板图像的颜色表来自文件，
+                // 按类型新建或复用的缓冲区只有默认颜色表，交给解码器自己分配
+                BufferedImage destination = null;
+                Iterator<ImageTypeSpecifier> imageTypes = reader.getImageTypes(0);
+                if (imageTypes.hasNext()) {
+                    int imageType = imageTypes.next().getBufferedImageType();
+                    if (ImageBufferPool.isPoolableType(imageType)) {
+                        destination = pool.acquire(reader.getWidth(0), reader.getHeight(0), imageType);
+                        param.setDestination(destination);
+                    }
+                }
+                
+                try {
+                    return reader.read(0, param);
+                } catch (IOException | RuntimeException e) {
+                    pool.release(destination);
+                    throw e;
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
 }
\ No newline at end of file
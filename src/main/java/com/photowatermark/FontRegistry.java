@@ -0,0 +1,221 @@
+package com.photowatermark;
+
+import java.awt.Font;
+import java.awt.FontFormatException;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 字体注册表 - 在后台线程中枚举系统字体和应用字体目录中的TTF/OTF文件，
+ * 并按(字族, 样式, 字号)缓存Font和FontMetrics实例，线程安全。
+ * 枚举完成前界面可以正常启动，通过ready future得到完整的字体列表。
+ */
+public final class FontRegistry {
+    // 应用字体目录：放入其中的TTF/OTF文件会被注册为可用字体
+    public static final String FONT_DIRECTORY = System.getProperty("user.home") + "/.photowatermark/fonts";
+    // 首选的默认字体，不可用时使用逻辑字体SansSerif
+    public static final String PREFERRED_DEFAULT_FAMILY = "Arial";
+    // 最多缓存的Font/FontMetrics数量
+    private static final int MAX_CACHED_FONTS = 128;
+
+    private final CompletableFuture<List<String>> ready;
+    private final LinkedHashMap<FontKey, Font> fonts = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Font, FontMetrics> metrics = new LinkedHashMap<>(16, 0.75f, true);
+    // 测量用的图形上下文，使用与文本水印渲染相同的抗锯齿设置
+    private final Graphics2D measureGraphics;
+
+    private FontRegistry(File fontDirectory) {
+        BufferedImage measureImage = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        measureGraphics = measureImage.createGraphics();
+        measureGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        measureGraphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+        ready = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                ready.complete(enumerateFamilies(fontDirectory));
+            } catch (RuntimeException e) {
+                ready.completeExceptionally(e);
+            }
+        }, "font-registry");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 获取进程内共享的字体注册表（首次调用时开始后台枚举）
+     */
+    public static FontRegistry getDefault() {
+        return Holder.INSTANCE;
+    }
+
+    private static final class Holder {
+        private static final FontRegistry INSTANCE = new FontRegistry(new File(FONT_DIRECTORY));
+    }
+
+    /**
+     * 枚举完成时得到按名称排序的全部字族名
+     */
+    public CompletableFuture<List<String>> getReady() {
+        return ready;
+    }
+
+    public boolean isReady() {
+        return ready.isDone() && !ready.isCompletedExceptionally();
+    }
+
+    /**
+     * 已枚举的字族名；枚举尚未完成时返回空列表
+     */
+    public List<String> getFamilies() {
+        return isReady() ? ready.join() : Collections.emptyList();
+    }
+
+    /**
+     * 字族是否可用；枚举尚未完成时只能确认逻辑字体
+     */
+    public boolean isAvailable(String family) {
+        if (family == null) {
+            return false;
+        }
+        for (String logical : new String[] {Font.DIALOG, Font.DIALOG_INPUT, Font.SANS_SERIF, Font.SERIF, Font.MONOSPACED}) {
+            if (logical.equalsIgnoreCase(family)) {
+                return true;
+            }
+        }
+        for (String available : getFamilies()) {
+            if (available.equalsIgnoreCase(family)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 默认字族：首选字体可用时使用它，否则使用SansSerif（枚举未完成时也使用首选字体）
+     */
+    public String getDefaultFamily() {
+        if (!isReady() || isAvailable(PREFERRED_DEFAULT_FAMILY)) {
+            return PREFERRED_DEFAULT_FAMILY;
+        }
+        return Font.SANS_SERIF;
+    }
+
+    /**
+     * 获取缓存的字体实例
+     */
+    public synchronized Font getFont(String family, int style, int size) {
+        FontKey key = new FontKey(family, style, size);
+        Font font = fonts.get(key);
+        if (font == null) {
+            font = new Font(family, style, size);
+            fonts.put(key, font);
+            trim(fonts);
+        }
+        return font;
+    }
+
+    /**
+     * 获取缓存的字体度量（抗锯齿开启、整数度量，与文本水印渲染一致）
+     */
+    public synchronized FontMetrics getFontMetrics(Font font) {
+        FontMetrics fontMetrics = metrics.get(font);
+        if (fontMetrics == null) {
+            fontMetrics = measureGraphics.getFontMetrics(font);
+            metrics.put(font, fontMetrics);
+            trim(metrics);
+        }
+        return fontMetrics;
+    }
+
+    private static void trim(LinkedHashMap<?, ?> entries) {
+        Iterator<? extends Map.Entry<?, ?>> iterator = entries.entrySet().iterator();
+        while (entries.size() > MAX_CACHED_FONTS && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * 注册应用字体目录中的字体文件，再枚举全部字族
+     */
+    private List<String> enumerateFamilies(File fontDirectory) {
+        GraphicsEnvironment environment = GraphicsEnvironment.getLocalGraphicsEnvironment();
+        boolean registered = false;
+
+        File[] files = fontDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName().toLowerCase(Locale.ROOT);
+                if (!file.isFile() || !(name.endsWith(".ttf") || name.endsWith(".otf"))) {
+                    continue;
+                }
+                try {
+                    registered |= environment.registerFont(Font.createFont(Font.TRUETYPE_FONT, file));
+                } catch (FontFormatException | IOException e) {
+                    // 无法加载的字体文件直接跳过
+                    System.err.println("无法加载字体文件: " + file.getAbsolutePath() + " - " + e.getMessage());
+                }
+            }
+        }
+
+        if (registered) {
+            // 新注册的字体在此之前可能被回退为默认字体并缓存，需要重新创建
+            synchronized (this) {
+                fonts.clear();
+                metrics.clear();
+            }
+        }
+
+        TreeSet<String> families = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        Collections.addAll(families, environment.getAvailableFontFamilyNames());
+        return Collections.unmodifiableList(new ArrayList<>(families));
+    }
+
+    /**
+     * 字体缓存键：字族、样式和字号
+     */
+    private static final class FontKey {
+        private final String family;
+        private final int style;
+        private final int size;
+
+        FontKey(String family, int style, int size) {
+            this.family = family;
+            this.style = style;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FontKey)) {
+                return false;
+            }
+            FontKey that = (FontKey) o;
+            return style == that.style && size == that.size && Objects.equals(family, that.family);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(family, style, size);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.photowatermark;
+
+import java.awt.Font;
+import java.awt.Shape;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 字形轮廓缓存 - 按(文本, 字体)缓存GlyphVector生成的轮廓，描边、填充和阴影共用同一份几何数据。
+ * 分段的文本（如模板生成的文本）按段缓存，拼接时只有变化的段需要重新生成。
+ * 按条目数限制容量，超出时按LRU淘汰，线程安全
+ */
+public class GlyphOutlineCache {
+    // 默认容量：256个轮廓
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    // 轮廓使用与图章渲染一致的设置生成（抗锯齿、整数度量）
+    private static final FontRenderContext OUTLINE_CONTEXT = new FontRenderContext(null, true, false);
+
+    private static final GlyphOutlineCache DEFAULT_INSTANCE = new GlyphOutlineCache(DEFAULT_MAX_ENTRIES);
+
+    private final int maxEntries;
+    // accessOrder=true，迭代顺序即最近最少使用顺序
+    private final LinkedHashMap<Key, Entry> outlines = new LinkedHashMap<>(16, 0.75f, true);
+    private long hitCount;
+    private long missCount;
+
+    public GlyphOutlineCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * 获取进程内共享的默认缓存
+     */
+    public static GlyphOutlineCache getDefault() {
+        return DEFAULT_INSTANCE;
+    }
+
+    /**
+     * 获取文本在基线坐标系(原点为基线起点)下的轮廓；返回的Shape被缓存共享，调用方不能修改
+     */
+    public Shape getOutline(String text, Font font) {
+        return getEntry(text, font).outline;
+    }
+
+    /**
+     * 获取由若干段拼接而成的文本的轮廓：各段的轮廓分别缓存，按前面各段的前进宽度平移后合并。
+     * GlyphVector不做字距调整、度量取整数，因此结果与整段文本的轮廓相同；拼接结果本身不缓存
+     */
+    public Shape getOutline(List<String> segments, Font font) {
+        if (segments.size() == 1) {
+            return getOutline(segments.get(0), font);
+        }
+        Path2D.Float outline = new Path2D.Float();
+        double advance = 0;
+        for (String segment : segments) {
+            Entry entry = getEntry(segment, font);
+            outline.append(entry.outline.getPathIterator(AffineTransform.getTranslateInstance(advance, 0)), false);
+            advance += entry.advance;
+        }
+        return outline;
+    }
+
+    private Entry getEntry(String text, Font font) {
+        Key key = new Key(text, font);
+        synchronized (this) {
+            Entry entry = outlines.get(key);
+            if (entry != null) {
+                hitCount++;
+                return entry;
+            }
+            missCount++;
+        }
+
+        // 在锁外生成轮廓，并发时可能重复生成，结果相同
+        GlyphVector glyphs = font.createGlyphVector(OUTLINE_CONTEXT, text);
+        Entry entry = new Entry(glyphs.getOutline(), glyphs.getGlyphPosition(glyphs.getNumGlyphs()).getX());
+
+        synchronized (this) {
+            outlines.put(key, entry);
+            Iterator<Map.Entry<Key, Entry>> iterator = outlines.entrySet().iterator();
+            while (outlines.size() > maxEntries && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * 清空缓存（统计计数保留）
+     */
+    public synchronized void clear() {
+        outlines.clear();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized int size() {
+        return outlines.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * 缓存条目：轮廓和文本的前进宽度（下一段的起点）
+     */
+    private static final class Entry {
+        private final Shape outline;
+        private final double advance;
+
+        Entry(Shape outline, double advance) {
+            this.outline = outline;
+            this.advance = advance;
+        }
+    }
+
+    /**
+     * 缓存键：文本和字体（字体已包含字族、样式和字号）
+     */
+    private static final class Key {
+        private final String text;
+        private final Font font;
+
+        Key(String text, Font font) {
+            this.text = text;
+            this.font = font;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return text.equals(that.text) && font.equals(that.font);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(text, font);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.photowatermark;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.WritableRaster;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 图像缓冲池 - 按(宽, 高, 图像类型)复用整张图片大小的BufferedImage。批量处理同一相机拍摄的同尺寸图片时，
+ * 解码、合成和导出使用的缓冲区在第一张图片之后都从池中取得，不再分配新的像素数组，
+ * 避免大数组反复进入老年代引起长时间的GC停顿。
+ *
+ * 池中缓冲区的总字节数不超过上限，超出时按LRU丢弃最久未使用的尺寸。取出的缓冲区内容未定义，
+ * 调用方需要完整覆盖（如以AlphaComposite.Src绘制或直接解码到其中）；归还后不能再使用。线程安全
+ */
+public class ImageBufferPool {
+    // 默认上限：256MB，约可容纳十张2400万像素的3字节图片
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    private static final ImageBufferPool DEFAULT_INSTANCE = new ImageBufferPool(DEFAULT_MAX_BYTES);
+
+    private final long maxBytes;
+    // accessOrder=true，迭代顺序即最近最少使用顺序
+    private final LinkedHashMap<Key, ArrayDeque<BufferedImage>> freeBuffers = new LinkedHashMap<>(16, 0.75f, true);
+    // 池中的缓冲区（按对象标识），用于忽略重复归还
+    private final Set<BufferedImage> pooled = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long pooledBytes;
+
+    // 统计：命中、未命中（新分配）、归还和因超出上限被丢弃的次数
+    private long hitCount;
+    private long missCount;
+    private long releaseCount;
+    private long discardCount;
+
+    public ImageBufferPool(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("缓冲池上限不能小于0: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 获取进程内共享的默认缓冲池
+     */
+    public static ImageBufferPool getDefault() {
+        return DEFAULT_INSTANCE;
+    }
+
+    /**
+     * 取得指定尺寸和类型的缓冲区，池中没有时新建；内容未定义
+     */
+    public BufferedImage acquire(int width, int height, int imageType) {
+        if (!isPoolableType(imageType)) {
+            throw new IllegalArgumentException("缓冲池不支持自定义图像类型和调色板图像类型: " + imageType);
+        }
+        Key key = new Key(width, height, imageType);
+        synchronized (this) {
+            ArrayDeque<BufferedImage> buffers = freeBuffers.get(key);
+            if (buffers != null) {
+                BufferedImage image = buffers.pop();
+                if (buffers.isEmpty()) {
+                    freeBuffers.remove(key);
+                }
+                pooled.remove(image);
+                pooledBytes -= sizeOf(image);
+                hitCount++;
+                return image;
+            }
+            missCount++;
+        }
+        return new BufferedImage(width, height, imageType);
+    }
+
+    /**
+     * 归还缓冲区。自定义类型和调色板类型的图像、子图像以及超过上限的缓冲区不会被放入池中；
+     * 重复归还同一个缓冲区会被忽略
+     */
+    public void release(BufferedImage image) {
+        if (image == null || !isPoolable(image)) {
+            return;
+        }
+        long size = sizeOf(image);
+        Key key = new Key(image.getWidth(), image.getHeight(), image.getType());
+        synchronized (this) {
+            if (pooled.contains(image)) {
+                return;
+            }
+            if (size > maxBytes) {
+                discardCount++;
+                return;
+            }
+
+            // 从最久未使用的尺寸开始丢弃，直到放得下
+            Iterator<Map.Entry<Key, ArrayDeque<BufferedImage>>> iterator = freeBuffers.entrySet().iterator();
+            while (pooledBytes + size > maxBytes && iterator.hasNext()) {
+                ArrayDeque<BufferedImage> buffers = iterator.next().getValue();
+                while (!buffers.isEmpty() && pooledBytes + size > maxBytes) {
+                    BufferedImage discarded = buffers.removeLast();
+                    pooled.remove(discarded);
+                    pooledBytes -= sizeOf(discarded);
+                    discardCount++;
+                }
+                if (buffers.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+
+            freeBuffers.computeIfAbsent(key, k -> new ArrayDeque<>()).push(image);
+            pooled.add(image);
+            pooledBytes += size;
+            releaseCount++;
+        }
+    }
+
+    /**
+     * 缓冲池是否支持该图像类型：池按(宽, 高, 类型)复用缓冲区而不区分颜色模型，
+     * 调色板类型（TYPE_BYTE_BINARY、TYPE_BYTE_INDEXED）的颜色表因图而异，不能复用
+     */
+    public static boolean isPoolableType(int imageType) {
+        return imageType != BufferedImage.TYPE_CUSTOM
+                && imageType != BufferedImage.TYPE_BYTE_BINARY
+                && imageType != BufferedImage.TYPE_BYTE_INDEXED;
+    }
+
+    /**
+     * 只复用由支持的类型直接创建的整块缓冲区
+     */
+    private static boolean isPoolable(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        return isPoolableType(image.getType())
+                && raster.getParent() == null
+                && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0;
+    }
+
+    /**
+     * 缓冲区像素数组的字节数
+     */
+    static long sizeOf(BufferedImage image) {
+        DataBuffer dataBuffer = image.getRaster().getDataBuffer();
+        return (long) dataBuffer.getSize() * dataBuffer.getNumBanks()
+                * DataBuffer.getDataTypeSize(dataBuffer.getDataType()) / 8;
+    }
+
+    /**
+     * 清空缓冲池（统计计数保留）
+     */
+    public synchronized void clear() {
+        freeBuffers.clear();
+        pooled.clear();
+        pooledBytes = 0;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * 池中缓冲区的总字节数
+     */
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    /**
+     * 池中缓冲区的数量
+     */
+    public synchronized int getPooledCount() {
+        return pooled.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getReleaseCount() {
+        return releaseCount;
+    }
+
+    public synchronized long getDiscardCount() {
+        return discardCount;
+    }
+
+    /**
+     * 缓冲池键：尺寸和图像类型
+     */
+    private static final class Key {
+        private final int width;
+        private final int height;
+        private final int imageType;
+
+        Key(int width, int height, int imageType) {
+            this.width = width;
+            this.height = height;
+            this.imageType = imageType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return width == that.width && height == that.height && imageType == that.imageType;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(width, height, imageType);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.photowatermark;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+
+/**
+ * 图片元数据 - 一个图片文件的拍摄时间和相机型号，在第一次用到时才读取。
+ * 同一个文件的对象可以长期保存（如随图片列表中的条目保存），预览反复求值模板时不再重复解析EXIF；
+ * 文件的修改时间或大小变化后下次访问时重新读取。线程安全
+ */
+public final class ImageMetadata {
+    private final File file;
+
+    // 读取元数据时文件的修改时间和大小，用于发现文件被替换
+    private boolean loaded;
+    private long lastModified;
+    private long length;
+    private LocalDateTime dateTime;
+    private String cameraModel;
+
+    public ImageMetadata(File file) {
+        this.file = Objects.requireNonNull(file, "file");
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 拍摄时间：EXIF中没有时使用文件的最后修改时间
+     */
+    public synchronized LocalDateTime getDateTime() {
+        load();
+        return dateTime;
+    }
+
+    /**
+     * 相机型号，EXIF中没有时为空字符串
+     */
+    public synchronized String getCameraModel() {
+        load();
+        return cameraModel;
+    }
+
+    private void load() {
+        long currentLastModified = file.lastModified();
+        long currentLength = file.length();
+        if (loaded && currentLastModified == lastModified && currentLength == length) {
+            return;
+        }
+        TiffImageMetadata exif = ExifExtractor.readExif(file);
+        LocalDateTime exifDateTime = ExifExtractor.getDateTime(exif);
+        dateTime = exifDateTime != null ? exifDateTime : ExifExtractor.getFileLastModifiedDateTime(file);
+        cameraModel = ExifExtractor.getCameraModel(exif);
+        lastModified = currentLastModified;
+        length = currentLength;
+        loaded = true;
+    }
+}
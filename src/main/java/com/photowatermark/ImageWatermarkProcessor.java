@@ -1,10 +1,12 @@
 package com.photowatermark;
 
 import java.awt.AlphaComposite;
+import java.awt.Composite;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
-import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.util.Collections;
 
 /**
  * 图片水印处理器 - 专门负责处理图片水印的添加
@@ -23,45 +25,18 @@ public class ImageWatermarkProcessor {
             double rotation, 
             boolean tiling
     ) {
-        // 创建可绘制的图像副本
-        BufferedImage watermarkedImage = new BufferedImage(
-                originalImage.getWidth(), 
-                originalImage.getHeight(), 
-                BufferedImage.TYPE_INT_ARGB);
-        
-        // 获取图形上下文
-        Graphics2D g2d = watermarkedImage.createGraphics();
-        
-        // 设置高质量渲染
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        
-        // 绘制原始图像
-        g2d.drawImage(originalImage, 0, 0, null);
-        
-        // 获取Position枚举值
-        Position position = Position.valueOf(positionStr);
-        
-        // 设置透明度
-        g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
-        
-        // 应用缩放
-        BufferedImage scaledWatermark = scaleWatermarkImage(watermarkImage, scale);
-        
-        if (tiling) {
-            // 平铺水印
-            drawTiledImageWatermark(g2d, originalImage, scaledWatermark, rotation);
-        } else {
-            // 单一水印，对于CUSTOM位置，默认使用(0.5, 0.5)即中心位置
-            double customX = 0.5;
-            double customY = 0.5;
-            drawSingleImageWatermark(g2d, originalImage, scaledWatermark, position, rotation, customX, customY);
-        }
-        
-        // 释放资源
-        g2d.dispose();
-        
-        return watermarkedImage;
+        // 对于CUSTOM位置，默认使用(0.5, 0.5)即中心位置
+        return addImageWatermark(
+                originalImage, 
+                watermarkImage, 
+                scale, 
+                opacity, 
+                positionStr, 
+                rotation, 
+                tiling, 
+                0.5, 
+                0.5
+        );
     }
     
     /**
@@ -78,11 +53,26 @@ public class ImageWatermarkProcessor {
             double customX, // 自定义X坐标 (0-1)
             double customY  // 自定义Y坐标 (0-1)
     ) {
+        ImageWatermarkSpec spec = new ImageWatermarkSpec(
+                watermarkImage, 
+                scale, 
+                opacity, 
+                Position.valueOf(positionStr), 
+                rotation, 
+                tiling, 
+                customX, 
+                customY);
+        if (WatermarkCompositor.isAutoPosition(spec)) {
+            // AUTO位置按原图内容选择，与合成引擎的结果一致
+            spec = (ImageWatermarkSpec) new WatermarkCompositor(new TextWatermarkProcessor(), this)
+                    .resolveAutomatic(originalImage, Collections.singletonList(spec), RenderQuality.BALANCED).get(0);
+        }
+        
         // 创建可绘制的图像副本
         BufferedImage watermarkedImage = new BufferedImage(
                 originalImage.getWidth(), 
                 originalImage.getHeight(), 
-                BufferedImage.TYPE_INT_ARGB);
+                WatermarkCompositor.selectImageType(originalImage, null));
         
         // 获取图形上下文
         Graphics2D g2d = watermarkedImage.createGraphics();
@@ -92,24 +82,9 @@ public class ImageWatermarkProcessor {
         g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
         
         // 绘制原始图像
-        g2d.drawImage(originalImage, 0, 0, null);
-        
-        // 获取Position枚举值
-        Position position = Position.valueOf(positionStr);
-        
-        // 设置透明度
-        g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
+        OffHeapImages.draw(g2d, originalImage);
         
-        // 应用缩放
-        BufferedImage scaledWatermark = scaleWatermarkImage(watermarkImage, scale);
-        
-        if (tiling) {
-            // 平铺水印
-            drawTiledImageWatermark(g2d, originalImage, scaledWatermark, rotation);
-        } else {
-            // 单一水印，传递自定义位置
-            drawSingleImageWatermark(g2d, originalImage, scaledWatermark, position, rotation, customX, customY);
-        }
+        drawImageWatermark(g2d, watermarkedImage, originalImage.getWidth(), originalImage.getHeight(), spec);
         
         // 释放资源
         g2d.dispose();
@@ -118,29 +93,55 @@ public class ImageWatermarkProcessor {
     }
     
     /**
-     * 缩放水印图片
+     * 在已有的图形上下文中绘制图片水印（供合成引擎使用，不创建新的图像）
      */
-    private BufferedImage scaleWatermarkImage(BufferedImage watermarkImage, float scale) {
-        if (scale == 1.0f) {
-            return watermarkImage; // 无需缩放
-        }
+    public void drawImageWatermark(Graphics2D g2d, int imageWidth, int imageHeight, ImageWatermarkSpec spec) {
+        drawImageWatermark(g2d, null, imageWidth, imageHeight, spec);
+    }
+    
+    /**
+     * 在已有的图形上下文中绘制图片水印；给出图形上下文对应的目标图像时，单一水印直接在像素数组上混合
+     */
+    public void drawImageWatermark(
+            Graphics2D g2d, 
+            BufferedImage target, 
+            int imageWidth, 
+            int imageHeight, 
+            ImageWatermarkSpec spec
+    ) {
+        drawImageWatermark(g2d, target, imageWidth, imageHeight, spec, RenderQuality.BALANCED);
+    }
+    
+    /**
+     * 在已有的图形上下文中按指定的渲染质量绘制图片水印，质量决定缩放、旋转变体的插值方式
+     */
+    public void drawImageWatermark(
+            Graphics2D g2d, 
+            BufferedImage target, 
+            int imageWidth, 
+            int imageHeight, 
+            ImageWatermarkSpec spec, 
+            RenderQuality quality
+    ) {
+        // 保存当前合成规则，绘制完成后恢复，避免影响后续水印
+        Composite originalComposite = g2d.getComposite();
         
-        int scaledWidth = (int) (watermarkImage.getWidth() * scale);
-        int scaledHeight = (int) (watermarkImage.getHeight() * scale);
+        // 设置透明度
+        g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, spec.getOpacity()));
         
-        // 创建缩放后的图像
-        BufferedImage scaledImage = new BufferedImage(
-                scaledWidth, 
-                scaledHeight, 
-                BufferedImage.TYPE_INT_ARGB);
+        WatermarkAsset asset = spec.getWatermarkAsset();
         
-        // 绘制缩放后的图像
-        Graphics2D g2d = scaledImage.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g2d.drawImage(watermarkImage, 0, 0, scaledWidth, scaledHeight, null);
-        g2d.dispose();
+        if (spec.isTiling()) {
+            // 平铺水印（使用缓存的平铺图块）
+            drawTiledImageWatermark(g2d, imageWidth, imageHeight, asset, spec.getScale(), 
+                    spec.getRotation(), spec.getOpacity(), quality);
+        } else {
+            // 单一水印（使用缓存的缩放、旋转结果），传递自定义位置
+            drawSingleImageWatermark(g2d, target, imageWidth, imageHeight, asset.getVariant(spec.getScale(), spec.getRotation(), quality), 
+                    spec.getOpacity(), spec.getPosition(), spec.getCustomX(), spec.getCustomY(), spec.getMargin());
+        }
         
-        return scaledImage;
+        g2d.setComposite(originalComposite);
     }
     
     /**
@@ -148,28 +149,82 @@ public class ImageWatermarkProcessor {
      */
     private void drawSingleImageWatermark(
             Graphics2D g2d, 
-            BufferedImage image, 
-            BufferedImage watermarkImage, 
+            BufferedImage target, 
+            int imageWidth, 
+            int imageHeight, 
+            WatermarkAsset.Variant watermark, 
+            float opacity, 
             Position position, 
-            double rotation,
             double customX, // 自定义X坐标 (0-1)
-            double customY  // 自定义Y坐标 (0-1)
+            double customY, // 自定义Y坐标 (0-1)
+            int margin
+    ) {
+        Rectangle bounds = getSingleWatermarkBounds(imageWidth, imageHeight, watermark, position, 
+                customX, customY, margin);
+        drawVariant(g2d, target, watermark, opacity, bounds);
+    }
+    
+    /**
+     * 在已计算好的位置绘制水印变体（透明度已设置在合成规则中）
+     */
+    static void drawVariant(
+            Graphics2D g2d, 
+            BufferedImage target, 
+            WatermarkAsset.Variant watermark, 
+            float opacity, 
+            Rectangle bounds
+    ) {
+        // 目标像素布局支持时直接混合，否则使用Java2D绘制
+        if (!AlphaBlender.blend(target, g2d, watermark.getBlendSource(), bounds.x, bounds.y, opacity)) {
+            g2d.drawImage(watermark.getImage(), bounds.x, bounds.y, null);
+        }
+    }
+    
+    /**
+     * 获取图片水印在画布上占据的范围；平铺水印覆盖整个画布，返回null
+     */
+    public Rectangle getWatermarkBounds(ImageWatermarkSpec spec, int imageWidth, int imageHeight) {
+        return getWatermarkBounds(spec, imageWidth, imageHeight, RenderQuality.BALANCED);
+    }
+    
+    /**
+     * 获取按指定渲染质量绘制时图片水印在画布上占据的范围
+     */
+    public Rectangle getWatermarkBounds(ImageWatermarkSpec spec, int imageWidth, int imageHeight, RenderQuality quality) {
+        if (spec.isTiling()) {
+            return null;
+        }
+        WatermarkAsset.Variant watermark = spec.getWatermarkAsset().getVariant(spec.getScale(), spec.getRotation(), quality);
+        return getSingleWatermarkBounds(imageWidth, imageHeight, watermark, spec.getPosition(), 
+                spec.getCustomX(), spec.getCustomY(), spec.getMargin());
+    }
+    
+    /**
+     * 计算单一图片水印（已旋转的变体）在画布上的位置和范围
+     */
+    Rectangle getSingleWatermarkBounds(
+            int imageWidth, 
+            int imageHeight, 
+            WatermarkAsset.Variant watermark, 
+            Position position, 
+            double customX, 
+            double customY, 
+            int margin
     ) {
-        int wmWidth = watermarkImage.getWidth();
-        int wmHeight = watermarkImage.getHeight();
-        int margin = 20;
+        int wmWidth = watermark.getWidth();
+        int wmHeight = watermark.getHeight();
         int x = 0;
         int y = 0;
         
         // 根据位置计算坐标
         if (position == Position.CUSTOM) {
             // 使用自定义坐标
-            x = (int) (customX * (image.getWidth() - wmWidth)) - margin / 2;
-            y = (int) (customY * (image.getHeight() - wmHeight)) - margin / 2;
+            x = (int) (customX * (imageWidth - wmWidth)) - margin / 2;
+            y = (int) (customY * (imageHeight - wmHeight)) - margin / 2;
             
             // 确保坐标在有效范围内
-            x = Math.max(margin, Math.min(x, image.getWidth() - wmWidth - margin));
-            y = Math.max(margin, Math.min(y, image.getHeight() - wmHeight - margin));
+            x = Math.max(margin, Math.min(x, imageWidth - wmWidth - margin));
+            y = Math.max(margin, Math.min(y, imageHeight - wmHeight - margin));
         } else {
             // 使用预设位置
             switch (position) {
@@ -178,94 +233,105 @@ public class ImageWatermarkProcessor {
                     y = margin;
                     break;
                 case TOP_CENTER:
-                    x = (image.getWidth() - wmWidth) / 2;
+                    x = (imageWidth - wmWidth) / 2;
                     y = margin;
                     break;
                 case TOP_RIGHT:
-                    x = image.getWidth() - wmWidth - margin;
+                    x = imageWidth - wmWidth - margin;
                     y = margin;
                     break;
                 case CENTER_LEFT:
                     x = margin;
-                    y = (image.getHeight() - wmHeight) / 2;
+                    y = (imageHeight - wmHeight) / 2;
                     break;
                 case CENTER:
-                    x = (image.getWidth() - wmWidth) / 2;
-                    y = (image.getHeight() - wmHeight) / 2;
+                    x = (imageWidth - wmWidth) / 2;
+                    y = (imageHeight - wmHeight) / 2;
                     break;
                 case CENTER_RIGHT:
-                    x = image.getWidth() - wmWidth - margin;
-                    y = (image.getHeight() - wmHeight) / 2;
+                    x = imageWidth - wmWidth - margin;
+                    y = (imageHeight - wmHeight) / 2;
                     break;
                 case BOTTOM_LEFT:
                     x = margin;
-                    y = image.getHeight() - wmHeight - margin;
+                    y = imageHeight - wmHeight - margin;
                     break;
                 case BOTTOM_CENTER:
-                    x = (image.getWidth() - wmWidth) / 2;
-                    y = image.getHeight() - wmHeight - margin;
+                    x = (imageWidth - wmWidth) / 2;
+                    y = imageHeight - wmHeight - margin;
                     break;
+                case AUTO:
+                    throw new IllegalArgumentException("AUTO位置需先按图片内容解析（见WatermarkCompositor.resolveAutomatic）");
                 case BOTTOM_RIGHT:
                 default:
-                    x = image.getWidth() - wmWidth - margin;
-                    y = image.getHeight() - wmHeight - margin;
+                    x = imageWidth - wmWidth - margin;
+                    y = imageHeight - wmHeight - margin;
                     break;
             }
         }
         
-        // 保存当前变换状态
-        AffineTransform originalTransform = g2d.getTransform();
-        
-        if (rotation != 0) {
-            // 旋转水印
-            g2d.translate(x + wmWidth / 2, y + wmHeight / 2);
-            g2d.rotate(Math.toRadians(rotation));
-            g2d.drawImage(watermarkImage, -wmWidth / 2, -wmHeight / 2, null);
-        } else {
-            // 不旋转
-            g2d.drawImage(watermarkImage, x, y, null);
-        }
-        
-        // 恢复原始变换
-        g2d.setTransform(originalTransform);
+        // 变体已按需旋转，旋转中心对齐到水印中心即可
+        return new Rectangle(
+                x + wmWidth / 2 - watermark.getAnchorX(), 
+                y + wmHeight / 2 - watermark.getAnchorY(), 
+                watermark.getImage().getWidth(), 
+                watermark.getImage().getHeight());
     }
     
     /**
-     * 绘制平铺图片水印
+     * 绘制平铺图片水印：旋转后的水印只渲染一次到图块中（由水印资源缓存），再以图块一次填充整个画布
      */
     private void drawTiledImageWatermark(
             Graphics2D g2d, 
-            BufferedImage image, 
-            BufferedImage watermarkImage, 
-            double rotation
+            int imageWidth, 
+            int imageHeight, 
+            WatermarkAsset asset, 
+            float scale, 
+            double rotation, 
+            float opacity, 
+            RenderQuality quality
     ) {
-        int wmWidth = watermarkImage.getWidth();
-        int wmHeight = watermarkImage.getHeight();
-        
-        // 保存当前变换状态
-        AffineTransform originalTransform = g2d.getTransform();
-        
-        // 平铺绘制水印，每个水印绕自己的中心旋转
-        for (int x = -wmWidth; x < image.getWidth() + wmWidth; x += wmWidth * 2) {
-            for (int y = -wmHeight; y < image.getHeight() + wmHeight; y += wmHeight * 2) {
-                // 保存当前变换状态
-                AffineTransform tileTransform = new AffineTransform(originalTransform);
-                g2d.setTransform(tileTransform);
-                
-                if (rotation != 0) {
-                    // 移动到水印位置，然后绕水印中心旋转
-                    g2d.translate(x + wmWidth / 2, y + wmHeight / 2);
-                    g2d.rotate(Math.toRadians(rotation));
-                    g2d.drawImage(watermarkImage, -wmWidth / 2, -wmHeight / 2, null);
-                } else {
-                    // 不旋转，直接绘制
-                    g2d.drawImage(watermarkImage, x, y, null);
-                }
-            }
+        // 平铺间距按未裁剪的水印尺寸计算
+        WatermarkAsset.Variant watermark = asset.getVariant(scale, 0, quality);
+        BufferedImage tileCell = asset.getTileCell(scale, rotation, opacity, quality);
+        fillTileCell(g2d, tileCell, watermark.getWidth(), watermark.getHeight(), imageWidth, imageHeight);
+    }
+    
+    /**
+     * 以平铺图块填充整个画布：平铺网格从(-wmWidth, -wmHeight)开始，间距为水印尺寸的两倍
+     */
+    static void fillTileCell(
+            Graphics2D g2d, 
+            BufferedImage tileCell, 
+            int wmWidth, 
+            int wmHeight, 
+            int imageWidth, 
+            int imageHeight
+    ) {
+        // 透明度已应用在图块中
+        Composite originalComposite = g2d.getComposite();
+        g2d.setComposite(AlphaComposite.SrcOver);
+        TilePattern.fill(g2d, tileCell, -wmWidth, -wmHeight, imageWidth, imageHeight);
+        g2d.setComposite(originalComposite);
+    }
+    
+    /**
+     * 预先生成水印绘制所需的缓存（变体或平铺图块），供并行绘制前调用
+     */
+    public void prepareImageWatermark(ImageWatermarkSpec spec) {
+        prepareImageWatermark(spec, RenderQuality.BALANCED);
+    }
+    
+    /**
+     * 预先生成按指定渲染质量绘制所需的缓存
+     */
+    public void prepareImageWatermark(ImageWatermarkSpec spec, RenderQuality quality) {
+        WatermarkAsset asset = spec.getWatermarkAsset();
+        if (spec.isTiling()) {
+            asset.getTileCell(spec.getScale(), spec.getRotation(), spec.getOpacity(), quality);
+        } else {
+            asset.getVariant(spec.getScale(), spec.getRotation(), quality).getBlendSource();
         }
-        
-        // 恢复原始变换
-        g2d.setTransform(originalTransform);
     }
     
     /**
@@ -0,0 +1,181 @@
+package com.photowatermark;
+
+import java.awt.image.BufferedImage;
+import java.util.Objects;
+
+/**
+ * 图片水印参数 - 不可变对象，保存一次图片水印绘制所需的全部设置
+ */
+public final class ImageWatermarkSpec implements WatermarkSpec {
+    private final WatermarkAsset watermarkAsset;
+    private final float scale;
+    private final float opacity;
+    private final Position position;
+    private final double rotation;
+    private final boolean tiling;
+    private final double customX; // 自定义X坐标 (0-1)
+    private final double customY; // 自定义Y坐标 (0-1)
+    private final int margin; // 预设位置与图片边缘的距离（像素）
+    
+    public ImageWatermarkSpec(
+            BufferedImage watermarkImage, 
+            float scale,
+            float opacity, 
+            Position position, 
+            double rotation, 
+            boolean tiling,
+            double customX,
+            double customY
+    ) {
+        this(WatermarkAssetCache.forImage(watermarkImage), scale, opacity, position, rotation, tiling, customX, customY);
+    }
+    
+    public ImageWatermarkSpec(
+            WatermarkAsset watermarkAsset, 
+            float scale,
+            float opacity, 
+            Position position, 
+            double rotation, 
+            boolean tiling,
+            double customX,
+            double customY
+    ) {
+        this(watermarkAsset, scale, opacity, position, rotation, tiling, customX, customY, DEFAULT_MARGIN);
+    }
+    
+    private ImageWatermarkSpec(
+            WatermarkAsset watermarkAsset, 
+            float scale,
+            float opacity, 
+            Position position, 
+            double rotation, 
+            boolean tiling,
+            double customX,
+            double customY,
+            int margin
+    ) {
+        if (margin < 0) {
+            throw new IllegalArgumentException("边距不能小于0: " + margin);
+        }
+        this.watermarkAsset = watermarkAsset;
+        this.scale = scale;
+        this.opacity = opacity;
+        this.position = position;
+        this.rotation = rotation;
+        this.tiling = tiling;
+        this.customX = customX;
+        this.customY = customY;
+        this.margin = margin;
+    }
+    
+    public ImageWatermarkSpec(
+            BufferedImage watermarkImage, 
+            float scale,
+            float opacity, 
+            Position position, 
+            double rotation, 
+            boolean tiling
+    ) {
+        // 对于CUSTOM位置，默认使用(0.5, 0.5)即中心位置
+        this(watermarkImage, scale, opacity, position, rotation, tiling, 0.5, 0.5);
+    }
+    
+    public BufferedImage getWatermarkImage() {
+        return watermarkAsset.getImage();
+    }
+    
+    /**
+     * 水印图片资源（含缩放/旋转变体缓存）
+     */
+    public WatermarkAsset getWatermarkAsset() {
+        return watermarkAsset;
+    }
+    
+    public float getScale() {
+        return scale;
+    }
+    
+    public float getOpacity() {
+        return opacity;
+    }
+    
+    @Override
+    public Position getPosition() {
+        return position;
+    }
+    
+    public double getRotation() {
+        return rotation;
+    }
+    
+    @Override
+    public boolean isTiling() {
+        return tiling;
+    }
+    
+    public double getCustomX() {
+        return customX;
+    }
+    
+    public double getCustomY() {
+        return customY;
+    }
+    
+    @Override
+    public int getMargin() {
+        return margin;
+    }
+    
+    @Override
+    public ImageWatermarkSpec withPosition(Position position) {
+        return new ImageWatermarkSpec(watermarkAsset, scale, opacity, position, rotation, tiling, 
+                customX, customY, margin);
+    }
+    
+    /**
+     * 返回边距不同、其余参数相同的副本
+     */
+    public ImageWatermarkSpec withMargin(int margin) {
+        return new ImageWatermarkSpec(watermarkAsset, scale, opacity, position, rotation, tiling, 
+                customX, customY, margin);
+    }
+    
+    /**
+     * 缩放比例和边距按比例缩放
+     */
+    @Override
+    public ImageWatermarkSpec scaled(double factor) {
+        if (factor <= 0) {
+            throw new IllegalArgumentException("缩放比例必须大于0: " + factor);
+        }
+        return new ImageWatermarkSpec(watermarkAsset, (float) (scale * factor), opacity, position, rotation, 
+                tiling, customX, customY, (int) Math.round(margin * factor));
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ImageWatermarkSpec)) {
+            return false;
+        }
+        ImageWatermarkSpec that = (ImageWatermarkSpec) o;
+        // 水印按原始图片的引用比较，由同一张图片创建的参数视为相同
+        return watermarkAsset.getImage() == that.watermarkAsset.getImage()
+                && Float.compare(scale, that.scale) == 0
+                && Float.compare(opacity, that.opacity) == 0
+                && Double.compare(rotation, that.rotation) == 0
+                && tiling == that.tiling
+                && Double.compare(customX, that.customX) == 0
+                && Double.compare(customY, that.customY) == 0
+                && margin == that.margin
+                && position == that.position;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(System.identityHashCode(watermarkAsset.getImage()), scale, opacity, position, 
+                rotation, tiling, customX, customY, margin);
+    }
+}
@@ -0,0 +1,218 @@
+package com.photowatermark;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 增量水印渲染器 - 用于预览。保留原图作为干净底图，记录每个水印上次绘制的范围（旋转后的包围盒），
+ * 参数变化时只把新旧两个脏矩形从原图恢复并重绘，而不是整帧重新合成。
+ * 平铺水印覆盖整个画布，无法局部更新，此时退回整帧合成。
+ *
+ * 注意：返回的画布会在下次渲染时被原地更新，调用方不应修改它；原图在渲染期间也不能被修改。
+ */
+public class IncrementalWatermarkRenderer {
+    private final WatermarkCompositor compositor;
+
+    // 干净底图（原图）和上次渲染结果
+    private BufferedImage sourceImage;
+    private BufferedImage canvas;
+    // 原图的区域统计（自动位置和自动对比度使用），原图变化时重新生成
+    private RegionStatistics statistics;
+
+    // 上次渲染的水印参数及其范围
+    private List<WatermarkSpec> renderedSpecs = new ArrayList<>();
+    private List<Rectangle> renderedBounds = new ArrayList<>();
+    private RenderQuality renderedQuality;
+
+    // 统计：整帧渲染次数和局部渲染次数
+    private long fullRenderCount;
+    private long partialRenderCount;
+
+    public IncrementalWatermarkRenderer(WatermarkCompositor compositor) {
+        this.compositor = compositor;
+    }
+
+    /**
+     * 渲染水印，尽可能只重绘发生变化的区域
+     */
+    public BufferedImage render(BufferedImage originalImage, List<? extends WatermarkSpec> specs) {
+        return render(originalImage, specs, RenderQuality.BALANCED);
+    }
+    
+    /**
+     * 按指定的渲染质量渲染水印；质量与上次不同时整帧渲染
+     */
+    public synchronized BufferedImage render(
+            BufferedImage originalImage, 
+            List<? extends WatermarkSpec> specs, 
+            RenderQuality quality
+    ) {
+        int imageWidth = originalImage.getWidth();
+        int imageHeight = originalImage.getHeight();
+
+        // 自动位置和自动对比度的水印先确定参数，结果变化时与其他参数变化一样局部重绘
+        if (originalImage != sourceImage) {
+            statistics = null;
+        }
+        specs = compositor.resolveAutomatic(specs, () -> getStatistics(originalImage), 
+                imageWidth, imageHeight, quality);
+
+        // 计算本次每个水印的范围，平铺水印为null
+        List<Rectangle> bounds = new ArrayList<>(specs.size());
+        for (WatermarkSpec spec : specs) {
+            bounds.add(spec.isTiling() ? null : compositor.getWatermarkBounds(spec, imageWidth, imageHeight, quality));
+        }
+
+        if (quality != renderedQuality || !canRenderIncrementally(originalImage, specs, bounds)) {
+            canvas = compositor.composite(originalImage, specs, null, quality);
+            fullRenderCount++;
+        } else {
+            List<Rectangle> dirtyRegions = collectDirtyRegions(specs, bounds, imageWidth, imageHeight);
+            if (!dirtyRegions.isEmpty()) {
+                redrawRegions(dirtyRegions, specs, imageWidth, imageHeight, quality);
+                partialRenderCount++;
+            }
+        }
+
+        sourceImage = originalImage;
+        renderedSpecs = new ArrayList<>(specs);
+        renderedBounds = bounds;
+        renderedQuality = quality;
+
+        return canvas;
+    }
+
+    private RegionStatistics getStatistics(BufferedImage originalImage) {
+        if (statistics == null) {
+            statistics = RegionStatistics.of(originalImage);
+        }
+        return statistics;
+    }
+
+    /**
+     * 判断能否在上次的画布上局部更新
+     */
+    private boolean canRenderIncrementally(
+            BufferedImage originalImage,
+            List<? extends WatermarkSpec> specs,
+            List<Rectangle> bounds
+    ) {
+        // 原图或水印数量发生变化时必须整帧渲染
+        if (canvas == null || originalImage != sourceImage || specs.size() != renderedSpecs.size()) {
+            return false;
+        }
+
+        // 新旧任一平铺水印都会影响整个画布
+        for (int i = 0; i < specs.size(); i++) {
+            if (bounds.get(i) == null || renderedBounds.get(i) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 收集发生变化的水印的新旧范围，相交的矩形合并，避免重复重绘
+     */
+    private List<Rectangle> collectDirtyRegions(
+            List<? extends WatermarkSpec> specs,
+            List<Rectangle> bounds,
+            int imageWidth,
+            int imageHeight
+    ) {
+        Rectangle imageBounds = new Rectangle(0, 0, imageWidth, imageHeight);
+        List<Rectangle> dirtyRegions = new ArrayList<>();
+
+        for (int i = 0; i < specs.size(); i++) {
+            if (specs.get(i).equals(renderedSpecs.get(i))) {
+                continue;
+            }
+            addDirtyRegion(dirtyRegions, renderedBounds.get(i).intersection(imageBounds));
+            addDirtyRegion(dirtyRegions, bounds.get(i).intersection(imageBounds));
+        }
+        return dirtyRegions;
+    }
+
+    private void addDirtyRegion(List<Rectangle> dirtyRegions, Rectangle region) {
+        if (region.isEmpty()) {
+            return;
+        }
+
+        // 与已有矩形相交则合并，合并后的矩形可能又与其他矩形相交，需要重新检查
+        Rectangle merged = new Rectangle(region);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < dirtyRegions.size(); i++) {
+                if (dirtyRegions.get(i).intersects(merged)) {
+                    merged.add(dirtyRegions.remove(i));
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        dirtyRegions.add(merged);
+    }
+
+    /**
+     * 从原图恢复脏矩形，再在裁剪区域内按顺序重绘所有水印
+     */
+    private void redrawRegions(
+            List<Rectangle> dirtyRegions,
+            List<? extends WatermarkSpec> specs,
+            int imageWidth,
+            int imageHeight,
+            RenderQuality quality
+    ) {
+        Graphics2D g2d = canvas.createGraphics();
+        quality.applyTo(g2d);
+
+        for (Rectangle region : dirtyRegions) {
+            g2d.setClip(region);
+
+            // 直接替换像素（而不是叠加），保证原图带透明通道时也能完全清除旧水印
+            Composite originalComposite = g2d.getComposite();
+            g2d.setComposite(AlphaComposite.Src);
+            if (OffHeapImages.isOffHeap(sourceImage)) {
+                // 堆外原图按行带批量拷贝，裁剪区域限制了实际写入的像素
+                OffHeapImages.draw(g2d, sourceImage);
+            } else {
+                g2d.drawImage(sourceImage,
+                        region.x, region.y, region.x + region.width, region.y + region.height,
+                        region.x, region.y, region.x + region.width, region.y + region.height,
+                        null);
+            }
+            g2d.setComposite(originalComposite);
+
+            // 裁剪区域外的绘制会被丢弃，重叠的水印仍按原顺序叠加
+            compositor.drawWatermarks(g2d, canvas, imageWidth, imageHeight, specs, quality);
+        }
+
+        g2d.dispose();
+    }
+
+    /**
+     * 丢弃上次的渲染结果，下次渲染时整帧合成
+     */
+    public synchronized void reset() {
+        sourceImage = null;
+        canvas = null;
+        statistics = null;
+        renderedSpecs = new ArrayList<>();
+        renderedBounds = new ArrayList<>();
+        renderedQuality = null;
+    }
+
+    public synchronized long getFullRenderCount() {
+        return fullRenderCount;
+    }
+
+    public synchronized long getPartialRenderCount() {
+        return partialRenderCount;
+    }
+}
@@ -0,0 +1,252 @@
+package com.photowatermark;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 堆外图像 - 像素存放在直接内存或内存映射的临时文件中，不占用Java堆，
+ * 打开大尺寸原图时不会因为几十MB的像素数组进入老年代而引起长时间的GC停顿；
+ * 内存映射的图像还可以由操作系统换出到磁盘。
+ *
+ * 图像为TYPE_CUSTOM，像素布局与TYPE_INT_RGB/TYPE_INT_ARGB相同，可以直接交给各水印处理器读取和绘制。
+ * Java2D对自定义数据缓冲区只能逐个像素读写，整帧拷贝比堆内图像慢一个数量级，
+ * 因此拷入和绘制原图都按行带经过一个小的堆内缓冲区批量进行（见copyOf和draw）。
+ * 批量读写期间用Reference.reachabilityFence保持图像可达，映射不会在使用中被解除
+ */
+public final class OffHeapImages {
+    // 批量拷贝时每个行带的行数
+    private static final int BAND_ROWS = 64;
+    // 内存映射图像被回收后解除映射并删除临时文件
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private OffHeapImages() {
+    }
+
+    /**
+     * 创建像素存放在直接内存中的图像，内容为全0
+     */
+    public static BufferedImage allocate(int width, int height, boolean alpha) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(byteCount(width, height));
+        return createImage(buffer, width, height, alpha);
+    }
+
+    /**
+     * 创建像素存放在内存映射临时文件中的图像，内容为全0。临时文件在映射后立即删除；
+     * 不支持删除已映射文件的系统（Windows）上，图像被回收时先解除映射再删除
+     *
+     * @param directory 临时文件所在目录，null表示系统临时目录
+     */
+    public static BufferedImage allocateMapped(int width, int height, boolean alpha, File directory) throws IOException {
+        int bytes = byteCount(width, height);
+        File file = File.createTempFile("pixels", ".raw", directory);
+        MappedByteBuffer buffer;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        } catch (IOException | RuntimeException e) {
+            file.delete();
+            throw e;
+        }
+        BufferedImage image = createImage(buffer, width, height, alpha);
+        // 清理动作只引用映射缓冲区和文件，不能引用图像本身，否则图像永远不会被回收
+        CLEANER.register(image.getRaster().getDataBuffer(), new MappedFile(buffer, file.delete() ? null : file));
+        return image;
+    }
+
+    /**
+     * 把图片复制到直接内存中（原图带透明通道时保留透明通道）
+     */
+    public static BufferedImage copyOf(BufferedImage source) {
+        BufferedImage image = allocate(source.getWidth(), source.getHeight(), source.getColorModel().hasAlpha());
+        copyPixels(source, image);
+        return image;
+    }
+
+    /**
+     * 把图片复制到内存映射的临时文件中
+     *
+     * @param directory 临时文件所在目录，null表示系统临时目录
+     */
+    public static BufferedImage copyOfMapped(BufferedImage source, File directory) throws IOException {
+        BufferedImage image = allocateMapped(
+                source.getWidth(), source.getHeight(), source.getColorModel().hasAlpha(), directory);
+        copyPixels(source, image);
+        return image;
+    }
+
+    /**
+     * 判断图像的像素是否存放在堆外
+     */
+    public static boolean isOffHeap(BufferedImage image) {
+        return image.getRaster().getDataBuffer() instanceof DirectDataBuffer;
+    }
+
+    /**
+     * 把图像绘制到(0, 0)，效果与g2d.drawImage(image, 0, 0, null)相同（使用图形上下文当前的合成规则和裁剪区域）。
+     * 堆外图像按行带批量读出后绘制，只处理裁剪区域覆盖的行
+     */
+    public static void draw(Graphics2D g2d, BufferedImage image) {
+        if (!isOffHeap(image)) {
+            g2d.drawImage(image, 0, 0, null);
+            return;
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int firstRow = 0;
+        int lastRow = height;
+        Rectangle clip = g2d.getClipBounds();
+        if (clip != null) {
+            firstRow = Math.max(0, clip.y);
+            lastRow = Math.min(height, clip.y + clip.height);
+        }
+        if (firstRow >= lastRow) {
+            return;
+        }
+
+        IntBuffer pixels = pixelsOf(image);
+        BufferedImage band = createBand(image, Math.min(BAND_ROWS, lastRow - firstRow));
+        int[] bandData = ((DataBufferInt) band.getRaster().getDataBuffer()).getData();
+        for (int y = firstRow; y < lastRow; y += band.getHeight()) {
+            int rows = Math.min(band.getHeight(), lastRow - y);
+            pixels.position(y * width);
+            pixels.get(bandData, 0, rows * width);
+            g2d.drawImage(band, 0, y, width, y + rows, 0, 0, width, rows, null);
+        }
+        Reference.reachabilityFence(image);
+    }
+
+    /**
+     * 把原图按行带转换为int像素后批量写入堆外图像
+     */
+    private static void copyPixels(BufferedImage source, BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        IntBuffer pixels = pixelsOf(image);
+        BufferedImage band = createBand(image, Math.min(BAND_ROWS, height));
+        int[] bandData = ((DataBufferInt) band.getRaster().getDataBuffer()).getData();
+        Graphics2D g2d = band.createGraphics();
+        g2d.setComposite(AlphaComposite.Src);
+        try {
+            for (int y = 0; y < height; y += band.getHeight()) {
+                int rows = Math.min(band.getHeight(), height - y);
+                g2d.drawImage(source, 0, -y, null);
+                pixels.position(y * width);
+                pixels.put(bandData, 0, rows * width);
+            }
+        } finally {
+            g2d.dispose();
+            Reference.reachabilityFence(image);
+        }
+    }
+
+    /**
+     * 与堆外图像像素布局相同的堆内行带
+     */
+    private static BufferedImage createBand(BufferedImage image, int rows) {
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        return new BufferedImage(image.getWidth(), rows, type);
+    }
+
+    /**
+     * 堆外图像像素缓冲区的独立视图（位置互不影响，可在多个线程中同时读取）
+     */
+    private static IntBuffer pixelsOf(BufferedImage image) {
+        return ((DirectDataBuffer) image.getRaster().getDataBuffer()).getPixels().duplicate();
+    }
+
+    private static int byteCount(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("图像尺寸必须大于0: " + width + "x" + height);
+        }
+        long bytes = (long) width * height * Integer.BYTES;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("图像过大，无法存放在单个堆外缓冲区中: " + width + "x" + height);
+        }
+        return (int) bytes;
+    }
+
+    /**
+     * 在缓冲区上创建与TYPE_INT_RGB/TYPE_INT_ARGB像素布局相同的图像
+     */
+    private static BufferedImage createImage(ByteBuffer buffer, int width, int height, boolean alpha) {
+        IntBuffer pixels = buffer.order(ByteOrder.nativeOrder()).asIntBuffer();
+        DirectColorModel colorModel = alpha
+                ? (DirectColorModel) ColorModel.getRGBdefault()
+                : new DirectColorModel(24, 0x00ff0000, 0x0000ff00, 0x000000ff);
+        SinglePixelPackedSampleModel sampleModel = new SinglePixelPackedSampleModel(
+                DataBuffer.TYPE_INT, width, height, colorModel.getMasks());
+        WritableRaster raster = Raster.createWritableRaster(sampleModel, new DirectDataBuffer(pixels), null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    /**
+     * 内存映射图像的清理动作：解除映射后删除未能在映射时删除的临时文件
+     */
+    private static final class MappedFile implements Runnable {
+        // sun.misc.Unsafe.invokeCleaner（Java 9+），不可用时只能等映射缓冲区被回收
+        private static final Object UNSAFE;
+        private static final Method INVOKE_CLEANER;
+
+        static {
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                unsafe = null;
+                invokeCleaner = null;
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+        }
+
+        private final MappedByteBuffer buffer;
+        private final File file;
+
+        MappedFile(MappedByteBuffer buffer, File file) {
+            this.buffer = buffer;
+            this.file = file;
+        }
+
+        @Override
+        public void run() {
+            boolean unmapped = false;
+            if (INVOKE_CLEANER != null) {
+                try {
+                    INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                    unmapped = true;
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    // 解除映射失败时保留映射，文件在退出时删除
+                }
+            }
+            if (file != null && !(unmapped && file.delete())) {
+                file.deleteOnExit();
+            }
+        }
+    }
+}
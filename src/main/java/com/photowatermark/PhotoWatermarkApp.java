@@ -45,7 +45,7 @@ public class PhotoWatermarkApp {
             Color watermarkColor = InputParser.parseColor(colorStr, Color.RED);
             
             // 获取水印位置
-            System.out.println("请输入水印位置（TOP_LEFT, TOP_CENTER, TOP_RIGHT, CENTER_LEFT, CENTER, CENTER_RIGHT, BOTTOM_LEFT, BOTTOM_CENTER, BOTTOM_RIGHT，默认为BOTTOM_RIGHT）：");
+            System.out.println("请输入水印位置（TOP_LEFT, TOP_CENTER, TOP_RIGHT, CENTER_LEFT, CENTER, CENTER_RIGHT, BOTTOM_LEFT, BOTTOM_CENTER, BOTTOM_RIGHT, AUTO，默认为BOTTOM_RIGHT）：");
             String positionStr = scanner.nextLine().trim();
             Position position = InputParser.parsePosition(positionStr, Position.BOTTOM_RIGHT);
             
@@ -13,5 +13,6 @@ public enum Position {
     BOTTOM_LEFT,
     BOTTOM_CENTER,
     BOTTOM_RIGHT,
-    CUSTOM // 自定义位置
+    CUSTOM, // 自定义位置
+    AUTO // 自动：在九个预设位置中选择背景细节最少的一个
 }
\ No newline at end of file
@@ -0,0 +1,251 @@
+package com.photowatermark;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.lang.ref.Reference;
+import java.nio.IntBuffer;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * 区域统计 - 把图片缩小为长边不超过256像素的代理图，并为亮度和边缘强度分别建立积分图（前缀和表），
+ * 之后任意矩形区域的平均亮度和细节多少都可以在O(1)时间内求出。用于按水印下方的背景选择颜色和位置。
+ * 统计结果与生成时的像素对应，图片内容变化后需要重新生成
+ */
+final class RegionStatistics {
+    // 代理图长边的最大像素数
+    static final int MAX_PROXY_SIZE = 256;
+    // 每个代理像素在每个方向上的采样数
+    private static final int SAMPLES = 2;
+    // 亮度的定点精度：0-65535对应相对亮度0-1
+    private static final int LUMINANCE_SCALE = 65535;
+    // sRGB分量到线性相对亮度贡献的查找表
+    private static final int[] RED_LUMINANCE = new int[256];
+    private static final int[] GREEN_LUMINANCE = new int[256];
+    private static final int[] BLUE_LUMINANCE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            double linear = toLinear(i / 255.0) * LUMINANCE_SCALE;
+            RED_LUMINANCE[i] = (int) Math.round(0.2126 * linear);
+            GREEN_LUMINANCE[i] = (int) Math.round(0.7152 * linear);
+            BLUE_LUMINANCE[i] = (int) Math.round(0.0722 * linear);
+        }
+    }
+
+    private final int imageWidth;
+    private final int imageHeight;
+    // 每个代理像素覆盖的原图像素数（边长）
+    private final int cellSize;
+    private final int proxyWidth;
+    private final int proxyHeight;
+    // 代理图相对亮度（0-65535）和边缘强度的积分图，比代理图多一行一列
+    private final long[] luminanceTable;
+    private final long[] edgeTable;
+
+    private RegionStatistics(int imageWidth, int imageHeight, int cellSize, int proxyWidth, int proxyHeight,
+            int[] luminance, int[] luma) {
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.cellSize = cellSize;
+        this.proxyWidth = proxyWidth;
+        this.proxyHeight = proxyHeight;
+        this.luminanceTable = buildTable(luminance, proxyWidth, proxyHeight);
+        this.edgeTable = buildTable(edges(luma, proxyWidth, proxyHeight), proxyWidth, proxyHeight);
+    }
+
+    /**
+     * 统计图片：每个代理像素取所覆盖区域内SAMPLES x SAMPLES个采样点的平均值，只读取采样点的像素
+     */
+    static RegionStatistics of(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int cellSize = Math.max(1, (Math.max(width, height) + MAX_PROXY_SIZE - 1) / MAX_PROXY_SIZE);
+        int proxyWidth = (width + cellSize - 1) / cellSize;
+        int proxyHeight = (height + cellSize - 1) / cellSize;
+        int samples = Math.min(SAMPLES, cellSize);
+
+        // 采样点在代理像素内的偏移
+        int[] offsets = new int[samples];
+        for (int s = 0; s < samples; s++) {
+            offsets[s] = (2 * s + 1) * cellSize / (2 * samples);
+        }
+
+        IntBinaryOperator sampler = createSampler(image);
+        int[] luminance = new int[proxyWidth * proxyHeight];
+        int[] luma = new int[proxyWidth * proxyHeight];
+        for (int py = 0; py < proxyHeight; py++) {
+            for (int px = 0; px < proxyWidth; px++) {
+                long luminanceSum = 0;
+                int lumaSum = 0;
+                int count = 0;
+                for (int sy : offsets) {
+                    int y = Math.min(height - 1, py * cellSize + sy);
+                    for (int sx : offsets) {
+                        int rgb = sampler.applyAsInt(Math.min(width - 1, px * cellSize + sx), y);
+                        luminanceSum += luminanceOf(rgb);
+                        lumaSum += lumaOf(rgb);
+                        count++;
+                    }
+                }
+                luminance[py * proxyWidth + px] = (int) (luminanceSum / count);
+                luma[py * proxyWidth + px] = lumaSum / count;
+            }
+        }
+        // 采样器直接读取堆外像素，读取完成前图像不能被回收（映射会随之解除）
+        Reference.reachabilityFence(image);
+        return new RegionStatistics(width, height, cellSize, proxyWidth, proxyHeight, luminance, luma);
+    }
+
+    /**
+     * 常见的像素布局直接读取数据缓冲区，其他类型使用getRGB
+     */
+    private static IntBinaryOperator createSampler(BufferedImage image) {
+        int type = image.getType();
+        Raster raster = image.getRaster();
+        SampleModel sampleModel = raster.getSampleModel();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        int rasterX = raster.getSampleModelTranslateX();
+        int rasterY = raster.getSampleModelTranslateY();
+
+        if ((type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB)
+                && sampleModel instanceof SinglePixelPackedSampleModel
+                && dataBuffer instanceof DataBufferInt) {
+            int[] data = ((DataBufferInt) dataBuffer).getData();
+            int stride = ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+            int offset = dataBuffer.getOffset() - rasterY * stride - rasterX;
+            return (x, y) -> data[offset + y * stride + x];
+        }
+        if ((type == BufferedImage.TYPE_3BYTE_BGR || type == BufferedImage.TYPE_4BYTE_ABGR)
+                && sampleModel instanceof ComponentSampleModel
+                && dataBuffer instanceof DataBufferByte) {
+            byte[] data = ((DataBufferByte) dataBuffer).getData();
+            ComponentSampleModel componentModel = (ComponentSampleModel) sampleModel;
+            int pixelStride = componentModel.getPixelStride();
+            int stride = componentModel.getScanlineStride();
+            int[] bandOffsets = componentModel.getBandOffsets();
+            int offset = dataBuffer.getOffset() - rasterY * stride - rasterX * pixelStride;
+            int red = bandOffsets[0];
+            int green = bandOffsets[1];
+            int blue = bandOffsets[2];
+            return (x, y) -> {
+                int i = offset + y * stride + x * pixelStride;
+                return ((data[i + red] & 0xff) << 16) | ((data[i + green] & 0xff) << 8) | (data[i + blue] & 0xff);
+            };
+        }
+        if (dataBuffer instanceof DirectDataBuffer
+                && sampleModel instanceof SinglePixelPackedSampleModel) {
+            // 堆外图像（OffHeapImages），像素布局与TYPE_INT_RGB相同
+            IntBuffer pixels = ((DirectDataBuffer) dataBuffer).getPixels();
+            int stride = ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+            int offset = dataBuffer.getOffset() - rasterY * stride - rasterX;
+            return (x, y) -> pixels.get(offset + y * stride + x);
+        }
+        return image::getRGB;
+    }
+
+    /**
+     * 像素的相对亮度（0-65535），透明通道被忽略
+     */
+    static int luminanceOf(int rgb) {
+        return RED_LUMINANCE[(rgb >> 16) & 0xff] + GREEN_LUMINANCE[(rgb >> 8) & 0xff] + BLUE_LUMINANCE[rgb & 0xff];
+    }
+
+    /**
+     * 像素的感知亮度（0-255，Rec.601），边缘检测在感知亮度上进行，暗部的细节不会被低估
+     */
+    private static int lumaOf(int rgb) {
+        return (77 * ((rgb >> 16) & 0xff) + 150 * ((rgb >> 8) & 0xff) + 29 * (rgb & 0xff)) >> 8;
+    }
+
+    /**
+     * sRGB分量（0-1）转换为线性值
+     */
+    static double toLinear(double component) {
+        return component <= 0.04045 ? component / 12.92 : Math.pow((component + 0.055) / 1.055, 2.4);
+    }
+
+    /**
+     * 边缘强度：与右侧、下方相邻像素的亮度差的绝对值之和，最后一行和最后一列只计算一个方向
+     */
+    private static int[] edges(int[] luma, int width, int height) {
+        int[] edges = new int[luma.length];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                int edge = 0;
+                if (x + 1 < width) {
+                    edge += Math.abs(luma[i + 1] - luma[i]);
+                }
+                if (y + 1 < height) {
+                    edge += Math.abs(luma[i + width] - luma[i]);
+                }
+                edges[i] = edge;
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * 积分图：table[(y + 1) * (width + 1) + (x + 1)]为代理图中(0, 0)到(x, y)的累加和
+     */
+    private static long[] buildTable(int[] values, int width, int height) {
+        int stride = width + 1;
+        long[] table = new long[stride * (height + 1)];
+        for (int y = 0; y < height; y++) {
+            long rowSum = 0;
+            for (int x = 0; x < width; x++) {
+                rowSum += values[y * width + x];
+                table[(y + 1) * stride + x + 1] = table[y * stride + x + 1] + rowSum;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * 整张图片的平均相对亮度（0-1）
+     */
+    double meanLuminance() {
+        return meanLuminance(new Rectangle(0, 0, imageWidth, imageHeight));
+    }
+
+    /**
+     * 原图坐标中矩形区域的平均相对亮度（0-1），按覆盖该区域的代理像素计算；
+     * 区域完全在图片之外时返回整张图片的平均亮度
+     */
+    double meanLuminance(Rectangle region) {
+        return mean(luminanceTable, region) / LUMINANCE_SCALE;
+    }
+
+    /**
+     * 原图坐标中矩形区域的平均边缘强度（代理图上相邻像素的亮度差，0-510），值越大细节越多
+     */
+    double edgeDensity(Rectangle region) {
+        return mean(edgeTable, region);
+    }
+
+    private double mean(long[] table, Rectangle region) {
+        // 向外取整到完整的代理像素
+        int x0 = Math.max(0, Math.floorDiv(region.x, cellSize));
+        int y0 = Math.max(0, Math.floorDiv(region.y, cellSize));
+        int x1 = Math.min(proxyWidth, Math.floorDiv(region.x + region.width + cellSize - 1, cellSize));
+        int y1 = Math.min(proxyHeight, Math.floorDiv(region.y + region.height + cellSize - 1, cellSize));
+        if (x0 >= x1 || y0 >= y1) {
+            x0 = 0;
+            y0 = 0;
+            x1 = proxyWidth;
+            y1 = proxyHeight;
+        }
+
+        int stride = proxyWidth + 1;
+        long sum = table[y1 * stride + x1] - table[y0 * stride + x1]
+                - table[y1 * stride + x0] + table[y0 * stride + x0];
+        return (double) sum / ((long) (x1 - x0) * (y1 - y0));
+    }
+}
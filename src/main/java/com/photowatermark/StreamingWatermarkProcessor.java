@@ -0,0 +1,214 @@
+package com.photowatermark;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 条带流式水印处理器 - 用于无法整张放入内存的超大图片（拼接全景图、扫描地图等）。
+ * 原图按水平条带通过ImageReader的源区域逐条读取，每条只合成与之相交的水印部分，
+ * 然后直接写入支持分块写入的ImageWriter（如TIFF），峰值内存只与条带大小有关。
+ * 水印位置仍按整张图片的尺寸计算，输出与内存中一次性合成的结果一致。
+ * 自动对比度需要整张图片的亮度统计，流式处理时不生效，文本使用参数中的颜色；
+ * AUTO位置同样依赖整张图片的内容，流式处理时直接拒绝。
+ */
+public class StreamingWatermarkProcessor {
+    public static final int DEFAULT_STRIP_HEIGHT = 512;
+
+    private final WatermarkCompositor compositor;
+    private final int stripHeight;
+    private final RenderQuality quality;
+
+    public StreamingWatermarkProcessor() {
+        this(new WatermarkCompositor(), DEFAULT_STRIP_HEIGHT);
+    }
+
+    public StreamingWatermarkProcessor(WatermarkCompositor compositor, int stripHeight) {
+        this(compositor, stripHeight, RenderQuality.BALANCED);
+    }
+
+    public StreamingWatermarkProcessor(WatermarkCompositor compositor, int stripHeight, RenderQuality quality) {
+        if (stripHeight <= 0) {
+            throw new IllegalArgumentException("条带高度必须大于0: " + stripHeight);
+        }
+        this.compositor = compositor;
+        this.stripHeight = stripHeight;
+        this.quality = quality;
+    }
+
+    /**
+     * 逐条读取原图、合成水印并写入输出文件，输出格式由文件扩展名决定
+     */
+    public void process(File inputFile, File outputFile, List<? extends WatermarkSpec> specs) throws IOException {
+        // 逐条处理时无法预先分析整张图片的内容
+        for (WatermarkSpec spec : specs) {
+            if (WatermarkCompositor.isAutoPosition(spec)) {
+                throw new IllegalArgumentException("流式处理不支持AUTO位置，请指定具体位置");
+            }
+        }
+        String formatName = FileUtils.getFormatName(outputFile.getName());
+
+        try (ImageInputStream input = ImageIO.createImageInputStream(inputFile)) {
+            if (input == null) {
+                throw new IOException("无法读取图片: " + inputFile.getAbsolutePath());
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("不支持的图片格式: " + inputFile.getName());
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+
+                Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(formatName);
+                if (!writers.hasNext()) {
+                    throw new IOException("不支持的输出格式: " + formatName);
+                }
+
+                ImageWriter writer = writers.next();
+                // 先删除旧文件，避免ImageOutputStream在旧内容上覆盖写入
+                if (outputFile.exists() && !outputFile.delete()) {
+                    throw new IOException("无法覆盖输出文件: " + outputFile.getAbsolutePath());
+                }
+                try (ImageOutputStream output = ImageIO.createImageOutputStream(outputFile)) {
+                    writer.setOutput(output);
+                    writeStrips(reader, writer, formatName, specs);
+                } finally {
+                    writer.dispose();
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 按条带读取、合成并写出
+     */
+    private void writeStrips(
+            ImageReader reader,
+            ImageWriter writer,
+            String formatName,
+            List<? extends WatermarkSpec> specs
+    ) throws IOException {
+        int imageWidth = reader.getWidth(0);
+        int imageHeight = reader.getHeight(0);
+
+        if (!writer.canWriteEmpty()) {
+            throw new IOException("输出格式不支持分块写入: " + formatName);
+        }
+
+        // 非平铺水印的范围只计算一次，用于跳过与条带不相交的水印；平铺水印为null，每条都要绘制
+        List<Rectangle> bounds = new ArrayList<>(specs.size());
+        for (WatermarkSpec spec : specs) {
+            bounds.add(spec.isTiling() ? null : compositor.getWatermarkBounds(spec, imageWidth, imageHeight, quality));
+        }
+
+        ImageReadParam readParam = reader.getDefaultReadParam();
+        ImageWriteParam writeParam = writer.getDefaultWriteParam();
+
+        // 目标条带缓冲区在各条带间复用，最后一条不足高度时使用其子图
+        BufferedImage stripBuffer = null;
+        boolean started = false;
+
+        try {
+            for (int stripY = 0; stripY < imageHeight; stripY += stripHeight) {
+                int height = Math.min(stripHeight, imageHeight - stripY);
+                Rectangle stripBounds = new Rectangle(0, stripY, imageWidth, height);
+
+                readParam.setSourceRegion(stripBounds);
+                BufferedImage sourceStrip = reader.read(0, readParam);
+
+                if (stripBuffer == null) {
+                    // 目标类型根据第一条的图像类型和输出格式选择，与内存中合成的规则相同
+                    stripBuffer = new BufferedImage(imageWidth, Math.min(stripHeight, imageHeight),
+                            WatermarkCompositor.selectImageType(sourceStrip, formatName));
+
+                    writer.prepareWriteEmpty(null, ImageTypeSpecifier.createFromRenderedImage(stripBuffer),
+                            imageWidth, imageHeight, null, null, writeParam);
+                    started = true;
+
+                    if (!writer.canReplacePixels(0)) {
+                        throw new IOException("输出格式不支持分块写入: " + formatName);
+                    }
+                }
+
+                BufferedImage strip = height == stripBuffer.getHeight()
+                        ? stripBuffer
+                        : stripBuffer.getSubimage(0, 0, imageWidth, height);
+                renderStrip(strip, sourceStrip, stripBounds, imageWidth, imageHeight, specs, bounds);
+
+                // 把条带写到输出图像的对应位置
+                writer.prepareReplacePixels(0, stripBounds);
+                writeParam.setDestinationOffset(new Point(0, stripY));
+                writer.replacePixels(strip, writeParam);
+                writer.endReplacePixels();
+            }
+        } finally {
+            if (started) {
+                writer.endWriteEmpty();
+            }
+        }
+    }
+
+    /**
+     * 在条带中绘制原图和相交的水印；坐标平移到整张图片的坐标系，水印位置计算与整图合成一致
+     */
+    private void renderStrip(
+            BufferedImage strip,
+            BufferedImage sourceStrip,
+            Rectangle stripBounds,
+            int imageWidth,
+            int imageHeight,
+            List<? extends WatermarkSpec> specs,
+            List<Rectangle> bounds
+    ) {
+        List<WatermarkSpec> visibleSpecs = new ArrayList<>(specs.size());
+        for (int i = 0; i < specs.size(); i++) {
+            Rectangle watermarkBounds = bounds.get(i);
+            if (watermarkBounds == null || watermarkBounds.intersects(stripBounds)) {
+                visibleSpecs.add(specs.get(i));
+            }
+        }
+
+        Graphics2D g2d = strip.createGraphics();
+        quality.applyTo(g2d);
+
+        // 缓冲区在条带间复用，直接替换像素而不是叠加
+        g2d.setComposite(AlphaComposite.Src);
+        g2d.drawImage(sourceStrip, 0, 0, null);
+        g2d.setComposite(AlphaComposite.SrcOver);
+
+        if (!visibleSpecs.isEmpty()) {
+            g2d.translate(0, -stripBounds.y);
+            g2d.clip(stripBounds);
+            compositor.drawWatermarks(g2d, strip, imageWidth, imageHeight, visibleSpecs, quality);
+        }
+
+        g2d.dispose();
+    }
+
+    public int getStripHeight() {
+        return stripHeight;
+    }
+
+    public RenderQuality getQuality() {
+        return quality;
+    }
+}
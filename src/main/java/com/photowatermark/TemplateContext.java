@@ -0,0 +1,63 @@
+package com.photowatermark;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * 文本模板的求值上下文 - 一张图片的文件和序号。拍摄时间、相机型号等元数据在第一次用到时
+ * 才读取（见ImageMetadata）；只使用文件名和序号的模板不会读取图片的元数据。
+ * 传入长期保存的ImageMetadata时，同一张图片的多次求值共用一次读取结果。线程安全
+ */
+public final class TemplateContext {
+    private final ImageMetadata metadata;
+    private final int index;
+
+    /**
+     * @param imageFile 图片文件
+     * @param index 图片序号（通常从1开始）
+     */
+    public TemplateContext(File imageFile, int index) {
+        this(new ImageMetadata(imageFile), index);
+    }
+
+    /**
+     * @param metadata 图片的元数据（读取结果在使用同一对象的上下文之间共享）
+     * @param index 图片序号（通常从1开始）
+     */
+    public TemplateContext(ImageMetadata metadata, int index) {
+        this.metadata = Objects.requireNonNull(metadata, "metadata");
+        this.index = index;
+    }
+
+    public File getImageFile() {
+        return metadata.getFile();
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * 不含扩展名的文件名
+     */
+    public String getFileName() {
+        String name = metadata.getFile().getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * 拍摄时间：EXIF中没有时使用文件的最后修改时间
+     */
+    public LocalDateTime getDateTime() {
+        return metadata.getDateTime();
+    }
+
+    /**
+     * 相机型号，EXIF中没有时为空字符串
+     */
+    public String getCameraModel() {
+        return metadata.getCameraModel();
+    }
+}
@@ -0,0 +1,101 @@
+package com.photowatermark;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * 文本图章 - 预先栅格化好的文本水印（含阴影、描边和旋转），之后的每次绘制只是一次贴图
+ */
+public final class TextStamp {
+    private final BufferedImage image;
+    private final int anchorX; // 旋转中心（或未旋转时的基线起点）在图章中的X坐标
+    private final int anchorY; // 旋转中心（或未旋转时的基线起点）在图章中的Y坐标
+    private final int textWidth;
+    private final int textHeight;
+    private final int ascent;
+    private final int descent;
+    private final BufferedImage tileCell; // 平铺图块，仅平铺水印使用，可能为null
+    
+    public TextStamp(
+            BufferedImage image, 
+            int anchorX, 
+            int anchorY, 
+            int textWidth, 
+            int textHeight, 
+            int ascent, 
+            int descent
+    ) {
+        this(image, anchorX, anchorY, textWidth, textHeight, ascent, descent, null);
+    }
+    
+    public TextStamp(
+            BufferedImage image, 
+            int anchorX, 
+            int anchorY, 
+            int textWidth, 
+            int textHeight, 
+            int ascent, 
+            int descent, 
+            BufferedImage tileCell
+    ) {
+        this.image = image;
+        this.anchorX = anchorX;
+        this.anchorY = anchorY;
+        this.textWidth = textWidth;
+        this.textHeight = textHeight;
+        this.ascent = ascent;
+        this.descent = descent;
+        this.tileCell = tileCell;
+    }
+    
+    public BufferedImage getImage() {
+        return image;
+    }
+    
+    public int getAnchorX() {
+        return anchorX;
+    }
+    
+    public int getAnchorY() {
+        return anchorY;
+    }
+    
+    /**
+     * 文本宽度（与FontMetrics.stringWidth一致，用于定位）
+     */
+    public int getTextWidth() {
+        return textWidth;
+    }
+    
+    /**
+     * 文本行高（与FontMetrics.getHeight一致，用于定位）
+     */
+    public int getTextHeight() {
+        return textHeight;
+    }
+    
+    public int getAscent() {
+        return ascent;
+    }
+    
+    public int getDescent() {
+        return descent;
+    }
+    
+    /**
+     * 平铺图块（图章按平铺间距环绕绘制后的可重复单元），非平铺图章返回null
+     */
+    public BufferedImage getTileCell() {
+        return tileCell;
+    }
+    
+    /**
+     * 图章（及平铺图块）占用的像素字节数
+     */
+    public long getSizeInBytes() {
+        long bytes = (long) image.getWidth() * image.getHeight() * 4;
+        if (tileCell != null) {
+            bytes += (long) tileCell.getWidth() * tileCell.getHeight() * 4;
+        }
+        return bytes;
+    }
+}
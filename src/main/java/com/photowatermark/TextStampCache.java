@@ -0,0 +1,202 @@
+package com.photowatermark;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 文本图章缓存 - 按字节数限制容量，超出时按LRU淘汰，线程安全
+ */
+public class TextStampCache {
+    // 默认容量：64MB
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    
+    private static final TextStampCache DEFAULT_INSTANCE = new TextStampCache(DEFAULT_MAX_BYTES);
+    
+    private final long maxBytes;
+    // accessOrder=true，迭代顺序即最近最少使用顺序
+    private final LinkedHashMap<Key, TextStamp> stamps = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    
+    public TextStampCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+    
+    /**
+     * 获取进程内共享的默认缓存
+     */
+    public static TextStampCache getDefault() {
+        return DEFAULT_INSTANCE;
+    }
+    
+    /**
+     * 查找图章，未命中返回null
+     */
+    public synchronized TextStamp get(Key key) {
+        TextStamp stamp = stamps.get(key);
+        if (stamp != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return stamp;
+    }
+    
+    /**
+     * 放入图章，必要时淘汰最久未使用的条目；单个图章超过总容量时不缓存
+     */
+    public synchronized void put(Key key, TextStamp stamp) {
+        long size = stamp.getSizeInBytes();
+        if (size > maxBytes) {
+            return;
+        }
+        
+        TextStamp previous = stamps.put(key, stamp);
+        if (previous != null) {
+            currentBytes -= previous.getSizeInBytes();
+        }
+        currentBytes += size;
+        
+        // 按LRU顺序淘汰，直到回到容量限制以内
+        Iterator<Map.Entry<Key, TextStamp>> iterator = stamps.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<Key, TextStamp> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            currentBytes -= eldest.getValue().getSizeInBytes();
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+    
+    /**
+     * 清空缓存（统计计数保留）
+     */
+    public synchronized void clear() {
+        stamps.clear();
+        currentBytes = 0;
+    }
+    
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+    
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+    
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+    
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+    
+    public synchronized int size() {
+        return stamps.size();
+    }
+    
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    
+    @Override
+    public synchronized String toString() {
+        return "TextStampCache[entries=" + stamps.size() 
+                + ", bytes=" + currentBytes + "/" + maxBytes 
+                + ", hits=" + hitCount 
+                + ", misses=" + missCount 
+                + ", evictions=" + evictionCount + "]";
+    }
+    
+    /**
+     * 缓存键：文本、字体、字号、颜色（含透明度）、阴影及其模糊程度、描边、旋转角度、是否平铺以及渲染质量
+     */
+    public static final class Key {
+        private final String text;
+        private final String fontFamily;
+        private final int fontSize;
+        private final int argb;
+        private final boolean shadow;
+        private final boolean stroke;
+        private final double rotation;
+        private final boolean tiling;
+        private final RenderQuality quality;
+        private final double shadowBlur;
+        private final double effectScale;
+        
+        public Key(String text, String fontFamily, int fontSize, int argb, 
+                   boolean shadow, boolean stroke, double rotation, boolean tiling) {
+            this(text, fontFamily, fontSize, argb, shadow, stroke, rotation, tiling, RenderQuality.BALANCED, 0, 1.0);
+        }
+        
+        public Key(String text, String fontFamily, int fontSize, int argb, 
+                   boolean shadow, boolean stroke, double rotation, boolean tiling, RenderQuality quality, 
+                   double shadowBlur, double effectScale) {
+            this.text = text;
+            this.fontFamily = fontFamily;
+            this.fontSize = fontSize;
+            this.argb = argb;
+            this.shadow = shadow;
+            this.stroke = stroke;
+            this.rotation = rotation;
+            this.tiling = tiling;
+            this.quality = quality;
+            this.shadowBlur = shadowBlur;
+            this.effectScale = effectScale;
+        }
+        
+        public static Key of(TextWatermarkSpec spec) {
+            return of(spec, RenderQuality.BALANCED);
+        }
+        
+        public static Key of(TextWatermarkSpec spec, RenderQuality quality) {
+            return new Key(
+                    spec.getText(), 
+                    spec.getFontFamily(), 
+                    spec.getFontSize(), 
+                    spec.getColor().getRGB(), 
+                    spec.isShadow(), 
+                    spec.isStroke(), 
+                    spec.getRotation(), 
+                    spec.isTiling(), 
+                    quality, 
+                    spec.getShadowBlur(), 
+                    spec.getEffectScale());
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return fontSize == that.fontSize
+                    && argb == that.argb
+                    && shadow == that.shadow
+                    && stroke == that.stroke
+                    && tiling == that.tiling
+                    && quality == that.quality
+                    && Double.compare(shadowBlur, that.shadowBlur) == 0
+                    && Double.compare(effectScale, that.effectScale) == 0
+                    && Double.compare(rotation, that.rotation) == 0
+                    && Objects.equals(text, that.text)
+                    && Objects.equals(fontFamily, that.fontFamily);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(text, fontFamily, fontSize, argb, shadow, stroke, rotation, tiling, quality, shadowBlur, 
+                    effectScale);
+        }
+    }
+}
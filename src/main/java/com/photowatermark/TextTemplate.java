@@ -0,0 +1,261 @@
+package com.photowatermark;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 文本模板 - 把"{date:yyyy.MM.dd} {camera} #{index} {filename}"这样的模板编译为常量段和变量段的序列，
+ * 日期格式化器在编译时创建（不可变、线程安全），之后对每张图片求值时不再解析模板。
+ * 求值结果按段保存在文本水印参数中，常量段的字形轮廓在各图片之间共享缓存。
+ *
+ * 支持的变量：
+ * {date} / {date:格式} 拍摄时间（默认格式yyyy-MM-dd）；{camera} 相机型号；
+ * {index} / {index:位数} 图片序号（可指定补零位数）；{filename} 不含扩展名的文件名。
+ * "{{"和"}}"分别表示字面的"{"和"}"。模板对象不可变，可在多个线程中共用
+ */
+public final class TextTemplate {
+    // 不指定格式时的日期格式，与ExifExtractor.extractDateTime一致
+    private static final DateTimeFormatter DEFAULT_DATE_FORMAT = DateTimeFormatter.ofPattern("uuuu-MM-dd");
+
+    private final String pattern;
+    private final List<Token> tokens;
+    private final boolean needsMetadata;
+
+    private TextTemplate(String pattern, List<Token> tokens) {
+        this.pattern = pattern;
+        this.tokens = tokens;
+        boolean metadata = false;
+        for (Token token : tokens) {
+            metadata |= token.needsMetadata();
+        }
+        this.needsMetadata = metadata;
+    }
+
+    /**
+     * 编译模板；模板语法错误、变量未知或日期格式无效时抛出IllegalArgumentException
+     */
+    public static TextTemplate compile(String pattern) {
+        List<Token> tokens = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '{' || c == '}') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == c) {
+                    // 转义的花括号
+                    literal.append(c);
+                    i += 2;
+                    continue;
+                }
+                if (c == '}') {
+                    throw new IllegalArgumentException("模板中有多余的'}'，位置: " + i);
+                }
+                int end = pattern.indexOf('}', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("模板中的'{'没有闭合，位置: " + i);
+                }
+                if (literal.length() > 0) {
+                    tokens.add(new Literal(literal.toString()));
+                    literal.setLength(0);
+                }
+                tokens.add(parseVariable(pattern.substring(i + 1, end)));
+                i = end + 1;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        if (literal.length() > 0) {
+            tokens.add(new Literal(literal.toString()));
+        }
+        return new TextTemplate(pattern, Collections.unmodifiableList(tokens));
+    }
+
+    /**
+     * 解析"名称"或"名称:参数"形式的变量
+     */
+    private static Token parseVariable(String variable) {
+        int colon = variable.indexOf(':');
+        String name = (colon >= 0 ? variable.substring(0, colon) : variable).trim();
+        String argument = colon >= 0 ? variable.substring(colon + 1) : null;
+
+        switch (name) {
+            case "date":
+                if (argument == null) {
+                    return new DateToken(DEFAULT_DATE_FORMAT);
+                }
+                try {
+                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern(argument);
+                    // 格式中不能有本地时间没有的字段（如时区），在编译时而不是求值时报错
+                    formatter.format(LocalDateTime.of(2000, 1, 1, 0, 0));
+                    return new DateToken(formatter);
+                } catch (IllegalArgumentException | DateTimeException e) {
+                    throw new IllegalArgumentException("日期格式无效: " + argument, e);
+                }
+            case "index":
+                int width = 0;
+                if (argument != null) {
+                    try {
+                        width = Integer.parseInt(argument.trim());
+                    } catch (NumberFormatException e) {
+                        width = -1;
+                    }
+                    if (width < 0) {
+                        throw new IllegalArgumentException("序号位数无效: " + argument);
+                    }
+                }
+                return new IndexToken(width);
+            case "camera":
+            case "filename":
+                if (argument != null) {
+                    throw new IllegalArgumentException("模板变量不支持参数: " + variable);
+                }
+                return "camera".equals(name) ? new CameraToken() : new FileNameToken();
+            default:
+                throw new IllegalArgumentException("未知的模板变量: " + name);
+        }
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * 模板中是否没有变量（对所有图片求值结果都相同）
+     */
+    public boolean isConstant() {
+        for (Token token : tokens) {
+            if (!(token instanceof Literal)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 求值时是否需要读取图片的元数据（拍摄时间、相机型号）
+     */
+    public boolean needsMetadata() {
+        return needsMetadata;
+    }
+
+    /**
+     * 对一张图片求值，返回各段的文本（空段被省略）
+     */
+    public List<String> evaluateSegments(TemplateContext context) {
+        List<String> segments = new ArrayList<>(tokens.size());
+        for (Token token : tokens) {
+            String value = token.evaluate(context);
+            if (!value.isEmpty()) {
+                segments.add(value);
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.add("");
+        }
+        return segments;
+    }
+
+    /**
+     * 对一张图片求值，返回完整的文本
+     */
+    public String evaluate(TemplateContext context) {
+        return String.join("", evaluateSegments(context));
+    }
+
+    /**
+     * 返回文本替换为本模板求值结果、其余参数不变的水印参数
+     */
+    public TextWatermarkSpec apply(TextWatermarkSpec spec, TemplateContext context) {
+        return spec.withText(evaluateSegments(context));
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+    /**
+     * 模板的一段：常量文本或一个变量
+     */
+    private interface Token {
+        String evaluate(TemplateContext context);
+
+        default boolean needsMetadata() {
+            return false;
+        }
+    }
+
+    private static final class Literal implements Token {
+        private final String text;
+
+        Literal(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public String evaluate(TemplateContext context) {
+            return text;
+        }
+    }
+
+    private static final class DateToken implements Token {
+        private final DateTimeFormatter formatter;
+
+        DateToken(DateTimeFormatter formatter) {
+            this.formatter = formatter;
+        }
+
+        @Override
+        public String evaluate(TemplateContext context) {
+            return formatter.format(context.getDateTime());
+        }
+
+        @Override
+        public boolean needsMetadata() {
+            return true;
+        }
+    }
+
+    private static final class CameraToken implements Token {
+        @Override
+        public String evaluate(TemplateContext context) {
+            return context.getCameraModel();
+        }
+
+        @Override
+        public boolean needsMetadata() {
+            return true;
+        }
+    }
+
+    private static final class IndexToken implements Token {
+        // 补零位数，0为不补零
+        private final int width;
+
+        IndexToken(int width) {
+            this.width = width;
+        }
+
+        @Override
+        public String evaluate(TemplateContext context) {
+            String index = Integer.toString(context.getIndex());
+            StringBuilder padded = new StringBuilder(Math.max(width, index.length()));
+            for (int i = index.length(); i < width; i++) {
+                padded.append('0');
+            }
+            return padded.append(index).toString();
+        }
+    }
+
+    private static final class FileNameToken implements Token {
+        @Override
+        public String evaluate(TemplateContext context) {
+            return context.getFileName();
+        }
+    }
+}
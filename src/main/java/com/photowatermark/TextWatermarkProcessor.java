@@ -1,19 +1,73 @@
 package com.photowatermark;
 
-import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.Shape;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.Collections;
 
 /**
  * 文本水印处理器 - 专门负责处理文本水印的添加
  */
 public class TextWatermarkProcessor {
+    // 阴影颜色和偏移（偏移和描边宽度都是效果缩放比例为1时的值，见TextWatermarkSpec.getEffectScale）
+    private static final Color SHADOW_COLOR = new Color(0, 0, 0, 100);
+    private static final int SHADOW_OFFSET = 2;
+    // 描边宽度（轮廓线两侧各占一半）
+    private static final float STROKE_WIDTH = 2f;
+    // 图章四周预留的抗锯齿边距
+    private static final int STAMP_PADDING = 2;
+    // 距离场栅格化的字号范围：过小时精度不足，超过基准字号两倍后拐角变圆且不再明显更快
+    private static final int MIN_DISTANCE_FIELD_SIZE = 12;
+    private static final int MAX_DISTANCE_FIELD_SIZE = DistanceFieldAtlas.BASE_SIZE * 2;
+    // 自动对比度要求的最低对比度（WCAG大号文本标准）
+    private static final double MIN_CONTRAST = 3.0;
+    
+    private final TextStampCache stampCache;
+    private final GlyphOutlineCache outlineCache;
+    private final FontRegistry fontRegistry;
+    
+    public TextWatermarkProcessor() {
+        this(TextStampCache.getDefault());
+    }
+    
+    public TextWatermarkProcessor(TextStampCache stampCache) {
+        this(stampCache, GlyphOutlineCache.getDefault());
+    }
+    
+    public TextWatermarkProcessor(TextStampCache stampCache, GlyphOutlineCache outlineCache) {
+        this(stampCache, outlineCache, FontRegistry.getDefault());
+    }
+    
+    public TextWatermarkProcessor(TextStampCache stampCache, GlyphOutlineCache outlineCache, FontRegistry fontRegistry) {
+        this.stampCache = stampCache;
+        this.outlineCache = outlineCache;
+        this.fontRegistry = fontRegistry;
+    }
+    
+    /**
+     * 获取字形轮廓缓存
+     */
+    public GlyphOutlineCache getOutlineCache() {
+        return outlineCache;
+    }
+    
+    /**
+     * 获取文本图章缓存（可用于查看命中/未命中统计）
+     */
+    public TextStampCache getStampCache() {
+        return stampCache;
+    }
     
     /**
      * 添加文本水印（新方法，支持字体和描边）
@@ -30,46 +84,21 @@ public class TextWatermarkProcessor {
             boolean stroke,
             boolean tiling
     ) {
-        // 创建可绘制的图像副本
-        BufferedImage watermarkedImage = new BufferedImage(
-                originalImage.getWidth(), 
-                originalImage.getHeight(), 
-                BufferedImage.TYPE_INT_ARGB);
-        
-        // 获取图形上下文
-        Graphics2D g2d = watermarkedImage.createGraphics();
-        
-        // 设置高质量渲染
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        
-        // 绘制原始图像
-        g2d.drawImage(originalImage, 0, 0, null);
-        
-        // 设置字体
-        Font font = new Font(fontFamily, Font.BOLD, fontSize);
-        g2d.setFont(font);
-        
-        // 设置颜色（包含透明度）
-        g2d.setColor(color);
-        
-        // 获取Position枚举值
-        Position position = Position.valueOf(positionStr);
-        
-        if (tiling) {
-            // 平铺水印
-            drawTiledTextWatermark(g2d, originalImage, text, font, color, rotation, shadow, stroke);
-        } else {
-            // 单一水印，对于CUSTOM位置，默认使用(0.5, 0.5)即中心位置
-            double customX = 0.5;
-            double customY = 0.5;
-            drawSingleTextWatermark(g2d, originalImage, text, font, color, position, rotation, shadow, stroke, customX, customY);
-        }
-        
-        // 释放资源
-        g2d.dispose();
-        
-        return watermarkedImage;
+        // 对于CUSTOM位置，默认使用(0.5, 0.5)即中心位置
+        return addTextWatermark(
+                originalImage, 
+                text, 
+                color, 
+                fontFamily,
+                fontSize, 
+                positionStr, 
+                rotation, 
+                shadow, 
+                stroke,
+                tiling,
+                0.5,
+                0.5
+        );
     }
     
     /**
@@ -89,11 +118,29 @@ public class TextWatermarkProcessor {
             double customX, // 自定义X坐标 (0-1)
             double customY  // 自定义Y坐标 (0-1)
     ) {
+        TextWatermarkSpec spec = new TextWatermarkSpec(
+                text, 
+                color, 
+                fontFamily, 
+                fontSize, 
+                Position.valueOf(positionStr), 
+                rotation, 
+                shadow, 
+                stroke, 
+                tiling, 
+                customX, 
+                customY);
+        if (WatermarkCompositor.isAutoPosition(spec)) {
+            // AUTO位置按原图内容选择，与合成引擎的结果一致
+            spec = (TextWatermarkSpec) new WatermarkCompositor(this, new ImageWatermarkProcessor())
+                    .resolveAutomatic(originalImage, Collections.singletonList(spec), RenderQuality.BALANCED).get(0);
+        }
+        
         // 创建可绘制的图像副本
         BufferedImage watermarkedImage = new BufferedImage(
                 originalImage.getWidth(), 
                 originalImage.getHeight(), 
-                BufferedImage.TYPE_INT_ARGB);
+                WatermarkCompositor.selectImageType(originalImage, null));
         
         // 获取图形上下文
         Graphics2D g2d = watermarkedImage.createGraphics();
@@ -103,30 +150,324 @@ public class TextWatermarkProcessor {
         g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
         
         // 绘制原始图像
-        g2d.drawImage(originalImage, 0, 0, null);
+        OffHeapImages.draw(g2d, originalImage);
         
-        // 设置字体
-        Font font = new Font(fontFamily, Font.BOLD, fontSize);
-        g2d.setFont(font);
+        drawTextWatermark(g2d, originalImage.getWidth(), originalImage.getHeight(), spec);
         
-        // 设置颜色（包含透明度）
-        g2d.setColor(color);
+        // 释放资源
+        g2d.dispose();
         
-        // 获取Position枚举值
-        Position position = Position.valueOf(positionStr);
+        return watermarkedImage;
+    }
+    
+    /**
+     * 在已有的图形上下文中绘制文本水印（供合成引擎使用，不创建新的图像）
+     */
+    public void drawTextWatermark(Graphics2D g2d, int imageWidth, int imageHeight, TextWatermarkSpec spec) {
+        drawTextWatermark(g2d, imageWidth, imageHeight, spec, RenderQuality.BALANCED);
+    }
+    
+    /**
+     * 在已有的图形上下文中按指定的渲染质量绘制文本水印
+     */
+    public void drawTextWatermark(
+            Graphics2D g2d, 
+            int imageWidth, 
+            int imageHeight, 
+            TextWatermarkSpec spec, 
+            RenderQuality quality
+    ) {
+        // 获取预先栅格化的文本图章，之后的每次放置都只是一次贴图
+        TextStamp stamp = getTextStamp(spec, quality);
         
-        if (tiling) {
+        if (spec.isTiling()) {
             // 平铺水印
-            drawTiledTextWatermark(g2d, originalImage, text, font, color, rotation, shadow, stroke);
+            drawTiledTextWatermark(g2d, imageWidth, imageHeight, stamp, spec.getRotation());
         } else {
             // 单一水印，传递自定义位置
-            drawSingleTextWatermark(g2d, originalImage, text, font, color, position, rotation, shadow, stroke, customX, customY);
+            drawSingleTextWatermark(g2d, imageWidth, imageHeight, stamp, spec.getPosition(), 
+                    spec.getRotation(), spec.getCustomX(), spec.getCustomY(), spec.getMargin());
+        }
+    }
+    
+    /**
+     * 获取文本图章，优先从缓存中读取
+     */
+    public TextStamp getTextStamp(TextWatermarkSpec spec) {
+        return getTextStamp(spec, RenderQuality.BALANCED);
+    }
+    
+    /**
+     * 获取按指定渲染质量栅格化的文本图章，不同质量的图章分别缓存
+     */
+    public TextStamp getTextStamp(TextWatermarkSpec spec, RenderQuality quality) {
+        TextStampCache.Key key = TextStampCache.Key.of(spec, quality);
+        TextStamp stamp = stampCache.get(key);
+        if (stamp == null) {
+            stamp = renderTextStamp(spec, quality);
+            stampCache.put(key, stamp);
+        }
+        return stamp;
+    }
+    
+    /**
+     * 将文本（含阴影、描边和旋转）栅格化为一个小尺寸的ARGB图章
+     */
+    private TextStamp renderTextStamp(TextWatermarkSpec spec, RenderQuality quality) {
+        return renderTextStamp(spec, quality, usesDistanceField(spec));
+    }
+    
+    /**
+     * 按指定方式栅格化图章（不经过缓存）：distanceField为true时采样距离场图集，否则填充文本轮廓
+     */
+    TextStamp renderTextStamp(TextWatermarkSpec spec, RenderQuality quality, boolean distanceField) {
+        String text = spec.getText();
+        double rotation = spec.getRotation();
+        // 字体和度量由注册表缓存（度量使用与图章渲染相同的抗锯齿设置）
+        Font font = fontRegistry.getFont(spec.getFontFamily(), Font.BOLD, spec.getFontSize());
+        FontMetrics metrics = fontRegistry.getFontMetrics(font);
+        int textWidth = metrics.stringWidth(text);
+        int textHeight = metrics.getHeight();
+        int ascent = metrics.getAscent();
+        int descent = metrics.getDescent();
+        // 按比例缩放输出时阴影偏移和描边宽度随字号缩放，与文本保持相同的比例
+        double shadowOffset = SHADOW_OFFSET * spec.getEffectScale();
+        float strokeWidth = (float) (STROKE_WIDTH * spec.getEffectScale());
+        
+        // 文本轮廓（或距离场排版）只生成一次，填充、描边和阴影都使用它
+        Shape outline = null;
+        DistanceFieldAtlas.Layout fieldLayout = null;
+        Rectangle2D glyphBounds;
+        if (distanceField) {
+            Font baseFont = fontRegistry.getFont(spec.getFontFamily(), Font.BOLD, DistanceFieldAtlas.BASE_SIZE);
+            fieldLayout = DistanceFieldAtlas.forFont(baseFont).layout(text, font);
+            glyphBounds = fieldLayout.getBounds();
+        } else {
+            outline = outlineCache.getOutline(spec.getTextSegments(), font);
+            glyphBounds = outline.getBounds2D();
+        }
+        if (spec.isStroke()) {
+            // 描边向轮廓外扩展半个线宽
+            double halfStroke = strokeWidth / 2.0;
+            glyphBounds = new Rectangle2D.Double(
+                    glyphBounds.getX() - halfStroke, 
+                    glyphBounds.getY() - halfStroke, 
+                    glyphBounds.getWidth() + strokeWidth, 
+                    glyphBounds.getHeight() + strokeWidth);
         }
         
-        // 释放资源
+        // 基线相对于锚点的偏移：旋转时锚点为文本中心，不旋转时锚点就是基线起点
+        int baselineX = 0;
+        int baselineY = 0;
+        if (rotation != 0) {
+            baselineX = -textWidth / 2;
+            baselineY = textHeight / 2 - descent;
+        }
+        
+        // 模糊阴影只在图章的alpha遮罩上计算，草稿质量下退回硬边阴影
+        boolean blurShadow = spec.isShadow() && spec.getShadowBlur() > 0 && quality.isFullShadow();
+        int blurExtent = blurShadow ? BoxBlur.extent(spec.getShadowBlur()) : 0;
+        
+        // 计算基线坐标系下的绘制范围（逻辑边界、字形实际边界以及阴影偏移和模糊扩散）
+        Rectangle2D area = new Rectangle2D.Double(0, -ascent, textWidth, textHeight).createUnion(glyphBounds);
+        if (spec.isShadow()) {
+            area = area.createUnion(new Rectangle2D.Double(
+                    area.getX() + shadowOffset - blurExtent, 
+                    area.getY() + shadowOffset - blurExtent, 
+                    area.getWidth() + blurExtent * 2, 
+                    area.getHeight() + blurExtent * 2));
+        }
+        area.setRect(area.getX() - STAMP_PADDING, area.getY() - STAMP_PADDING, 
+                area.getWidth() + STAMP_PADDING * 2, area.getHeight() + STAMP_PADDING * 2);
+        
+        // 旋转后的包围盒决定图章尺寸
+        AffineTransform transform = new AffineTransform();
+        if (rotation != 0) {
+            transform.rotate(Math.toRadians(rotation));
+        }
+        transform.translate(baselineX, baselineY);
+        Rectangle2D bounds = transform.createTransformedShape(area).getBounds2D();
+        int minX = (int) Math.floor(bounds.getMinX());
+        int minY = (int) Math.floor(bounds.getMinY());
+        int stampWidth = Math.max(1, (int) Math.ceil(bounds.getMaxX()) - minX);
+        int stampHeight = Math.max(1, (int) Math.ceil(bounds.getMaxY()) - minY);
+        
+        BufferedImage image = new BufferedImage(stampWidth, stampHeight, BufferedImage.TYPE_INT_ARGB);
+        if (fieldLayout != null) {
+            AffineTransform toStamp = AffineTransform.getTranslateInstance(-minX, -minY);
+            toStamp.concatenate(transform);
+            fieldLayout.paint(
+                    image, 
+                    toStamp, 
+                    spec.getColor(), 
+                    spec.isStroke() ? getStrokeColor(spec.getColor()) : null, 
+                    strokeWidth, 
+                    spec.isShadow() ? SHADOW_COLOR : null, 
+                    quality.isFullShadow(), 
+                    shadowOffset, 
+                    blurShadow ? spec.getShadowBlur() : 0, 
+                    quality.isAntialiasing());
+            return createStamp(spec, image, minX, minY, textWidth, textHeight, ascent, descent);
+        }
+        
+        Graphics2D g2d = image.createGraphics();
+        quality.applyTo(g2d);
+        g2d.translate(-minX, -minY);
+        if (rotation != 0) {
+            g2d.rotate(Math.toRadians(rotation));
+        }
+        g2d.translate(baselineX, baselineY);
+        BasicStroke stroke = new BasicStroke(strokeWidth, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+        
+        if (spec.isShadow()) {
+            // 添加阴影（与文本相同的轮廓，描边时阴影也包含描边）
+            // 未描边或草稿质量时阴影只取文本轮廓，省去区域合并
+            Shape shadowShape = outline;
+            if (spec.isStroke() && quality.isFullShadow()) {
+                // 描边和文本合并成一个区域填充，避免重叠部分的阴影被叠加两次
+                Area shadowArea = new Area(stroke.createStrokedShape(outline));
+                shadowArea.add(new Area(outline));
+                shadowShape = shadowArea;
+            }
+            
+            if (blurShadow) {
+                drawBlurredShadow(image, g2d.getTransform(), shadowShape, shadowOffset, spec.getShadowBlur(), quality);
+            } else {
+                g2d.setColor(SHADOW_COLOR);
+                g2d.translate(shadowOffset, shadowOffset);
+                g2d.fill(shadowShape);
+                g2d.translate(-shadowOffset, -shadowOffset);
+            }
+        }
+        
+        // 绘制描边：使用与文本颜色对比明显的颜色勾勒字形轮廓
+        if (spec.isStroke()) {
+            g2d.setColor(getStrokeColor(spec.getColor()));
+            g2d.setStroke(stroke);
+            g2d.draw(outline);
+        }
+        
+        // 设置颜色（包含透明度）并填充文本
+        g2d.setColor(spec.getColor());
+        g2d.fill(outline);
         g2d.dispose();
         
-        return watermarkedImage;
+        return createStamp(spec, image, minX, minY, textWidth, textHeight, ascent, descent);
+    }
+    
+    /**
+     * 是否通过距离场图集栅格化：带描边和阴影的文本用轮廓方式时需要对描边轮廓做面积运算，
+     * 中等字号下采样距离场快一个数量级；纯填充、只有描边或阴影时Java2D原生填充已足够快。
+     * 选择只取决于水印参数而与渲染质量无关，预览和导出的字形来自同一种方式；缓存键也无需区分两种方式
+     */
+    private static boolean usesDistanceField(TextWatermarkSpec spec) {
+        return spec.isStroke() 
+                && spec.isShadow() 
+                && spec.getFontSize() >= MIN_DISTANCE_FIELD_SIZE 
+                && spec.getFontSize() <= MAX_DISTANCE_FIELD_SIZE;
+    }
+    
+    /**
+     * 由栅格化好的图像生成图章，平铺水印额外预先生成可重复的图块
+     */
+    private TextStamp createStamp(
+            TextWatermarkSpec spec, 
+            BufferedImage image, 
+            int minX, 
+            int minY, 
+            int textWidth, 
+            int textHeight, 
+            int ascent, 
+            int descent
+    ) {
+        TextStamp stamp = new TextStamp(image, -minX, -minY, textWidth, textHeight, ascent, descent);
+        if (spec.isTiling()) {
+            stamp = new TextStamp(image, -minX, -minY, textWidth, textHeight, ascent, descent, 
+                    createTileCell(stamp, spec.getRotation()));
+        }
+        return stamp;
+    }
+    
+    /**
+     * 绘制模糊阴影：阴影形状先栅格化为图章大小的覆盖率遮罩，模糊后按阴影颜色写入（此时图章仍为空白）
+     */
+    private static void drawBlurredShadow(
+            BufferedImage stampImage, 
+            AffineTransform transform, 
+            Shape shadowShape, 
+            double shadowOffset, 
+            double shadowBlur, 
+            RenderQuality quality
+    ) {
+        int width = stampImage.getWidth();
+        int height = stampImage.getHeight();
+        
+        BufferedImage mask = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g2d = mask.createGraphics();
+        quality.applyTo(g2d);
+        g2d.setTransform(transform);
+        g2d.translate(shadowOffset, shadowOffset);
+        g2d.setColor(Color.WHITE);
+        g2d.fill(shadowShape);
+        g2d.dispose();
+        
+        byte[] coverage = ((DataBufferByte) mask.getRaster().getDataBuffer()).getData();
+        int[] alpha = new int[width * height];
+        for (int i = 0; i < alpha.length; i++) {
+            alpha[i] = coverage[i] & 0xff;
+        }
+        BoxBlur.blur(alpha, width, height, shadowBlur);
+        
+        int shadowAlpha = SHADOW_COLOR.getAlpha();
+        int shadowRgb = SHADOW_COLOR.getRGB() & 0xffffff;
+        int[] pixels = ((DataBufferInt) stampImage.getRaster().getDataBuffer()).getData();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = ((alpha[i] * shadowAlpha + 127) / 255) << 24 | shadowRgb;
+        }
+    }
+    
+    /**
+     * 描边颜色：浅色文本用黑色描边，深色文本用白色描边，透明度与文本一致
+     */
+    private static Color getStrokeColor(Color textColor) {
+        int luminance = (textColor.getRed() * 299 + textColor.getGreen() * 587 + textColor.getBlue() * 114) / 1000;
+        int alpha = textColor.getAlpha();
+        return luminance >= 128 ? new Color(0, 0, 0, alpha) : new Color(255, 255, 255, alpha);
+    }
+    
+    /**
+     * 生成平铺图块：每个图块内的文本位置与逐个平铺绘制时一致
+     */
+    private BufferedImage createTileCell(TextStamp stamp, double rotation) {
+        int tileWidth = getTileWidth(stamp);
+        int tileHeight = getTileHeight(stamp);
+        int[] anchor = getTileAnchor(stamp, rotation);
+        BufferedImage stampImage = stamp.getImage();
+        Rectangle unitBounds = new Rectangle(
+                anchor[0] - stamp.getAnchorX(), 
+                anchor[1] - stamp.getAnchorY(), 
+                stampImage.getWidth(), 
+                stampImage.getHeight());
+        return TilePattern.createTileCell(tileWidth, tileHeight, unitBounds, null, 
+                g -> g.drawImage(stampImage, unitBounds.x, unitBounds.y, null));
+    }
+    
+    private static int getTileWidth(TextStamp stamp) {
+        return Math.max(1, stamp.getTextWidth() * 2);
+    }
+    
+    private static int getTileHeight(TextStamp stamp) {
+        return Math.max(1, stamp.getTextHeight() * 2);
+    }
+    
+    /**
+     * 图章锚点相对于图块左上角的位置：旋转时为文本中心，不旋转时为基线起点
+     */
+    private static int[] getTileAnchor(TextStamp stamp, double rotation) {
+        if (rotation != 0) {
+            return new int[] {stamp.getTextWidth() / 2, stamp.getAscent() - stamp.getTextHeight() / 2};
+        }
+        return new int[] {0, stamp.getAscent()};
     }
     
     /**
@@ -134,219 +475,233 @@ public class TextWatermarkProcessor {
      */
     private void drawSingleTextWatermark(
             Graphics2D g2d, 
-            BufferedImage image, 
-            String text, 
-            Font font, 
-            Color color, 
+            int imageWidth, 
+            int imageHeight, 
+            TextStamp stamp, 
             Position position, 
             double rotation, 
-            boolean shadow,
-            boolean stroke,
+            double customX, // 自定义X坐标 (0-1)
+            double customY, // 自定义Y坐标 (0-1)
+            int margin
+    ) {
+        Rectangle bounds = getSingleStampBounds(imageWidth, imageHeight, stamp, position, rotation, 
+                customX, customY, margin);
+        g2d.drawImage(stamp.getImage(), bounds.x, bounds.y, null);
+    }
+    
+    /**
+     * 计算单一文本水印的图章在画布上的位置和范围（即旋转后的包围盒）
+     */
+    Rectangle getSingleStampBounds(
+            int imageWidth, 
+            int imageHeight, 
+            TextStamp stamp, 
+            Position position, 
+            double rotation, 
+            double customX, 
+            double customY, 
+            int margin
+    ) {
+        int textWidth = stamp.getTextWidth();
+        int textHeight = stamp.getTextHeight();
+        int[] point = calculateTextPosition(imageWidth, imageHeight, textWidth, textHeight, 
+                stamp.getDescent(), position, customX, customY, margin);
+        
+        // 图章锚点：旋转时为文本中心，不旋转时为基线起点
+        int anchorX = point[0];
+        int anchorY = point[1];
+        if (rotation != 0) {
+            anchorX = point[0] + textWidth / 2;
+            anchorY = point[1] - textHeight / 2 + stamp.getAscent();
+        }
+        
+        return new Rectangle(
+                anchorX - stamp.getAnchorX(), 
+                anchorY - stamp.getAnchorY(), 
+                stamp.getImage().getWidth(), 
+                stamp.getImage().getHeight());
+    }
+    
+    /**
+     * 获取文本水印在画布上占据的范围；平铺水印覆盖整个画布，返回null
+     */
+    public Rectangle getWatermarkBounds(TextWatermarkSpec spec, int imageWidth, int imageHeight) {
+        return getWatermarkBounds(spec, imageWidth, imageHeight, RenderQuality.BALANCED);
+    }
+    
+    /**
+     * 获取按指定渲染质量绘制时文本水印在画布上占据的范围
+     */
+    public Rectangle getWatermarkBounds(TextWatermarkSpec spec, int imageWidth, int imageHeight, RenderQuality quality) {
+        if (spec.isTiling()) {
+            return null;
+        }
+        return getSingleStampBounds(imageWidth, imageHeight, getTextStamp(spec, quality), spec.getPosition(), 
+                spec.getRotation(), spec.getCustomX(), spec.getCustomY(), spec.getMargin());
+    }
+    
+    /**
+     * 自动对比度：按水印范围（平铺水印为整张图片）下方背景的平均亮度选择文本颜色，
+     * 范围与正常定位一致，支持所有预设位置和自定义位置。未开启自动对比度时原样返回，
+     * 否则返回已确定颜色、关闭了自动对比度的参数
+     */
+    TextWatermarkSpec resolveAutoContrast(
+            TextWatermarkSpec spec, 
+            RegionStatistics statistics, 
+            int imageWidth, 
+            int imageHeight, 
+            RenderQuality quality
+    ) {
+        if (!spec.isAutoContrast()) {
+            return spec;
+        }
+        return resolveAutoContrast(spec, statistics, getWatermarkBounds(spec, imageWidth, imageHeight, quality));
+    }
+    
+    /**
+     * 按已计算好的水印范围选择颜色，bounds为null表示平铺水印
+     */
+    TextWatermarkSpec resolveAutoContrast(TextWatermarkSpec spec, RegionStatistics statistics, Rectangle bounds) {
+        double background = bounds == null ? statistics.meanLuminance() : statistics.meanLuminance(bounds);
+        return spec.withColor(chooseContrastColor(spec.getColor(), background)).withAutoContrast(false);
+    }
+    
+    /**
+     * 原颜色按其透明度混合到背景上后对比度足够时保持不变；否则改用白色或黑色中对比度更高的一种，
+     * 保留原透明度，仍达不到要求时把透明度提高到刚好满足的值
+     */
+    static Color chooseContrastColor(Color color, double background) {
+        double alpha = color.getAlpha() / 255.0;
+        double luminance = RegionStatistics.luminanceOf(color.getRGB()) / 65535.0;
+        if (contrastRatio(alpha * luminance + (1 - alpha) * background, background) >= MIN_CONTRAST) {
+            return color;
+        }
+        
+        // 白色只在背景较暗时被选中（此时background < 1），黑色只在背景较亮时被选中（此时background > 0）
+        boolean light = contrastRatio(1, background) >= contrastRatio(0, background);
+        double requiredAlpha = light
+                ? (MIN_CONTRAST * (background + 0.05) - 0.05 - background) / (1 - background)
+                : 1 - ((background + 0.05) / MIN_CONTRAST - 0.05) / background;
+        int newAlpha = (int) Math.ceil(Math.max(alpha, Math.min(1, requiredAlpha)) * 255);
+        return light ? new Color(255, 255, 255, newAlpha) : new Color(0, 0, 0, newAlpha);
+    }
+    
+    /**
+     * 两个相对亮度之间的对比度（1-21）
+     */
+    private static double contrastRatio(double luminance1, double luminance2) {
+        return (Math.max(luminance1, luminance2) + 0.05) / (Math.min(luminance1, luminance2) + 0.05);
+    }
+    
+    /**
+     * 根据位置计算文本基线起点坐标（使用默认边距）
+     */
+    public int[] calculateTextPosition(
+            int imageWidth, 
+            int imageHeight, 
+            int textWidth, 
+            int textHeight, 
+            int descent, 
+            Position position, 
             double customX, // 自定义X坐标 (0-1)
             double customY  // 自定义Y坐标 (0-1)
     ) {
-        FontMetrics metrics = g2d.getFontMetrics(font);
-        int textWidth = metrics.stringWidth(text);
-        int textHeight = metrics.getHeight();
-        int margin = 20;
+        return calculateTextPosition(imageWidth, imageHeight, textWidth, textHeight, descent, 
+                position, customX, customY, WatermarkSpec.DEFAULT_MARGIN);
+    }
+    
+    /**
+     * 根据位置和与图片边缘的距离计算文本基线起点坐标
+     */
+    public int[] calculateTextPosition(
+            int imageWidth, 
+            int imageHeight, 
+            int textWidth, 
+            int textHeight, 
+            int descent, 
+            Position position, 
+            double customX, // 自定义X坐标 (0-1)
+            double customY, // 自定义Y坐标 (0-1)
+            int margin
+    ) {
         int x = 0;
         int y = 0;
         
         // 根据位置计算坐标
         if (position == Position.CUSTOM) {
             // 使用自定义坐标
-            x = (int) (customX * (image.getWidth() - textWidth)) - margin / 2;
-            y = (int) (customY * (image.getHeight())) - margin / 2 + textHeight - metrics.getDescent();
+            x = (int) (customX * (imageWidth - textWidth)) - margin / 2;
+            y = (int) (customY * (imageHeight)) - margin / 2 + textHeight - descent;
             
             // 确保坐标在有效范围内
-            x = Math.max(margin, Math.min(x, image.getWidth() - textWidth - margin));
-            y = Math.max(margin + textHeight - metrics.getDescent(), 
-                        Math.min(y, image.getHeight() - margin - metrics.getDescent()));
+            x = Math.max(margin, Math.min(x, imageWidth - textWidth - margin));
+            y = Math.max(margin + textHeight - descent, 
+                        Math.min(y, imageHeight - margin - descent));
         } else {
             // 使用预设位置
             switch (position) {
                 case TOP_LEFT:
                     x = margin;
-                    y = margin + textHeight - metrics.getDescent();
+                    y = margin + textHeight - descent;
                     break;
                 case TOP_CENTER:
-                    x = (image.getWidth() - textWidth) / 2;
-                    y = margin + textHeight - metrics.getDescent();
+                    x = (imageWidth - textWidth) / 2;
+                    y = margin + textHeight - descent;
                     break;
                 case TOP_RIGHT:
-                    x = image.getWidth() - textWidth - margin;
-                    y = margin + textHeight - metrics.getDescent();
+                    x = imageWidth - textWidth - margin;
+                    y = margin + textHeight - descent;
                     break;
                 case CENTER_LEFT:
                     x = margin;
-                    y = (image.getHeight() + textHeight) / 2 - metrics.getDescent();
+                    y = (imageHeight + textHeight) / 2 - descent;
                     break;
                 case CENTER:
-                    x = (image.getWidth() - textWidth) / 2;
-                    y = (image.getHeight() + textHeight) / 2 - metrics.getDescent();
+                    x = (imageWidth - textWidth) / 2;
+                    y = (imageHeight + textHeight) / 2 - descent;
                     break;
                 case CENTER_RIGHT:
-                    x = image.getWidth() - textWidth - margin;
-                    y = (image.getHeight() + textHeight) / 2 - metrics.getDescent();
+                    x = imageWidth - textWidth - margin;
+                    y = (imageHeight + textHeight) / 2 - descent;
                     break;
                 case BOTTOM_LEFT:
                     x = margin;
-                    y = image.getHeight() - margin - metrics.getDescent();
+                    y = imageHeight - margin - descent;
                     break;
                 case BOTTOM_CENTER:
-                    x = (image.getWidth() - textWidth) / 2;
-                    y = image.getHeight() - margin - metrics.getDescent();
+                    x = (imageWidth - textWidth) / 2;
+                    y = imageHeight - margin - descent;
                     break;
+                case AUTO:
+                    throw new IllegalArgumentException("AUTO位置需先按图片内容解析（见WatermarkCompositor.resolveAutomatic）");
                 case BOTTOM_RIGHT:
                 default:
-                    x = image.getWidth() - textWidth - margin;
-                    y = image.getHeight() - margin - metrics.getDescent();
+                    x = imageWidth - textWidth - margin;
+                    y = imageHeight - margin - descent;
                     break;
             }
         }
         
-        // 保存当前变换状态
-        AffineTransform originalTransform = g2d.getTransform();
-        
-        if (rotation != 0) {
-            // 旋转水印
-            g2d.translate(x + textWidth / 2, y - textHeight / 2 + metrics.getAscent());
-            g2d.rotate(Math.toRadians(rotation));
-            
-            if (shadow) {
-                // 添加阴影
-                g2d.setColor(new Color(0, 0, 0, 100));
-                if (stroke) {
-                    g2d.setStroke(new BasicStroke(2));
-                    g2d.drawString(text, 2, 2);
-                    g2d.setStroke(new BasicStroke(1));
-                }
-                g2d.drawString(text, 2, 2);
-                g2d.setColor(color);
-            }
-            
-            // 绘制描边
-            if (stroke) {
-                g2d.setStroke(new BasicStroke(2));
-                g2d.drawString(text, -textWidth / 2, textHeight / 2 - metrics.getDescent());
-                g2d.setStroke(new BasicStroke(1));
-            }
-            
-            // 绘制文本
-            g2d.drawString(text, -textWidth / 2, textHeight / 2 - metrics.getDescent());
-        } else {
-            // 不旋转
-            if (shadow) {
-                // 添加阴影
-                g2d.setColor(new Color(0, 0, 0, 100));
-                if (stroke) {
-                    g2d.setStroke(new BasicStroke(2));
-                    g2d.drawString(text, x + 2, y + 2);
-                    g2d.setStroke(new BasicStroke(1));
-                }
-                g2d.drawString(text, x + 2, y + 2);
-                g2d.setColor(color);
-            }
-            
-            // 绘制描边
-            if (stroke) {
-                g2d.setStroke(new BasicStroke(2));
-                g2d.drawString(text, x, y);
-                g2d.setStroke(new BasicStroke(1));
-            }
-            
-            // 绘制文本
-            g2d.drawString(text, x, y);
-        }
-        
-        // 恢复原始变换
-        g2d.setTransform(originalTransform);
+        return new int[] {x, y};
     }
     
     /**
-     * 绘制平铺文本水印
+     * 绘制平铺文本水印：以预先生成的图块一次填充整个画布
      */
-    private void drawTiledTextWatermark(
+    void drawTiledTextWatermark(
             Graphics2D g2d, 
-            BufferedImage image, 
-            String text, 
-            Font font, 
-            Color color, 
-            double rotation, 
-            boolean shadow,
-            boolean stroke
+            int imageWidth, 
+            int imageHeight, 
+            TextStamp stamp, 
+            double rotation
     ) {
-        FontMetrics metrics = g2d.getFontMetrics(font);
-        int textWidth = metrics.stringWidth(text);
-        int textHeight = metrics.getHeight();
-        int tileWidth = textWidth * 2;
-        int tileHeight = textHeight * 2;
-        
-        // 保存当前变换状态
-        AffineTransform originalTransform = g2d.getTransform();
-        
-        // 平铺绘制水印，每个水印绕自己的中心旋转
-        for (int x = -tileWidth; x < image.getWidth() + tileWidth; x += tileWidth) {
-            for (int y = -tileHeight; y < image.getHeight() + tileHeight; y += tileHeight) {
-                // 保存当前变换状态
-                AffineTransform tileTransform = new AffineTransform(originalTransform);
-                g2d.setTransform(tileTransform);
-                
-                if (rotation != 0) {
-                    // 移动到水印位置，然后绕水印中心旋转
-                    g2d.translate(x + textWidth / 2, y + metrics.getAscent() - textHeight / 2);
-                    g2d.rotate(Math.toRadians(rotation));
-                    
-                    if (shadow) {
-                        // 添加阴影
-                        g2d.setColor(new Color(0, 0, 0, 100));
-                        if (stroke) {
-                            g2d.setStroke(new BasicStroke(2));
-                            g2d.drawString(text, -textWidth / 2 + 2, textHeight / 2 - metrics.getDescent() + 2);
-                            g2d.setStroke(new BasicStroke(1));
-                        }
-                        g2d.drawString(text, -textWidth / 2 + 2, textHeight / 2 - metrics.getDescent() + 2);
-                        g2d.setColor(color);
-                    }
-                    
-                    // 绘制描边
-                    if (stroke) {
-                        g2d.setStroke(new BasicStroke(2));
-                        g2d.drawString(text, -textWidth / 2, textHeight / 2 - metrics.getDescent());
-                        g2d.setStroke(new BasicStroke(1));
-                    }
-                    
-                    // 绘制文本
-                    g2d.drawString(text, -textWidth / 2, textHeight / 2 - metrics.getDescent());
-                } else {
-                    // 不旋转
-                    if (shadow) {
-                        // 添加阴影
-                        g2d.setColor(new Color(0, 0, 0, 100));
-                        if (stroke) {
-                            g2d.setStroke(new BasicStroke(2));
-                            g2d.drawString(text, x + 2, y + metrics.getAscent() + 2);
-                            g2d.setStroke(new BasicStroke(1));
-                        }
-                        g2d.drawString(text, x + 2, y + metrics.getAscent() + 2);
-                        g2d.setColor(color);
-                    }
-                    
-                    // 绘制描边
-                    if (stroke) {
-                        g2d.setStroke(new BasicStroke(2));
-                        g2d.drawString(text, x, y + metrics.getAscent());
-                        g2d.setStroke(new BasicStroke(1));
-                    }
-                    
-                    // 绘制文本
-                    g2d.drawString(text, x, y + metrics.getAscent());
-                }
-            }
+        BufferedImage tileCell = stamp.getTileCell();
+        if (tileCell == null) {
+            tileCell = createTileCell(stamp, rotation);
         }
         
-        // 恢复原始变换
-        g2d.setTransform(originalTransform);
+        // 平铺网格从(-tileWidth, -tileHeight)开始
+        TilePattern.fill(g2d, tileCell, -getTileWidth(stamp), -getTileHeight(stamp), imageWidth, imageHeight);
     }
     
     /**
@@ -359,54 +714,15 @@ public class TextWatermarkProcessor {
             Position position
     ) {
         FontMetrics metrics = g2d.getFontMetrics();
-        int textWidth = metrics.stringWidth(text);
-        int textHeight = metrics.getHeight();
-        int margin = 20;
-        int x = 0;
-        int y = 0;
-        
-        // 根据位置计算坐标
-        switch (position) {
-            case TOP_LEFT:
-                x = margin;
-                y = margin + textHeight - metrics.getDescent();
-                break;
-            case TOP_CENTER:
-                x = (image.getWidth() - textWidth) / 2;
-                y = margin + textHeight - metrics.getDescent();
-                break;
-            case TOP_RIGHT:
-                x = image.getWidth() - textWidth - margin;
-                y = margin + textHeight - metrics.getDescent();
-                break;
-            case CENTER_LEFT:
-                x = margin;
-                y = (image.getHeight() + textHeight) / 2 - metrics.getDescent();
-                break;
-            case CENTER:
-                x = (image.getWidth() - textWidth) / 2;
-                y = (image.getHeight() + textHeight) / 2 - metrics.getDescent();
-                break;
-            case CENTER_RIGHT:
-                x = image.getWidth() - textWidth - margin;
-                y = (image.getHeight() + textHeight) / 2 - metrics.getDescent();
-                break;
-            case BOTTOM_LEFT:
-                x = margin;
-                y = image.getHeight() - margin - metrics.getDescent();
-                break;
-            case BOTTOM_CENTER:
-                x = (image.getWidth() - textWidth) / 2;
-                y = image.getHeight() - margin - metrics.getDescent();
-                break;
-            case BOTTOM_RIGHT:
-            default:
-                x = image.getWidth() - textWidth - margin;
-                y = image.getHeight() - margin - metrics.getDescent();
-                break;
-        }
-        
-        return new int[] {x, y};
+        return calculateTextPosition(
+                image.getWidth(), 
+                image.getHeight(), 
+                metrics.stringWidth(text), 
+                metrics.getHeight(), 
+                metrics.getDescent(), 
+                position, 
+                0.5, 
+                0.5);
     }
     
     /**
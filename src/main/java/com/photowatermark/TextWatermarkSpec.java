@@ -0,0 +1,305 @@
+package com.photowatermark;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 文本水印参数 - 不可变对象，保存一次文本水印绘制所需的全部设置
+ */
+public final class TextWatermarkSpec implements WatermarkSpec {
+    private final String text;
+    private final Color color;
+    private final String fontFamily;
+    private final int fontSize;
+    private final Position position;
+    private final double rotation;
+    private final boolean shadow;
+    private final boolean stroke;
+    private final boolean tiling;
+    private final double customX; // 自定义X坐标 (0-1)
+    private final double customY; // 自定义Y坐标 (0-1)
+    private final double shadowBlur; // 阴影模糊程度（高斯标准差，像素），0为硬边阴影
+    private final boolean autoContrast; // 是否按水印下方的背景亮度自动调整颜色
+    private final int margin; // 预设位置与图片边缘的距离（像素）
+    private final double effectScale; // 阴影偏移和描边宽度相对默认值的比例，按比例缩放输出时随字号缩放
+    // 文本的分段（依次拼接即为文本），只用于复用各段的字形轮廓，不影响绘制结果；null表示不分段
+    private final List<String> textSegments;
+    
+    public TextWatermarkSpec(
+            String text, 
+            Color color, 
+            String fontFamily,
+            int fontSize, 
+            Position position, 
+            double rotation, 
+            boolean shadow, 
+            boolean stroke,
+            boolean tiling,
+            double customX,
+            double customY
+    ) {
+        this(text, color, fontFamily, fontSize, position, rotation, shadow, stroke, tiling, customX, customY, 0);
+    }
+    
+    public TextWatermarkSpec(
+            String text, 
+            Color color, 
+            String fontFamily,
+            int fontSize, 
+            Position position, 
+            double rotation, 
+            boolean shadow, 
+            boolean stroke,
+            boolean tiling,
+            double customX,
+            double customY,
+            double shadowBlur
+    ) {
+        this(text, color, fontFamily, fontSize, position, rotation, shadow, stroke, tiling, customX, customY, 
+                shadowBlur, false, DEFAULT_MARGIN, 1.0, null);
+    }
+    
+    private TextWatermarkSpec(
+            String text, 
+            Color color, 
+            String fontFamily,
+            int fontSize, 
+            Position position, 
+            double rotation, 
+            boolean shadow, 
+            boolean stroke,
+            boolean tiling,
+            double customX,
+            double customY,
+            double shadowBlur,
+            boolean autoContrast,
+            int margin,
+            double effectScale,
+            List<String> textSegments
+    ) {
+        if (shadowBlur < 0) {
+            throw new IllegalArgumentException("阴影模糊程度不能小于0: " + shadowBlur);
+        }
+        if (margin < 0) {
+            throw new IllegalArgumentException("边距不能小于0: " + margin);
+        }
+        if (!(effectScale > 0)) {
+            throw new IllegalArgumentException("效果缩放比例必须大于0: " + effectScale);
+        }
+        this.text = text;
+        this.color = color;
+        this.fontFamily = fontFamily;
+        this.fontSize = fontSize;
+        this.position = position;
+        this.rotation = rotation;
+        this.shadow = shadow;
+        this.stroke = stroke;
+        this.tiling = tiling;
+        this.customX = customX;
+        this.customY = customY;
+        this.shadowBlur = shadowBlur;
+        this.autoContrast = autoContrast;
+        this.margin = margin;
+        this.effectScale = effectScale;
+        this.textSegments = textSegments;
+    }
+    
+    public TextWatermarkSpec(
+            String text, 
+            Color color, 
+            String fontFamily,
+            int fontSize, 
+            Position position, 
+            double rotation, 
+            boolean shadow, 
+            boolean stroke,
+            boolean tiling
+    ) {
+        // 对于CUSTOM位置，默认使用(0.5, 0.5)即中心位置
+        this(text, color, fontFamily, fontSize, position, rotation, shadow, stroke, tiling, 0.5, 0.5);
+    }
+    
+    public String getText() {
+        return text;
+    }
+    
+    public Color getColor() {
+        return color;
+    }
+    
+    public String getFontFamily() {
+        return fontFamily;
+    }
+    
+    public int getFontSize() {
+        return fontSize;
+    }
+    
+    @Override
+    public Position getPosition() {
+        return position;
+    }
+    
+    public double getRotation() {
+        return rotation;
+    }
+    
+    public boolean isShadow() {
+        return shadow;
+    }
+    
+    public boolean isStroke() {
+        return stroke;
+    }
+    
+    @Override
+    public boolean isTiling() {
+        return tiling;
+    }
+    
+    public double getCustomX() {
+        return customX;
+    }
+    
+    public double getCustomY() {
+        return customY;
+    }
+    
+    public double getShadowBlur() {
+        return shadowBlur;
+    }
+    
+    /**
+     * 是否自动对比度：绘制时根据水印下方背景的平均亮度调整颜色和透明度，保证水印清晰可见
+     */
+    public boolean isAutoContrast() {
+        return autoContrast;
+    }
+    
+    /**
+     * 返回阴影模糊程度不同、其余参数相同的副本
+     */
+    public TextWatermarkSpec withShadowBlur(double shadowBlur) {
+        return new TextWatermarkSpec(text, color, fontFamily, fontSize, position, rotation, 
+                shadow, stroke, tiling, customX, customY, shadowBlur, autoContrast, margin, effectScale, textSegments);
+    }
+    
+    @Override
+    public TextWatermarkSpec withPosition(Position position) {
+        return new TextWatermarkSpec(text, color, fontFamily, fontSize, position, rotation, 
+                shadow, stroke, tiling, customX, customY, shadowBlur, autoContrast, margin, effectScale, textSegments);
+    }
+    
+    @Override
+    public int getMargin() {
+        return margin;
+    }
+    
+    /**
+     * 阴影偏移和描边宽度相对默认值的比例：直接创建的参数为1，scaled按缩放比例累乘
+     */
+    public double getEffectScale() {
+        return effectScale;
+    }
+    
+    /**
+     * 返回边距不同、其余参数相同的副本
+     */
+    public TextWatermarkSpec withMargin(int margin) {
+        return new TextWatermarkSpec(text, color, fontFamily, fontSize, position, rotation, 
+                shadow, stroke, tiling, customX, customY, shadowBlur, autoContrast, margin, effectScale, textSegments);
+    }
+    
+    /**
+     * 字号按比例缩放（四舍五入，至少为1），阴影模糊程度、边距以及阴影偏移和描边宽度同比缩放
+     */
+    @Override
+    public TextWatermarkSpec scaled(double factor) {
+        if (factor <= 0) {
+            throw new IllegalArgumentException("缩放比例必须大于0: " + factor);
+        }
+        int scaledFontSize = (int) Math.max(1, Math.round(fontSize * factor));
+        return new TextWatermarkSpec(text, color, fontFamily, scaledFontSize, position, rotation, 
+                shadow, stroke, tiling, customX, customY, shadowBlur * factor, autoContrast, 
+                (int) Math.round(margin * factor), effectScale * factor, textSegments);
+    }
+    
+    /**
+     * 返回颜色不同、其余参数相同的副本
+     */
+    public TextWatermarkSpec withColor(Color color) {
+        return new TextWatermarkSpec(text, color, fontFamily, fontSize, position, rotation, 
+                shadow, stroke, tiling, customX, customY, shadowBlur, autoContrast, margin, effectScale, textSegments);
+    }
+    
+    /**
+     * 返回开启或关闭自动对比度、其余参数相同的副本
+     */
+    public TextWatermarkSpec withAutoContrast(boolean autoContrast) {
+        return new TextWatermarkSpec(text, color, fontFamily, fontSize, position, rotation, 
+                shadow, stroke, tiling, customX, customY, shadowBlur, autoContrast, margin, effectScale, textSegments);
+    }
+    
+    /**
+     * 文本的分段：由文本模板生成时为模板的常量部分和各变量的值，否则只有一段。
+     * 渲染时各段的字形轮廓分别缓存，换一张图片时只需重新生成变化的部分
+     */
+    public List<String> getTextSegments() {
+        return textSegments != null ? textSegments : Collections.singletonList(text);
+    }
+    
+    /**
+     * 返回文本不同、其余参数相同的副本
+     */
+    public TextWatermarkSpec withText(String text) {
+        return new TextWatermarkSpec(text, color, fontFamily, fontSize, position, rotation, 
+                shadow, stroke, tiling, customX, customY, shadowBlur, autoContrast, margin, effectScale, null);
+    }
+    
+    /**
+     * 返回文本由若干段拼接而成、其余参数相同的副本；分段不参与比较，文本相同的水印绘制结果相同
+     */
+    public TextWatermarkSpec withText(List<String> segments) {
+        if (segments.size() == 1) {
+            return withText(segments.get(0));
+        }
+        List<String> copy = Collections.unmodifiableList(new ArrayList<>(segments));
+        return new TextWatermarkSpec(String.join("", copy), color, fontFamily, fontSize, position, rotation, 
+                shadow, stroke, tiling, customX, customY, shadowBlur, autoContrast, margin, effectScale, copy);
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TextWatermarkSpec)) {
+            return false;
+        }
+        TextWatermarkSpec that = (TextWatermarkSpec) o;
+        return fontSize == that.fontSize
+                && Double.compare(rotation, that.rotation) == 0
+                && shadow == that.shadow
+                && stroke == that.stroke
+                && tiling == that.tiling
+                && Double.compare(customX, that.customX) == 0
+                && Double.compare(customY, that.customY) == 0
+                && Double.compare(shadowBlur, that.shadowBlur) == 0
+                && autoContrast == that.autoContrast
+                && margin == that.margin
+                && Double.compare(effectScale, that.effectScale) == 0
+                && Objects.equals(text, that.text)
+                && Objects.equals(color, that.color)
+                && Objects.equals(fontFamily, that.fontFamily)
+                && position == that.position;
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(text, color, fontFamily, fontSize, position, rotation, 
+                shadow, stroke, tiling, customX, customY, shadowBlur, autoContrast, margin, effectScale);
+    }
+}
@@ -0,0 +1,68 @@
+package com.photowatermark;
+
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.TexturePaint;
+import java.awt.image.BufferedImage;
+import java.util.function.Consumer;
+
+/**
+ * 平铺图案 - 把一个（已旋转的）水印单元只渲染一次到可重复的图块中，
+ * 再用TexturePaint一次性填充画布；画布之外的图块不会被绘制
+ */
+final class TilePattern {
+    
+    private TilePattern() {
+    }
+    
+    /**
+     * 创建图块：单元在图块内的部分以及越过图块边界的部分（环绕到对侧）都会被绘制，
+     * 因此重复填充后与逐个绘制平铺单元的结果一致
+     *
+     * @param unitBounds 单元相对于图块原点的绘制范围
+     * @param drawUnit   以图块原点为坐标原点绘制一个单元
+     */
+    static BufferedImage createTileCell(
+            int tileWidth, 
+            int tileHeight, 
+            Rectangle unitBounds, 
+            RenderingHints hints, 
+            Consumer<Graphics2D> drawUnit
+    ) {
+        BufferedImage cell = new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = cell.createGraphics();
+        if (hints != null) {
+            g2d.setRenderingHints(hints);
+        }
+        
+        // 只在单元与图块相交的偏移处绘制
+        int minI = -Math.floorDiv(unitBounds.x + unitBounds.width - 1, tileWidth);
+        int maxI = Math.floorDiv(tileWidth - 1 - unitBounds.x, tileWidth);
+        int minJ = -Math.floorDiv(unitBounds.y + unitBounds.height - 1, tileHeight);
+        int maxJ = Math.floorDiv(tileHeight - 1 - unitBounds.y, tileHeight);
+        for (int i = minI; i <= maxI; i++) {
+            for (int j = minJ; j <= maxJ; j++) {
+                Graphics2D unitGraphics = (Graphics2D) g2d.create();
+                unitGraphics.translate(i * tileWidth, j * tileHeight);
+                drawUnit.accept(unitGraphics);
+                unitGraphics.dispose();
+            }
+        }
+        
+        g2d.dispose();
+        return cell;
+    }
+    
+    /**
+     * 以图块重复填充画布，originX/originY为任一图块左上角在画布中的坐标
+     */
+    static void fill(Graphics2D g2d, BufferedImage cell, int originX, int originY, int imageWidth, int imageHeight) {
+        Paint originalPaint = g2d.getPaint();
+        g2d.setPaint(new TexturePaint(cell, new Rectangle(originX, originY, cell.getWidth(), cell.getHeight())));
+        // 只填充画布范围（同时受当前裁剪区域限制），画布外的图块被直接剔除
+        g2d.fillRect(0, 0, imageWidth, imageHeight);
+        g2d.setPaint(originalPaint);
+    }
+}
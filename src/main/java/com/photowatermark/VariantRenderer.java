@@ -0,0 +1,112 @@
+package com.photowatermark;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 水印变体渲染器 - 同一张图片按多个水印方案生成多个输出（如交付给不同客户、各自带不同标志的版本）：
+ * 原图只解码一次，并预先转换为输出使用的图像类型，之后每个方案都只是同类型的整块拷贝加上水印绘制；
+ * 所有方案依次写入同一个复用的目标缓冲区，自动位置和自动对比度所需的区域统计也只计算一次
+ */
+public class VariantRenderer {
+    // 预转换的原图和目标缓冲区从缓冲池取得，渲染结束后归还
+    private final ImageBufferPool bufferPool;
+
+    public VariantRenderer() {
+        this(ImageBufferPool.getDefault());
+    }
+
+    public VariantRenderer(ImageBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * 接收每个方案的渲染结果；传入的图像在返回后会被下一个方案覆盖，需要保留时调用方应自行复制
+     */
+    public interface VariantConsumer {
+        void accept(int index, BufferedImage image) throws IOException;
+    }
+
+    /**
+     * 按顺序应用所有方案，每个结果渲染完成后立即交给consumer（原图不会被修改）
+     */
+    public void render(
+            BufferedImage originalImage,
+            List<WatermarkPlan> plans,
+            String formatName,
+            VariantConsumer consumer
+    ) throws IOException {
+        int imageType = WatermarkCompositor.selectImageType(originalImage, formatName);
+        BufferedImage base = convert(originalImage, imageType, bufferPool);
+        BufferedImage target = bufferPool.acquire(base.getWidth(), base.getHeight(), imageType);
+        try {
+            RegionStatistics statistics = null;
+            for (int i = 0; i < plans.size(); i++) {
+                WatermarkPlan plan = plans.get(i);
+                if (plan.isAutomatic() && statistics == null) {
+                    statistics = RegionStatistics.of(base);
+                }
+                plan.apply(base, target, statistics);
+                consumer.accept(i, target);
+            }
+        } finally {
+            bufferPool.release(target);
+            if (base != originalImage) {
+                bufferPool.release(base);
+            }
+        }
+    }
+
+    /**
+     * 读取图片（只解码一次），按每个方案渲染并写入对应的输出文件；所有输出使用相同的格式
+     */
+    public void export(
+            File inputFile,
+            List<WatermarkPlan> plans,
+            List<File> outputFiles,
+            String formatName,
+            int jpegQuality
+    ) throws IOException {
+        if (plans.size() != outputFiles.size()) {
+            throw new IllegalArgumentException("水印方案数量与输出文件数量不一致: "
+                    + plans.size() + " != " + outputFiles.size());
+        }
+        for (File outputFile : outputFiles) {
+            if (outputFile.getCanonicalFile().equals(inputFile.getCanonicalFile())) {
+                throw new IOException("输出文件会覆盖原图: " + outputFile.getAbsolutePath());
+            }
+        }
+
+        BufferedImage originalImage = FileUtils.readImage(inputFile, bufferPool);
+        if (originalImage == null) {
+            throw new IOException("无法读取图片: " + inputFile.getAbsolutePath());
+        }
+
+        try {
+            render(originalImage, plans, formatName,
+                    (index, image) -> FileUtils.writeImage(image, formatName, outputFiles.get(index), jpegQuality));
+        } finally {
+            bufferPool.release(originalImage);
+        }
+    }
+
+    /**
+     * 把原图转换为指定的图像类型（类型相同时直接返回），之后每次拷贝都不需要再做像素格式转换；
+     * 转换结果从缓冲池取得
+     */
+    static BufferedImage convert(BufferedImage source, int imageType, ImageBufferPool bufferPool) {
+        if (source.getType() == imageType) {
+            return source;
+        }
+        BufferedImage converted = bufferPool.acquire(source.getWidth(), source.getHeight(), imageType);
+        Graphics2D g2d = converted.createGraphics();
+        g2d.setComposite(AlphaComposite.Src);
+        OffHeapImages.draw(g2d, source);
+        g2d.dispose();
+        return converted;
+    }
+}
@@ -0,0 +1,460 @@
+package com.photowatermark;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 水印图片资源 - 保存解码后的水印图片，并按(缩放, 旋转)缓存其变体和平铺图块，线程安全。
+ * 加载时裁掉图片四周的透明边距并转换为预乘alpha格式，缩放、旋转和混合只处理有内容的区域；
+ * 裁剪偏移记录在变体的锚点中，水印的定位仍按原始尺寸计算
+ */
+public final class WatermarkAsset {
+    // 每个资源最多保留的变体数量
+    private static final int MAX_VARIANTS = 8;
+    
+    private final BufferedImage image;
+    // 裁掉透明边距后的预乘alpha图片，及其在原图中的位置
+    private final BufferedImage content;
+    private final int contentX;
+    private final int contentY;
+    private final LinkedHashMap<VariantKey, Variant> variants = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<VariantKey, BufferedImage> tileCells = new LinkedHashMap<>(16, 0.75f, true);
+    // 生成新变体、图块或混合像素后通知所属缓存重新核算容量，在不持有本对象锁时调用
+    private volatile Runnable growthListener;
+    // 上次通知之后是否生成过新的缓存内容
+    private boolean grown;
+    
+    public WatermarkAsset(BufferedImage image) {
+        this.image = Objects.requireNonNull(image, "image");
+        
+        Rectangle bounds = findContentBounds(image);
+        this.content = toPremultiplied(image, bounds);
+        this.contentX = bounds.x;
+        this.contentY = bounds.y;
+    }
+    
+    /**
+     * 包装一张已解码的图片（每次创建新资源，不跨调用复用变体；需要复用时见WatermarkAssetCache.forImage）
+     */
+    public static WatermarkAsset of(BufferedImage image) {
+        return new WatermarkAsset(image);
+    }
+    
+    /**
+     * 设置占用增长时的回调（由水印资源缓存设置，用于按新的占用淘汰其他资源）
+     */
+    void setGrowthListener(Runnable growthListener) {
+        this.growthListener = growthListener;
+    }
+    
+    /**
+     * 原始解码图片
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+    
+    /**
+     * 获取缩放后的水印图片（不旋转，已裁掉透明边距；原始尺寸见变体的宽高）
+     */
+    public BufferedImage getScaledImage(float scale) {
+        return getVariant(scale, 0).getImage();
+    }
+    
+    /**
+     * 获取按指定渲染质量缩放后的水印图片（不旋转，已裁掉透明边距）
+     */
+    public BufferedImage getScaledImage(float scale, RenderQuality quality) {
+        return getVariant(scale, 0, quality).getImage();
+    }
+    
+    /**
+     * 获取缩放并绕中心旋转后的水印图片，旋转中心在变体中的坐标由锚点给出
+     */
+    public Variant getVariant(float scale, double rotation) {
+        return getVariant(scale, rotation, RenderQuality.BALANCED);
+    }
+    
+    /**
+     * 获取按指定渲染质量（插值方式）缩放、旋转后的水印变体，不同质量的变体分别缓存
+     */
+    public Variant getVariant(float scale, double rotation, RenderQuality quality) {
+        Variant variant = findVariant(scale, rotation, quality);
+        notifyGrowth();
+        return variant;
+    }
+    
+    private synchronized Variant findVariant(float scale, double rotation, RenderQuality quality) {
+        VariantKey key = new VariantKey(scale, rotation, 1.0f, quality);
+        Variant variant = variants.get(key);
+        if (variant == null) {
+            variant = createVariant(scale, rotation, quality);
+            variants.put(key, variant);
+            trim(variants);
+            grown = true;
+        }
+        return variant;
+    }
+    
+    /**
+     * 获取平铺图块：缩放、旋转后的水印按两倍水印尺寸的间距排布，透明度已应用在图块中
+     */
+    public BufferedImage getTileCell(float scale, double rotation, float opacity) {
+        return getTileCell(scale, rotation, opacity, RenderQuality.BALANCED);
+    }
+    
+    /**
+     * 获取按指定渲染质量生成的平铺图块
+     */
+    public BufferedImage getTileCell(float scale, double rotation, float opacity, RenderQuality quality) {
+        BufferedImage tileCell = findTileCell(scale, rotation, opacity, quality);
+        notifyGrowth();
+        return tileCell;
+    }
+    
+    private synchronized BufferedImage findTileCell(float scale, double rotation, float opacity, RenderQuality quality) {
+        VariantKey key = new VariantKey(scale, rotation, opacity, quality);
+        BufferedImage tileCell = tileCells.get(key);
+        if (tileCell == null) {
+            tileCell = createTileCell(findVariant(scale, 0, quality), rotation, opacity, quality);
+            tileCells.put(key, tileCell);
+            trim(tileCells);
+            grown = true;
+        }
+        return tileCell;
+    }
+    
+    /**
+     * 有新生成的缓存内容时通知所属缓存；必须在不持有本对象锁时调用，避免与缓存的锁顺序相反而死锁
+     */
+    private void notifyGrowth() {
+        synchronized (this) {
+            if (!grown) {
+                return;
+            }
+            grown = false;
+        }
+        Runnable listener = growthListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+    
+    private synchronized void markGrown() {
+        grown = true;
+    }
+    
+    /**
+     * 超出数量时淘汰最久未使用的条目
+     */
+    private static void trim(LinkedHashMap<VariantKey, ?> entries) {
+        Iterator<? extends Map.Entry<VariantKey, ?>> iterator = entries.entrySet().iterator();
+        while (entries.size() > MAX_VARIANTS && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+    
+    /**
+     * 原图、裁剪后的图片和所有变体占用的像素字节数（估算）
+     */
+    public synchronized long getSizeInBytes() {
+        long bytes = sizeOf(image);
+        if (content != image) {
+            bytes += sizeOf(content);
+        }
+        for (Variant variant : variants.values()) {
+            if (variant.getImage() != content) {
+                bytes += sizeOf(variant.getImage());
+            }
+            bytes += variant.getBlendSourceSize();
+        }
+        for (BufferedImage tileCell : tileCells.values()) {
+            bytes += sizeOf(tileCell);
+        }
+        return bytes;
+    }
+    
+    private Variant createVariant(float scale, double rotation, RenderQuality quality) {
+        if (rotation == 0) {
+            return scale == 1.0f
+                    ? new Variant(this, content, image.getWidth() / 2 - contentX, image.getHeight() / 2 - contentY,
+                            image.getWidth(), image.getHeight())
+                    : scaleContent(scale, quality);
+        }
+        
+        // 在未旋转变体的基础上旋转，锚点即内容左上角到水印中心的距离
+        Variant unrotated = findVariant(scale, 0, quality);
+        BufferedImage scaled = unrotated.getImage();
+        int anchorX = unrotated.getAnchorX();
+        int anchorY = unrotated.getAnchorY();
+        
+        // 计算绕中心旋转后的包围盒
+        AffineTransform rotate = AffineTransform.getRotateInstance(Math.toRadians(rotation));
+        Rectangle bounds = rotate.createTransformedShape(
+                new Rectangle(-anchorX, -anchorY, scaled.getWidth(), scaled.getHeight())).getBounds();
+        // 预留插值产生的边缘像素
+        bounds.grow(1, 1);
+        
+        BufferedImage rotated = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = rotated.createGraphics();
+        g2d.addRenderingHints(quality.getRenderingHints());
+        g2d.translate(-bounds.x, -bounds.y);
+        g2d.rotate(Math.toRadians(rotation));
+        g2d.drawImage(scaled, -anchorX, -anchorY, null);
+        g2d.dispose();
+        
+        return new Variant(this, rotated, -bounds.x, -bounds.y, unrotated.getWidth(), unrotated.getHeight());
+    }
+    
+    /**
+     * 缩放水印图片：水印尺寸按原图计算，只渲染内容区域（向外多留一个像素容纳插值的边缘）
+     */
+    private Variant scaleContent(float scale, RenderQuality quality) {
+        int scaledWidth = Math.max(1, (int) (image.getWidth() * scale));
+        int scaledHeight = Math.max(1, (int) (image.getHeight() * scale));
+        double scaleX = (double) scaledWidth / image.getWidth();
+        double scaleY = (double) scaledHeight / image.getHeight();
+        
+        int x0 = Math.max(0, (int) Math.floor(contentX * scaleX) - 1);
+        int y0 = Math.max(0, (int) Math.floor(contentY * scaleY) - 1);
+        int x1 = Math.min(scaledWidth, (int) Math.ceil((contentX + content.getWidth()) * scaleX) + 1);
+        int y1 = Math.min(scaledHeight, (int) Math.ceil((contentY + content.getHeight()) * scaleY) + 1);
+        
+        BufferedImage scaledImage = new BufferedImage(
+                Math.max(1, x1 - x0), 
+                Math.max(1, y1 - y0), 
+                BufferedImage.TYPE_INT_ARGB_PRE);
+        
+        // 与整张图缩放到(scaledWidth, scaledHeight)时的像素位置一致
+        Graphics2D g2d = scaledImage.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, quality.getInterpolation());
+        g2d.translate(-x0, -y0);
+        g2d.scale(scaleX, scaleY);
+        g2d.drawImage(content, contentX, contentY, null);
+        g2d.dispose();
+        
+        return new Variant(this, scaledImage, scaledWidth / 2 - x0, scaledHeight / 2 - y0, scaledWidth, scaledHeight);
+    }
+    
+    /**
+     * 生成平铺图块：每个水印绕自己的中心旋转，跨越图块边界的部分环绕到另一侧
+     */
+    private static BufferedImage createTileCell(
+            Variant watermark, 
+            double rotation, 
+            float opacity, 
+            RenderQuality quality
+    ) {
+        BufferedImage watermarkImage = watermark.getImage();
+        int wmWidth = watermark.getWidth();
+        int wmHeight = watermark.getHeight();
+        // 内容区域相对水印中心的位置
+        int offsetX = -watermark.getAnchorX();
+        int offsetY = -watermark.getAnchorY();
+        
+        // 计算水印在图块内的绘制范围
+        Rectangle unitBounds = new Rectangle(
+                wmWidth / 2 + offsetX, wmHeight / 2 + offsetY, watermarkImage.getWidth(), watermarkImage.getHeight());
+        if (rotation != 0) {
+            AffineTransform unitTransform = new AffineTransform();
+            unitTransform.translate(wmWidth / 2, wmHeight / 2);
+            unitTransform.rotate(Math.toRadians(rotation));
+            unitBounds = unitTransform.createTransformedShape(
+                    new Rectangle(offsetX, offsetY, watermarkImage.getWidth(), watermarkImage.getHeight())).getBounds();
+            // 预留插值产生的边缘像素
+            unitBounds.grow(1, 1);
+        }
+        
+        // 透明度在生成图块时应用，重叠部分的混合与逐个绘制一致
+        return TilePattern.createTileCell(
+                wmWidth * 2, 
+                wmHeight * 2, 
+                unitBounds, 
+                quality.getRenderingHints(), 
+                g -> {
+                    g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
+                    g.translate(wmWidth / 2, wmHeight / 2);
+                    if (rotation != 0) {
+                        g.rotate(Math.toRadians(rotation));
+                    }
+                    g.drawImage(watermarkImage, offsetX, offsetY, null);
+                });
+    }
+    
+    /**
+     * 非透明像素的包围盒，四周各保留一个透明像素（若原图有），缩放插值时边缘与未裁剪时一致；
+     * 完全透明的图片保留左上角一个像素
+     */
+    private static Rectangle findContentBounds(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (!image.getColorModel().hasAlpha()) {
+            return new Rectangle(0, 0, width, height);
+        }
+        
+        int minX = width;
+        int minY = height;
+        int maxX = -1;
+        int maxY = -1;
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int left = 0;
+            while (left < width && (row[left] >>> 24) == 0) {
+                left++;
+            }
+            if (left == width) {
+                continue;
+            }
+            int right = width - 1;
+            while ((row[right] >>> 24) == 0) {
+                right--;
+            }
+            minX = Math.min(minX, left);
+            maxX = Math.max(maxX, right);
+            minY = Math.min(minY, y);
+            maxY = y;
+        }
+        if (maxX < 0) {
+            return new Rectangle(0, 0, 1, 1);
+        }
+        
+        Rectangle bounds = new Rectangle(minX - 1, minY - 1, maxX - minX + 3, maxY - minY + 3);
+        return bounds.intersection(new Rectangle(0, 0, width, height));
+    }
+    
+    /**
+     * 把图片的指定区域转换为预乘alpha格式；已是该格式且无需裁剪时直接使用原图
+     */
+    private static BufferedImage toPremultiplied(BufferedImage image, Rectangle bounds) {
+        if (image.getType() == BufferedImage.TYPE_INT_ARGB_PRE 
+                && bounds.width == image.getWidth() && bounds.height == image.getHeight()) {
+            return image;
+        }
+        BufferedImage premultiplied = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = premultiplied.createGraphics();
+        g2d.setComposite(AlphaComposite.Src);
+        g2d.drawImage(image, -bounds.x, -bounds.y, null);
+        g2d.dispose();
+        return premultiplied;
+    }
+    
+    private static long sizeOf(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * 4;
+    }
+    
+    /**
+     * 水印变体：图片、旋转中心在图片中的锚点，以及未旋转时的水印尺寸（用于定位）
+     */
+    public static final class Variant {
+        private final WatermarkAsset owner;
+        private final BufferedImage image;
+        private final int anchorX;
+        private final int anchorY;
+        private final int width;
+        private final int height;
+        // 混合内核使用的预乘像素，首次使用时生成
+        private volatile AlphaBlender.Source blendSource;
+        
+        Variant(WatermarkAsset owner, BufferedImage image, int anchorX, int anchorY, int width, int height) {
+            this.owner = owner;
+            this.image = image;
+            this.anchorX = anchorX;
+            this.anchorY = anchorY;
+            this.width = width;
+            this.height = height;
+        }
+        
+        public BufferedImage getImage() {
+            return image;
+        }
+        
+        public int getAnchorX() {
+            return anchorX;
+        }
+        
+        public int getAnchorY() {
+            return anchorY;
+        }
+        
+        /**
+         * 获取混合内核使用的预乘像素和非透明区段
+         */
+        AlphaBlender.Source getBlendSource() {
+            AlphaBlender.Source source = blendSource;
+            if (source == null) {
+                // 并发时可能重复生成，结果相同，无需加锁
+                source = AlphaBlender.Source.of(image);
+                blendSource = source;
+                owner.markGrown();
+                owner.notifyGrowth();
+            }
+            return source;
+        }
+        
+        long getBlendSourceSize() {
+            AlphaBlender.Source source = blendSource;
+            return source == null ? 0 : source.getSizeInBytes();
+        }
+        
+        /**
+         * 缩放后、旋转前的水印宽度
+         */
+        public int getWidth() {
+            return width;
+        }
+        
+        /**
+         * 缩放后、旋转前的水印高度
+         */
+        public int getHeight() {
+            return height;
+        }
+    }
+    
+    /**
+     * 变体和平铺图块的缓存键（变体的透明度固定为1），包含生成时使用的渲染质量
+     */
+    private static final class VariantKey {
+        private final float scale;
+        private final double rotation;
+        private final float opacity;
+        private final RenderQuality quality;
+        
+        VariantKey(float scale, double rotation, float opacity, RenderQuality quality) {
+            this.scale = scale;
+            this.rotation = rotation;
+            this.opacity = opacity;
+            this.quality = quality;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof VariantKey)) {
+                return false;
+            }
+            VariantKey that = (VariantKey) o;
+            return Float.compare(scale, that.scale) == 0 
+                    && Double.compare(rotation, that.rotation) == 0 
+                    && Float.compare(opacity, that.opacity) == 0 
+                    && quality == that.quality;
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(scale, rotation, opacity, quality);
+        }
+    }
+}
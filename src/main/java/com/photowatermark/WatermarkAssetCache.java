@@ -0,0 +1,166 @@
+package com.photowatermark;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.imageio.ImageIO;
+
+/**
+ * 水印图片缓存 - 按文件路径和修改时间缓存解码后的水印资源，按字节数限制容量（LRU），线程安全。
+ * 资源在使用中还会生成缩放/旋转变体和平铺图块，每次增长后都会重新核算容量
+ */
+public class WatermarkAssetCache {
+    // 默认容量：128MB
+    public static final long DEFAULT_MAX_BYTES = 128L * 1024 * 1024;
+    
+    // 按图片对象缓存的资源（见forImage）：图片和资源都不再被引用时随之回收
+    private static final Map<BufferedImage, WeakReference<WatermarkAsset>> IMAGE_ASSETS = new WeakHashMap<>();
+    
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long hitCount;
+    private long loadCount;
+    
+    public WatermarkAssetCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+    
+    public WatermarkAssetCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+    
+    /**
+     * 获取水印资源；文件未变化时直接复用已解码的图片，文件被修改后重新解码
+     */
+    public WatermarkAsset get(File file) throws IOException {
+        if (file == null || !file.exists()) {
+            throw new IOException("水印图片不存在");
+        }
+        
+        String path = file.getCanonicalPath();
+        long lastModified = file.lastModified();
+        
+        synchronized (this) {
+            Entry entry = entries.get(path);
+            if (entry != null && entry.lastModified == lastModified) {
+                hitCount++;
+                return entry.asset;
+            }
+        }
+        
+        // 解码放在锁外，避免阻塞其他线程的缓存命中
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("无法解码水印图片: " + file.getName());
+        }
+        WatermarkAsset asset = new WatermarkAsset(image);
+        asset.setGrowthListener(() -> onAssetGrown(path, asset));
+        
+        synchronized (this) {
+            loadCount++;
+            entries.put(path, new Entry(asset, lastModified));
+            trimToSize(path);
+        }
+        return asset;
+    }
+    
+    /**
+     * 获取已解码图片的水印资源：同一个图片对象（按引用）共用一个资源及其变体缓存，
+     * 不会每次重新裁剪和转换。图片在用作水印后不应再修改
+     */
+    public static WatermarkAsset forImage(BufferedImage image) {
+        synchronized (IMAGE_ASSETS) {
+            WeakReference<WatermarkAsset> reference = IMAGE_ASSETS.get(image);
+            WatermarkAsset asset = reference != null ? reference.get() : null;
+            if (asset == null) {
+                asset = new WatermarkAsset(image);
+                // 资源持有图片，值用弱引用，否则图片永远不会被回收
+                IMAGE_ASSETS.put(image, new WeakReference<>(asset));
+            }
+            return asset;
+        }
+    }
+    
+    /**
+     * 资源生成了新的变体或图块：仍在缓存中时按新的占用重新淘汰（该资源本身保留）
+     */
+    private synchronized void onAssetGrown(String path, WatermarkAsset asset) {
+        Entry entry = entries.get(path);
+        if (entry != null && entry.asset == asset) {
+            trimToSize(path);
+        }
+    }
+    
+    /**
+     * 当前缓存的资源（含其变体和图块）占用的字节数（估算）
+     */
+    public synchronized long getSizeInBytes() {
+        long totalBytes = 0;
+        for (Entry entry : entries.values()) {
+            totalBytes += entry.asset.getSizeInBytes();
+        }
+        return totalBytes;
+    }
+    
+    /**
+     * 按LRU顺序淘汰，直到总字节数回到限制以内（刚放入的条目保留）
+     */
+    private void trimToSize(String keepPath) {
+        long totalBytes = getSizeInBytes();
+        
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            if (eldest.getKey().equals(keepPath)) {
+                continue;
+            }
+            totalBytes -= eldest.getValue().asset.getSizeInBytes();
+            iterator.remove();
+        }
+    }
+    
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+    
+    /**
+     * 缓存命中次数
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+    
+    /**
+     * 实际解码次数
+     */
+    public synchronized long getLoadCount() {
+        return loadCount;
+    }
+    
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    
+    private static final class Entry {
+        private final WatermarkAsset asset;
+        private final long lastModified;
+        
+        Entry(WatermarkAsset asset, long lastModified) {
+            this.asset = asset;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.photowatermark;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 水印合成引擎 - 原图只绘制一次，所有水印在同一个图形上下文中依次合成到同一个目标缓冲区
+ */
+public class WatermarkCompositor {
+    // 达到该像素数的图片才分条带并行渲染，小图片的任务调度开销大于收益
+    public static final long PARALLEL_MIN_PIXELS = 4_000_000L;
+    // 每个条带的最小高度
+    private static final int MIN_BAND_HEIGHT = 64;
+    // 自动位置的候选位置：角落优先（右下为默认位置），细节相同时按此顺序选择
+    private static final Position[] AUTO_POSITIONS = {
+            Position.BOTTOM_RIGHT, Position.BOTTOM_LEFT, Position.TOP_RIGHT, Position.TOP_LEFT, 
+            Position.BOTTOM_CENTER, Position.TOP_CENTER, Position.CENTER_RIGHT, Position.CENTER_LEFT, 
+            Position.CENTER
+    };
+    
+    private final TextWatermarkProcessor textProcessor;
+    private final ImageWatermarkProcessor imageProcessor;
+    // 并行渲染使用的线程池，为null时串行渲染
+    private final ForkJoinPool renderPool;
+    
+    public WatermarkCompositor() {
+        this(new TextWatermarkProcessor(), new ImageWatermarkProcessor());
+    }
+    
+    public WatermarkCompositor(TextWatermarkProcessor textProcessor, ImageWatermarkProcessor imageProcessor) {
+        this(textProcessor, imageProcessor, null);
+    }
+    
+    /**
+     * 指定线程池时，大图片会被切分成水平条带在线程池中并行渲染，结果与串行渲染逐像素一致
+     */
+    public WatermarkCompositor(
+            TextWatermarkProcessor textProcessor, 
+            ImageWatermarkProcessor imageProcessor, 
+            ForkJoinPool renderPool
+    ) {
+        this.textProcessor = textProcessor;
+        this.imageProcessor = imageProcessor;
+        this.renderPool = renderPool;
+    }
+    
+    /**
+     * 按顺序合成所有水印，返回新的目标图像（原图不会被修改）
+     */
+    public BufferedImage composite(BufferedImage originalImage, List<? extends WatermarkSpec> specs) {
+        return composite(originalImage, specs, null);
+    }
+    
+    /**
+     * 按顺序合成所有水印，目标图像类型根据原图和输出格式选择（原图不会被修改）
+     */
+    public BufferedImage composite(BufferedImage originalImage, List<? extends WatermarkSpec> specs, String formatName) {
+        return composite(originalImage, specs, formatName, RenderQuality.BALANCED);
+    }
+    
+    /**
+     * 按指定的渲染质量合成所有水印：预览使用DRAFT，导出使用FINAL
+     */
+    public BufferedImage composite(
+            BufferedImage originalImage, 
+            List<? extends WatermarkSpec> specs, 
+            String formatName, 
+            RenderQuality quality
+    ) {
+        // 唯一的目标缓冲区
+        BufferedImage watermarkedImage = new BufferedImage(
+                originalImage.getWidth(), 
+                originalImage.getHeight(), 
+                selectImageType(originalImage, formatName));
+        composite(originalImage, watermarkedImage, specs, quality);
+        return watermarkedImage;
+    }
+    
+    /**
+     * 合成所有水印并写入调用方提供的目标图像（尺寸必须与原图一致，原有内容被完全替换），
+     * 便于批量处理时复用缓冲区
+     */
+    public void composite(
+            BufferedImage originalImage, 
+            BufferedImage target, 
+            List<? extends WatermarkSpec> specs, 
+            RenderQuality quality
+    ) {
+        int imageWidth = originalImage.getWidth();
+        int imageHeight = originalImage.getHeight();
+        if (target.getWidth() != imageWidth || target.getHeight() != imageHeight) {
+            throw new IllegalArgumentException("目标图像尺寸与原图不一致: "
+                    + target.getWidth() + "x" + target.getHeight() + " != " + imageWidth + "x" + imageHeight);
+        }
+        List<? extends WatermarkSpec> resolved = resolveAutomatic(originalImage, specs, quality);
+        
+        if (isParallel(imageWidth, imageHeight)) {
+            // 先串行生成文本图章、水印变体和平铺图块，避免各条带重复生成
+            for (WatermarkSpec spec : resolved) {
+                if (spec instanceof TextWatermarkSpec) {
+                    textProcessor.getTextStamp((TextWatermarkSpec) spec, quality);
+                } else if (spec instanceof ImageWatermarkSpec) {
+                    imageProcessor.prepareImageWatermark((ImageWatermarkSpec) spec, quality);
+                }
+            }
+        }
+        render(originalImage, target, quality, 
+                g2d -> drawWatermarks(g2d, target, imageWidth, imageHeight, resolved, quality));
+    }
+    
+    /**
+     * 大图片是否分条带并行渲染
+     */
+    private boolean isParallel(int imageWidth, int imageHeight) {
+        return renderPool != null 
+                && (long) imageWidth * imageHeight >= PARALLEL_MIN_PIXELS 
+                && imageHeight >= MIN_BAND_HEIGHT * 2;
+    }
+    
+    /**
+     * 把原图拷贝到目标图像后由drawer绘制水印。指定了线程池的大图片被切分成水平条带并行渲染：
+     * 每个条带使用自己的图形上下文并裁剪到所属的行，水印仍按整张图片的坐标绘制，旋转和平铺在条带接缝处自然连续；
+     * 此时drawer会在多个线程中同时被调用，只能读取共享的绘制资源。编译后的水印方案也经由这里渲染
+     */
+    void render(
+            BufferedImage originalImage, 
+            BufferedImage target, 
+            RenderQuality quality, 
+            Consumer<Graphics2D> drawer
+    ) {
+        int imageWidth = originalImage.getWidth();
+        int imageHeight = originalImage.getHeight();
+        if (isParallel(imageWidth, imageHeight)) {
+            renderBands(originalImage, target, quality, drawer);
+            return;
+        }
+        
+        Graphics2D g2d = target.createGraphics();
+        quality.applyTo(g2d);
+        
+        // 绘制原始图像（整个流程中唯一一次整帧拷贝）；目标图像可能被复用，直接替换像素而不是叠加
+        g2d.setComposite(AlphaComposite.Src);
+        OffHeapImages.draw(g2d, originalImage);
+        g2d.setComposite(AlphaComposite.SrcOver);
+        
+        drawer.accept(g2d);
+        
+        // 释放资源
+        g2d.dispose();
+    }
+    
+    /**
+     * 把目标图像切分成水平条带，在线程池中并行拷贝原图和绘制水印
+     */
+    private void renderBands(
+            BufferedImage originalImage, 
+            BufferedImage target, 
+            RenderQuality quality, 
+            Consumer<Graphics2D> drawer
+    ) {
+        int imageWidth = originalImage.getWidth();
+        int imageHeight = originalImage.getHeight();
+        
+        // 条带数为并行度的数倍，便于负载均衡
+        int bandCount = renderPool.getParallelism() * 4;
+        int bandHeight = Math.max(MIN_BAND_HEIGHT, (imageHeight + bandCount - 1) / bandCount);
+        
+        // 图形上下文在当前线程中创建，各任务只负责绘制
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int bandY = 0; bandY < imageHeight; bandY += bandHeight) {
+            Graphics2D g2d = target.createGraphics();
+            quality.applyTo(g2d);
+            g2d.clipRect(0, bandY, imageWidth, Math.min(bandHeight, imageHeight - bandY));
+            
+            tasks.add(() -> {
+                try {
+                    g2d.setComposite(AlphaComposite.Src);
+                    OffHeapImages.draw(g2d, originalImage);
+                    g2d.setComposite(AlphaComposite.SrcOver);
+                    drawer.accept(g2d);
+                } finally {
+                    g2d.dispose();
+                }
+                return null;
+            });
+        }
+        
+        for (Future<Void> future : renderPool.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("并行渲染被中断", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException("并行渲染失败", cause);
+            }
+        }
+    }
+    
+    /**
+     * 选择目标图像类型：原图不透明或输出格式不支持透明时不再分配alpha通道，
+     * 水印直接合成到不透明的缓冲区中，导出JPEG时也无需再转换一次
+     */
+    public static int selectImageType(BufferedImage source, String formatName) {
+        boolean opaque = source.getTransparency() == Transparency.OPAQUE || isOpaqueFormat(formatName);
+        if (!opaque) {
+            return BufferedImage.TYPE_INT_ARGB;
+        }
+        
+        // 保留原图的彩色不透明类型（如JPEG解码得到的3BYTE_BGR），避免格式转换；灰度等其他类型使用INT_RGB，保证水印颜色不丢失
+        int sourceType = source.getType();
+        if (sourceType == BufferedImage.TYPE_3BYTE_BGR 
+                || sourceType == BufferedImage.TYPE_INT_RGB 
+                || sourceType == BufferedImage.TYPE_INT_BGR) {
+            return sourceType;
+        }
+        return BufferedImage.TYPE_INT_RGB;
+    }
+    
+    /**
+     * 判断输出格式是否不支持透明通道
+     */
+    private static boolean isOpaqueFormat(String formatName) {
+        if (formatName == null) {
+            return false;
+        }
+        String format = formatName.toLowerCase();
+        return format.equals("jpg") || format.equals("jpeg") || format.equals("bmp");
+    }
+    
+    /**
+     * 为随图片内容变化的水印确定参数：自动位置的水印选择背景细节最少的预设位置，
+     * 开启自动对比度的文本水印再按所选位置的背景亮度选择颜色，返回可直接绘制的水印列表；
+     * 没有此类水印时原样返回，不读取原图
+     */
+    public List<? extends WatermarkSpec> resolveAutomatic(
+            BufferedImage originalImage, 
+            List<? extends WatermarkSpec> specs, 
+            RenderQuality quality
+    ) {
+        return resolveAutomatic(specs, () -> RegionStatistics.of(originalImage), 
+                originalImage.getWidth(), originalImage.getHeight(), quality);
+    }
+    
+    /**
+     * 同上，区域统计由调用方提供（可跨多次渲染复用），只在需要时获取
+     */
+    List<? extends WatermarkSpec> resolveAutomatic(
+            List<? extends WatermarkSpec> specs, 
+            Supplier<RegionStatistics> statistics, 
+            int imageWidth, 
+            int imageHeight, 
+            RenderQuality quality
+    ) {
+        List<WatermarkSpec> resolved = null;
+        RegionStatistics regionStatistics = null;
+        for (int i = 0; i < specs.size(); i++) {
+            WatermarkSpec spec = specs.get(i);
+            if (!isAutomatic(spec)) {
+                continue;
+            }
+            if (resolved == null) {
+                resolved = new ArrayList<>(specs);
+                regionStatistics = statistics.get();
+            }
+            
+            if (isAutoPosition(spec)) {
+                WatermarkSpec candidate = spec;
+                spec = spec.withPosition(chooseQuietestPosition(regionStatistics, 
+                        position -> getWatermarkBounds(candidate.withPosition(position), imageWidth, imageHeight, quality)));
+            }
+            if (spec instanceof TextWatermarkSpec) {
+                spec = textProcessor.resolveAutoContrast(
+                        (TextWatermarkSpec) spec, regionStatistics, imageWidth, imageHeight, quality);
+            }
+            resolved.set(i, spec);
+        }
+        return resolved == null ? specs : resolved;
+    }
+    
+    /**
+     * 水印参数是否随图片内容变化（自动位置或自动对比度）
+     */
+    static boolean isAutomatic(WatermarkSpec spec) {
+        return isAutoPosition(spec) 
+                || spec instanceof TextWatermarkSpec && ((TextWatermarkSpec) spec).isAutoContrast();
+    }
+    
+    /**
+     * 是否为需要自动选择位置的水印（平铺水印不使用位置）
+     */
+    static boolean isAutoPosition(WatermarkSpec spec) {
+        return spec.getPosition() == Position.AUTO && !spec.isTiling();
+    }
+    
+    /**
+     * 在候选位置中选择水印范围内平均边缘强度最低的一个，强度相同时按候选顺序优先
+     */
+    static Position chooseQuietestPosition(RegionStatistics statistics, Function<Position, Rectangle> boundsOf) {
+        Position quietest = AUTO_POSITIONS[0];
+        double lowestDensity = Double.MAX_VALUE;
+        for (Position position : AUTO_POSITIONS) {
+            double density = statistics.edgeDensity(boundsOf.apply(position));
+            if (density < lowestDensity) {
+                lowestDensity = density;
+                quietest = position;
+            }
+        }
+        return quietest;
+    }
+    
+    /**
+     * 在已有的图形上下文中依次绘制水印
+     */
+    public void drawWatermarks(Graphics2D g2d, int imageWidth, int imageHeight, List<? extends WatermarkSpec> specs) {
+        drawWatermarks(g2d, null, imageWidth, imageHeight, specs);
+    }
+    
+    /**
+     * 在已有的图形上下文中依次绘制水印；target为该图形上下文绘制的目标图像，
+     * 给出时图片水印可以直接在像素数组上混合
+     */
+    public void drawWatermarks(
+            Graphics2D g2d, 
+            BufferedImage target, 
+            int imageWidth, 
+            int imageHeight, 
+            List<? extends WatermarkSpec> specs
+    ) {
+        drawWatermarks(g2d, target, imageWidth, imageHeight, specs, RenderQuality.BALANCED);
+    }
+    
+    /**
+     * 在已有的图形上下文中按指定的渲染质量依次绘制水印（图形上下文的渲染设置由调用方负责）
+     */
+    public void drawWatermarks(
+            Graphics2D g2d, 
+            BufferedImage target, 
+            int imageWidth, 
+            int imageHeight, 
+            List<? extends WatermarkSpec> specs, 
+            RenderQuality quality
+    ) {
+        for (WatermarkSpec spec : specs) {
+            if (spec instanceof TextWatermarkSpec) {
+                textProcessor.drawTextWatermark(g2d, imageWidth, imageHeight, (TextWatermarkSpec) spec, quality);
+            } else if (spec instanceof ImageWatermarkSpec) {
+                imageProcessor.drawImageWatermark(g2d, target, imageWidth, imageHeight, (ImageWatermarkSpec) spec, quality);
+            } else if (spec != null) {
+                throw new IllegalArgumentException("不支持的水印类型: " + spec.getClass().getName());
+            }
+        }
+    }
+    
+    /**
+     * 计算水印在画布上占据的范围；平铺水印覆盖整个画布，返回null
+     */
+    public Rectangle getWatermarkBounds(WatermarkSpec spec, int imageWidth, int imageHeight) {
+        return getWatermarkBounds(spec, imageWidth, imageHeight, RenderQuality.BALANCED);
+    }
+    
+    /**
+     * 计算按指定渲染质量绘制时水印在画布上占据的范围；平铺水印返回null
+     */
+    public Rectangle getWatermarkBounds(WatermarkSpec spec, int imageWidth, int imageHeight, RenderQuality quality) {
+        if (spec instanceof TextWatermarkSpec) {
+            return textProcessor.getWatermarkBounds((TextWatermarkSpec) spec, imageWidth, imageHeight, quality);
+        } else if (spec instanceof ImageWatermarkSpec) {
+            return imageProcessor.getWatermarkBounds((ImageWatermarkSpec) spec, imageWidth, imageHeight, quality);
+        }
+        throw new IllegalArgumentException("不支持的水印类型: " + spec.getClass().getName());
+    }
+    
+    public TextWatermarkProcessor getTextProcessor() {
+        return textProcessor;
+    }
+    
+    public ImageWatermarkProcessor getImageProcessor() {
+        return imageProcessor;
+    }
+}
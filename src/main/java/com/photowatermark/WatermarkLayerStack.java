@@ -0,0 +1,304 @@
+package com.photowatermark;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 水印图层栈 - 任意数量的文本和图片水印按顺序叠加，每个图层持有自己的栅格化结果：
+ * 修改某一图层的水印参数时只重新栅格化该图层，修改图层透明度、可见性或顺序时只把已缓存的
+ * 图层重新混合到原图上。图层栅格只覆盖水印所在的范围，平铺水印的图层覆盖整个画布。
+ *
+ * 注意：与增量渲染器相同，返回的画布会在下次渲染时被原地更新，调用方不应修改它；
+ * 原图在渲染期间也不能被修改。
+ */
+public class WatermarkLayerStack {
+    private final WatermarkCompositor compositor;
+    private final List<Layer> layers = new ArrayList<>();
+
+    // 上次渲染使用的原图、渲染质量和结果
+    private BufferedImage sourceImage;
+    private RenderQuality renderedQuality;
+    private BufferedImage canvas;
+    // 原图的区域统计（自动位置和自动对比度使用），原图变化时重新生成
+    private RegionStatistics statistics;
+    // 图层的透明度、可见性或顺序变化后需要重新混合
+    private boolean blendDirty = true;
+
+    // 统计：图层栅格化次数和整体混合次数
+    private long rasterizeCount;
+    private long blendCount;
+
+    public WatermarkLayerStack(WatermarkCompositor compositor) {
+        this.compositor = compositor;
+    }
+
+    /**
+     * 在最上层添加图层
+     */
+    public synchronized Layer addLayer(WatermarkSpec spec) {
+        return addLayer(layers.size(), spec);
+    }
+
+    /**
+     * 在指定位置添加图层，0为最下层
+     */
+    public synchronized Layer addLayer(int index, WatermarkSpec spec) {
+        Layer layer = new Layer(Objects.requireNonNull(spec, "spec"));
+        layers.add(index, layer);
+        blendDirty = true;
+        return layer;
+    }
+
+    public synchronized void removeLayer(Layer layer) {
+        if (layers.remove(layer)) {
+            layer.release();
+            blendDirty = true;
+        }
+    }
+
+    /**
+     * 调整图层顺序，图层栅格不受影响
+     */
+    public synchronized void moveLayer(Layer layer, int index) {
+        if (!layers.remove(layer)) {
+            throw new IllegalArgumentException("图层不属于该图层栈");
+        }
+        layers.add(index, layer);
+        blendDirty = true;
+    }
+
+    /**
+     * 替换图层的水印参数；参数与原来相同时不做任何处理
+     */
+    public synchronized void setSpec(Layer layer, WatermarkSpec spec) {
+        Objects.requireNonNull(spec, "spec");
+        if (!spec.equals(layer.spec)) {
+            layer.spec = spec;
+            layer.release();
+            blendDirty = true;
+        }
+    }
+
+    /**
+     * 设置图层透明度（在水印自身的透明度之上再乘以该值），只需重新混合
+     */
+    public synchronized void setOpacity(Layer layer, float opacity) {
+        if (opacity < 0 || opacity > 1) {
+            throw new IllegalArgumentException("图层透明度必须在0到1之间: " + opacity);
+        }
+        if (layer.opacity != opacity) {
+            layer.opacity = opacity;
+            blendDirty = true;
+        }
+    }
+
+    /**
+     * 显示或隐藏图层，隐藏的图层保留栅格，重新显示时无需重新生成
+     */
+    public synchronized void setVisible(Layer layer, boolean visible) {
+        if (layer.visible != visible) {
+            layer.visible = visible;
+            blendDirty = true;
+        }
+    }
+
+    /**
+     * 从下到上的所有图层
+     */
+    public synchronized List<Layer> getLayers() {
+        return Collections.unmodifiableList(new ArrayList<>(layers));
+    }
+
+    /**
+     * 从下到上的所有图层的水印参数（包括隐藏的图层）
+     */
+    public synchronized List<WatermarkSpec> getSpecs() {
+        List<WatermarkSpec> specs = new ArrayList<>(layers.size());
+        for (Layer layer : layers) {
+            specs.add(layer.spec);
+        }
+        return specs;
+    }
+
+    /**
+     * 渲染所有可见图层：只栅格化参数发生变化的图层，没有任何变化时直接返回上次的画布
+     */
+    public synchronized BufferedImage render(BufferedImage originalImage, RenderQuality quality) {
+        int imageWidth = originalImage.getWidth();
+        int imageHeight = originalImage.getHeight();
+
+        // 图层栅格依赖图片尺寸（定位和平铺范围）和渲染质量
+        if (sourceImage == null
+                || sourceImage.getWidth() != imageWidth
+                || sourceImage.getHeight() != imageHeight
+                || quality != renderedQuality) {
+            for (Layer layer : layers) {
+                layer.release();
+            }
+        }
+        if (originalImage != sourceImage || quality != renderedQuality) {
+            blendDirty = true;
+        }
+        if (originalImage != sourceImage) {
+            // 自动位置和自动对比度图层的栅格取决于原图内容
+            statistics = null;
+            for (Layer layer : layers) {
+                if (WatermarkCompositor.isAutomatic(layer.spec)) {
+                    layer.release();
+                }
+            }
+        }
+
+        for (Layer layer : layers) {
+            if (layer.visible && layer.dirty) {
+                rasterize(layer, originalImage, quality);
+                blendDirty = true;
+            }
+        }
+
+        if (blendDirty) {
+            blend(originalImage);
+            blendDirty = false;
+        }
+
+        sourceImage = originalImage;
+        renderedQuality = quality;
+        return canvas;
+    }
+
+    /**
+     * 把图层的水印单独绘制到透明的预乘alpha栅格中，栅格只覆盖水印在画布内的范围
+     */
+    private void rasterize(Layer layer, BufferedImage originalImage, RenderQuality quality) {
+        int imageWidth = originalImage.getWidth();
+        int imageHeight = originalImage.getHeight();
+        List<? extends WatermarkSpec> specs = compositor.resolveAutomatic(
+                Collections.singletonList(layer.spec), () -> getStatistics(originalImage), 
+                imageWidth, imageHeight, quality);
+        
+        Rectangle imageBounds = new Rectangle(0, 0, imageWidth, imageHeight);
+        Rectangle bounds = compositor.getWatermarkBounds(specs.get(0), imageWidth, imageHeight, quality);
+        bounds = bounds == null ? imageBounds : bounds.intersection(imageBounds);
+
+        layer.dirty = false;
+        rasterizeCount++;
+        if (bounds.isEmpty()) {
+            // 水印完全在画布之外
+            layer.raster = null;
+            return;
+        }
+
+        BufferedImage raster = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g2d = raster.createGraphics();
+        quality.applyTo(g2d);
+        g2d.translate(-bounds.x, -bounds.y);
+        compositor.drawWatermarks(g2d, raster, imageWidth, imageHeight, specs, quality);
+        g2d.dispose();
+
+        layer.raster = raster;
+        layer.rasterX = bounds.x;
+        layer.rasterY = bounds.y;
+    }
+
+    private RegionStatistics getStatistics(BufferedImage originalImage) {
+        if (statistics == null) {
+            statistics = RegionStatistics.of(originalImage);
+        }
+        return statistics;
+    }
+
+    /**
+     * 从原图开始按顺序混合所有可见图层的栅格；尺寸和类型不变时复用上次的画布
+     */
+    private void blend(BufferedImage originalImage) {
+        int imageType = WatermarkCompositor.selectImageType(originalImage, null);
+        if (canvas == null
+                || canvas.getWidth() != originalImage.getWidth()
+                || canvas.getHeight() != originalImage.getHeight()
+                || canvas.getType() != imageType) {
+            canvas = new BufferedImage(originalImage.getWidth(), originalImage.getHeight(), imageType);
+        }
+
+        Graphics2D g2d = canvas.createGraphics();
+        // 画布被复用，直接替换像素而不是叠加
+        g2d.setComposite(AlphaComposite.Src);
+        OffHeapImages.draw(g2d, originalImage);
+
+        for (Layer layer : layers) {
+            if (!layer.visible || layer.raster == null || layer.opacity <= 0) {
+                continue;
+            }
+            g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, layer.opacity));
+            g2d.drawImage(layer.raster, layer.rasterX, layer.rasterY, null);
+        }
+
+        g2d.dispose();
+        blendCount++;
+    }
+
+    /**
+     * 丢弃所有图层栅格和上次的渲染结果，下次渲染时全部重新生成
+     */
+    public synchronized void reset() {
+        for (Layer layer : layers) {
+            layer.release();
+        }
+        sourceImage = null;
+        renderedQuality = null;
+        canvas = null;
+        statistics = null;
+        blendDirty = true;
+    }
+
+    public synchronized long getRasterizeCount() {
+        return rasterizeCount;
+    }
+
+    public synchronized long getBlendCount() {
+        return blendCount;
+    }
+
+    /**
+     * 图层：水印参数、图层透明度、可见性，以及缓存的栅格和脏标记。
+     * 图层的修改统一通过所属的图层栈进行
+     */
+    public static final class Layer {
+        // 由图层栈加锁修改，可在其他线程中读取
+        private volatile WatermarkSpec spec;
+        private volatile float opacity = 1.0f;
+        private volatile boolean visible = true;
+
+        // 栅格及其在画布上的位置；脏标记表示栅格需要重新生成
+        private BufferedImage raster;
+        private int rasterX;
+        private int rasterY;
+        private boolean dirty = true;
+
+        private Layer(WatermarkSpec spec) {
+            this.spec = spec;
+        }
+
+        private void release() {
+            raster = null;
+            dirty = true;
+        }
+
+        public WatermarkSpec getSpec() {
+            return spec;
+        }
+
+        public float getOpacity() {
+            return opacity;
+        }
+
+        public boolean isVisible() {
+            return visible;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.photowatermark;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 编译后的水印方案 - 批量处理时只编译一次：文本图章、字体、缩放旋转后的水印图片和平铺图块
+ * 都在编译时生成并直接持有，应用时不再查询缓存；非平铺水印的位置按图片尺寸缓存，
+ * 同尺寸的图片只计算一次布局。方案不可变，可以被多个线程同时应用。
+ *
+ * 自动位置的水印在每次应用时按图片内容从九个预设位置中选择（各候选位置的范围只用已生成的图章计算），
+ * 开启自动对比度的文本水印再按背景亮度选择颜色，对应颜色的图章从图章缓存中获取。
+ *
+ * 应用时经由编译所用合成引擎的渲染流程，合成引擎指定了线程池时大图片同样分条带并行渲染。
+ *
+ * 注意：方案按编译时的水印参数生成，EXIF日期等随图片变化的文本需要为每张图片单独编译。
+ */
+public final class WatermarkPlan {
+    // 最多缓存的图片尺寸数量，超出时清空重建
+    private static final int MAX_LAYOUTS = 64;
+
+    private final WatermarkCompositor compositor;
+    private final List<WatermarkSpec> specs;
+    private final RenderQuality quality;
+    private final List<Step> steps;
+    // 是否有水印需要按图片统计背景（自动位置或自动对比度），以及是否有自动位置的水印
+    private final boolean automatic;
+    private final boolean autoPosition;
+    // 图片尺寸 -> 各水印的绘制范围（平铺水印和自动位置的水印为null）
+    private final ConcurrentHashMap<Long, Rectangle[]> layouts = new ConcurrentHashMap<>();
+
+    private WatermarkPlan(
+            WatermarkCompositor compositor, 
+            List<WatermarkSpec> specs, 
+            RenderQuality quality, 
+            List<Step> steps
+    ) {
+        this.compositor = compositor;
+        this.specs = specs;
+        this.quality = quality;
+        this.steps = steps;
+        this.automatic = specs.stream().anyMatch(WatermarkCompositor::isAutomatic);
+        this.autoPosition = specs.stream().anyMatch(WatermarkCompositor::isAutoPosition);
+    }
+
+    /**
+     * 编译水印方案：预先生成所有水印的绘制资源
+     */
+    public static WatermarkPlan compile(
+            WatermarkCompositor compositor,
+            List<? extends WatermarkSpec> specs,
+            RenderQuality quality
+    ) {
+        TextWatermarkProcessor textProcessor = compositor.getTextProcessor();
+        ImageWatermarkProcessor imageProcessor = compositor.getImageProcessor();
+
+        List<Step> steps = new ArrayList<>(specs.size());
+        for (WatermarkSpec spec : specs) {
+            if (spec instanceof TextWatermarkSpec) {
+                TextWatermarkSpec textSpec = (TextWatermarkSpec) spec;
+                steps.add(new TextStep(textProcessor, textSpec, textProcessor.getTextStamp(textSpec, quality), quality));
+            } else if (spec instanceof ImageWatermarkSpec) {
+                steps.add(new ImageStep(imageProcessor, (ImageWatermarkSpec) spec, quality));
+            } else {
+                throw new IllegalArgumentException("不支持的水印类型: " + spec.getClass().getName());
+            }
+        }
+
+        return new WatermarkPlan(
+                compositor,
+                Collections.unmodifiableList(new ArrayList<>(specs)),
+                quality,
+                Collections.unmodifiableList(steps));
+    }
+
+    /**
+     * 应用方案，返回新的目标图像（原图不会被修改）
+     */
+    public BufferedImage apply(BufferedImage originalImage) {
+        return apply(originalImage, (String) null);
+    }
+
+    /**
+     * 应用方案，目标图像类型根据原图和输出格式选择
+     */
+    public BufferedImage apply(BufferedImage originalImage, String formatName) {
+        BufferedImage watermarkedImage = new BufferedImage(
+                originalImage.getWidth(),
+                originalImage.getHeight(),
+                WatermarkCompositor.selectImageType(originalImage, formatName));
+        apply(originalImage, watermarkedImage);
+        return watermarkedImage;
+    }
+
+    /**
+     * 应用方案并写入调用方提供的目标图像（尺寸必须与原图一致），便于批量处理时复用缓冲区
+     */
+    public void apply(BufferedImage originalImage, BufferedImage target) {
+        apply(originalImage, target, null);
+    }
+
+    /**
+     * 应用方案并写入目标图像；statistics为原图的区域统计，为null时按需生成。
+     * 同一张图片应用多个方案时可以共用一份统计
+     */
+    void apply(BufferedImage originalImage, BufferedImage target, RegionStatistics statistics) {
+        int imageWidth = originalImage.getWidth();
+        int imageHeight = originalImage.getHeight();
+        if (target.getWidth() != imageWidth || target.getHeight() != imageHeight) {
+            throw new IllegalArgumentException("目标图像尺寸与原图不一致: "
+                    + target.getWidth() + "x" + target.getHeight() + " != " + imageWidth + "x" + imageHeight);
+        }
+
+        Rectangle[] bounds = getLayout(imageWidth, imageHeight);
+        if (automatic && statistics == null) {
+            statistics = RegionStatistics.of(originalImage);
+        }
+        if (autoPosition) {
+            bounds = placeAutomatic(bounds, statistics, imageWidth, imageHeight);
+        }
+
+        // 按本张图片选定的绘制资源在渲染前生成，并行渲染时各条带直接取用
+        List<Step> prepared = new ArrayList<>(steps.size());
+        for (int i = 0; i < steps.size(); i++) {
+            prepared.add(steps.get(i).prepare(statistics, bounds[i]));
+        }
+
+        // 目标图像可能被复用，原图以直接替换像素的方式拷入
+        Rectangle[] layout = bounds;
+        compositor.render(originalImage, target, quality, g2d -> {
+            for (int i = 0; i < prepared.size(); i++) {
+                prepared.get(i).draw(g2d, target, imageWidth, imageHeight, layout[i]);
+            }
+        });
+    }
+
+    /**
+     * 为自动位置的水印选择本张图片中背景细节最少的位置（缓存的布局不被修改）
+     */
+    private Rectangle[] placeAutomatic(Rectangle[] layout, RegionStatistics statistics, int imageWidth, int imageHeight) {
+        Rectangle[] bounds = layout.clone();
+        for (int i = 0; i < steps.size(); i++) {
+            if (WatermarkCompositor.isAutoPosition(specs.get(i))) {
+                Step step = steps.get(i);
+                Position position = WatermarkCompositor.chooseQuietestPosition(statistics, 
+                        candidate -> step.getBounds(imageWidth, imageHeight, candidate));
+                bounds[i] = step.getBounds(imageWidth, imageHeight, position);
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * 获取指定尺寸下各水印的绘制范围，同尺寸只计算一次。自动位置的水印范围为null，应用时按图片内容确定
+     */
+    private Rectangle[] getLayout(int imageWidth, int imageHeight) {
+        Long key = ((long) imageWidth << 32) | (imageHeight & 0xffffffffL);
+        Rectangle[] bounds = layouts.get(key);
+        if (bounds == null) {
+            bounds = new Rectangle[steps.size()];
+            for (int i = 0; i < steps.size(); i++) {
+                WatermarkSpec spec = specs.get(i);
+                if (!WatermarkCompositor.isAutoPosition(spec)) {
+                    bounds[i] = steps.get(i).getBounds(imageWidth, imageHeight, spec.getPosition());
+                }
+            }
+            if (layouts.size() >= MAX_LAYOUTS) {
+                layouts.clear();
+            }
+            // 并发计算时结果相同，保留先放入的一份
+            Rectangle[] existing = layouts.putIfAbsent(key, bounds);
+            if (existing != null) {
+                bounds = existing;
+            }
+        }
+        return bounds;
+    }
+
+    public List<WatermarkSpec> getSpecs() {
+        return specs;
+    }
+
+    /**
+     * 是否有水印需要按图片统计背景（自动位置或自动对比度）
+     */
+    boolean isAutomatic() {
+        return automatic;
+    }
+
+    public RenderQuality getQuality() {
+        return quality;
+    }
+
+    /**
+     * 方案中的一个水印：持有预先生成的绘制资源
+     */
+    private interface Step {
+        /**
+         * 水印在指定位置时的绘制范围；平铺水印覆盖整个画布，返回null
+         */
+        Rectangle getBounds(int imageWidth, int imageHeight, Position position);
+
+        /**
+         * 返回绘制本张图片使用的步骤（如自动对比度选定颜色后的图章），不需要按图片调整时返回自身；
+         * statistics为原图的区域统计，方案中没有自动对比度的水印时为null
+         */
+        default Step prepare(RegionStatistics statistics, Rectangle bounds) {
+            return this;
+        }
+
+        /**
+         * 绘制水印；可能在多个线程中对不同条带同时调用
+         */
+        void draw(Graphics2D g2d, BufferedImage target, int imageWidth, int imageHeight, Rectangle bounds);
+    }
+
+    private static final class TextStep implements Step {
+        private final TextWatermarkProcessor processor;
+        private final TextWatermarkSpec spec;
+        // 自动对比度时只用于定位，颜色不同的图章尺寸相同
+        private final TextStamp stamp;
+        private final RenderQuality quality;
+
+        TextStep(TextWatermarkProcessor processor, TextWatermarkSpec spec, TextStamp stamp, RenderQuality quality) {
+            this.processor = processor;
+            this.spec = spec;
+            this.stamp = stamp;
+            this.quality = quality;
+        }
+
+        @Override
+        public Rectangle getBounds(int imageWidth, int imageHeight, Position position) {
+            if (spec.isTiling()) {
+                return null;
+            }
+            return processor.getSingleStampBounds(imageWidth, imageHeight, stamp, position,
+                    spec.getRotation(), spec.getCustomX(), spec.getCustomY(), spec.getMargin());
+        }
+
+        @Override
+        public Step prepare(RegionStatistics statistics, Rectangle bounds) {
+            if (!spec.isAutoContrast()) {
+                return this;
+            }
+            TextWatermarkSpec resolved = processor.resolveAutoContrast(spec, statistics, bounds);
+            return new TextStep(processor, resolved, processor.getTextStamp(resolved, quality), quality);
+        }
+
+        @Override
+        public void draw(Graphics2D g2d, BufferedImage target, int imageWidth, int imageHeight, Rectangle bounds) {
+            if (bounds == null) {
+                processor.drawTiledTextWatermark(g2d, imageWidth, imageHeight, stamp, spec.getRotation());
+            } else {
+                g2d.drawImage(stamp.getImage(), bounds.x, bounds.y, null);
+            }
+        }
+    }
+
+    private static final class ImageStep implements Step {
+        private final ImageWatermarkProcessor processor;
+        private final ImageWatermarkSpec spec;
+        // 单一水印使用变体，平铺水印使用图块和缩放后的水印尺寸
+        private final WatermarkAsset.Variant variant;
+        private final BufferedImage tileCell;
+        private final int wmWidth;
+        private final int wmHeight;
+
+        ImageStep(ImageWatermarkProcessor processor, ImageWatermarkSpec spec, RenderQuality quality) {
+            this.processor = processor;
+            this.spec = spec;
+
+            WatermarkAsset asset = spec.getWatermarkAsset();
+            if (spec.isTiling()) {
+                WatermarkAsset.Variant unrotated = asset.getVariant(spec.getScale(), 0, quality);
+                variant = null;
+                tileCell = asset.getTileCell(spec.getScale(), spec.getRotation(), spec.getOpacity(), quality);
+                wmWidth = unrotated.getWidth();
+                wmHeight = unrotated.getHeight();
+            } else {
+                variant = asset.getVariant(spec.getScale(), spec.getRotation(), quality);
+                // 预先生成直接混合使用的像素数据
+                variant.getBlendSource();
+                tileCell = null;
+                wmWidth = 0;
+                wmHeight = 0;
+            }
+        }
+
+        @Override
+        public Rectangle getBounds(int imageWidth, int imageHeight, Position position) {
+            if (spec.isTiling()) {
+                return null;
+            }
+            return processor.getSingleWatermarkBounds(imageWidth, imageHeight, variant, position,
+                    spec.getCustomX(), spec.getCustomY(), spec.getMargin());
+        }
+
+        @Override
+        public void draw(Graphics2D g2d, BufferedImage target, int imageWidth, int imageHeight, Rectangle bounds) {
+            if (bounds == null) {
+                ImageWatermarkProcessor.fillTileCell(g2d, tileCell, wmWidth, wmHeight, imageWidth, imageHeight);
+                return;
+            }
+
+            Composite originalComposite = g2d.getComposite();
+            g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, spec.getOpacity()));
+            ImageWatermarkProcessor.drawVariant(g2d, target, variant, spec.getOpacity(), bounds);
+            g2d.setComposite(originalComposite);
+        }
+    }
+}
@@ -4,19 +4,33 @@ import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * 水印处理器门面类 - 整合所有水印处理功能，提供统一的接口
  */
 public class WatermarkProcessor {
-    private final TextWatermarkProcessor textProcessor;
-    private final ImageWatermarkProcessor imageProcessor;
+    private final WatermarkCompositor compositor;
     private final CombinedWatermarkProcessor combinedProcessor;
+    // 批量处理和导出时复用整张图片大小的缓冲区
+    private final ImageBufferPool bufferPool = ImageBufferPool.getDefault();
     
     public WatermarkProcessor() {
-        this.textProcessor = new TextWatermarkProcessor();
-        this.imageProcessor = new ImageWatermarkProcessor();
-        this.combinedProcessor = new CombinedWatermarkProcessor();
+        this(false);
+    }
+    
+    /**
+     * @param parallelRendering 为true时大图片在公共ForkJoinPool中分条带并行渲染
+     */
+    public WatermarkProcessor(boolean parallelRendering) {
+        this.compositor = new WatermarkCompositor(
+                new TextWatermarkProcessor(), 
+                new ImageWatermarkProcessor(), 
+                parallelRendering ? ForkJoinPool.commonPool() : null);
+        this.combinedProcessor = new CombinedWatermarkProcessor(compositor);
     }
     
     /**
@@ -36,19 +50,25 @@ public class WatermarkProcessor {
         WatermarkProcessor processor = new WatermarkProcessor();
         
         // 添加文本水印
-        BufferedImage watermarkedImage = processor.addTextWatermark(
-                originalImage, 
+        TextWatermarkSpec spec = new TextWatermarkSpec(
                 watermarkText, 
                 color, 
                 "Arial", // 默认字体
                 fontSize, 
-                position.name(), 
+                position, 
                 0, 
                 false, 
                 false, // 默认为false，不使用描边
                 false
         );
         
+        // 按输出格式选择目标图像类型，JPEG直接合成到不透明缓冲区
+        BufferedImage watermarkedImage = processor.applyWatermarks(
+                originalImage, 
+                Collections.singletonList(spec), 
+                FileUtils.getFormatName(imageFile.getName())
+        );
+        
         // 创建保存目录
         File outputDir = FileUtils.createOutputDirectory(imageFile);
         
@@ -60,6 +80,134 @@ public class WatermarkProcessor {
         );
     }
     
+    /**
+     * 一次性合成多个水印（文本和图片），只创建一个目标图像
+     */
+    public BufferedImage applyWatermarks(BufferedImage originalImage, List<? extends WatermarkSpec> specs) {
+        return compositor.composite(originalImage, specs);
+    }
+    
+    /**
+     * 一次性合成多个水印，目标图像类型根据原图和输出格式选择（如JPEG输出不分配alpha通道）
+     */
+    public BufferedImage applyWatermarks(BufferedImage originalImage, List<? extends WatermarkSpec> specs, String formatName) {
+        return compositor.composite(originalImage, specs, formatName);
+    }
+    
+    /**
+     * 按指定的渲染质量一次性合成多个水印（导出使用FINAL）
+     */
+    public BufferedImage applyWatermarks(
+            BufferedImage originalImage, 
+            List<? extends WatermarkSpec> specs, 
+            String formatName, 
+            RenderQuality quality
+    ) {
+        return compositor.composite(originalImage, specs, formatName, quality);
+    }
+    
+    /**
+     * 按输出尺寸合成：原图先缩放到输出尺寸，水印参数按比例缩放后在输出分辨率上绘制，
+     * 缩小导出时不再合成整张原图后丢弃大部分像素。返回的图像从缓冲池取得，写出后可以归还
+     */
+    public BufferedImage applyWatermarks(
+            BufferedImage originalImage, 
+            List<? extends WatermarkSpec> specs, 
+            int width, 
+            int height, 
+            String formatName, 
+            RenderQuality quality
+    ) {
+        return new DerivativeRenderer(compositor, bufferPool).render(originalImage, specs, width, height, formatName, quality);
+    }
+    
+    /**
+     * 编译水印方案：批量处理相同设置的图片时只生成一次图章和布局，之后可在多个线程中并发应用
+     */
+    public WatermarkPlan compilePlan(List<? extends WatermarkSpec> specs, RenderQuality quality) {
+        return WatermarkPlan.compile(compositor, specs, quality);
+    }
+    
+    /**
+     * 流式处理超大图片：按条带读取、合成并写出，不把整张图片载入内存（输出格式需支持分块写入，如TIFF），
+     * 输出文件按FINAL质量渲染
+     */
+    public void streamWatermarks(File inputFile, File outputFile, List<? extends WatermarkSpec> specs) throws IOException {
+        new StreamingWatermarkProcessor(compositor, StreamingWatermarkProcessor.DEFAULT_STRIP_HEIGHT, RenderQuality.FINAL)
+                .process(inputFile, outputFile, specs);
+    }
+    
+    /**
+     * 批量处理：每张图片应用同一个水印方案后写入输出目录（文件名不变，扩展名为输出格式），返回输出文件。
+     * 解码结果和目标图像都使用缓冲池中的缓冲区，处理同尺寸的图片时不再分配新的像素数组
+     */
+    public List<File> exportBatch(List<File> inputFiles, File outputDir, WatermarkPlan plan, 
+                                  String formatName, int jpegQuality) throws IOException {
+        List<File> outputFiles = new ArrayList<>(inputFiles.size());
+        for (File inputFile : inputFiles) {
+            String name = inputFile.getName();
+            int dot = name.lastIndexOf('.');
+            File outputFile = new File(outputDir, (dot > 0 ? name.substring(0, dot) : name) + "." + formatName);
+            if (outputFile.getCanonicalFile().equals(inputFile.getCanonicalFile())) {
+                throw new IOException("输出文件会覆盖原图: " + outputFile.getAbsolutePath());
+            }
+            
+            BufferedImage originalImage = FileUtils.readImage(inputFile, bufferPool);
+            if (originalImage == null) {
+                throw new IOException("无法读取图片: " + inputFile.getAbsolutePath());
+            }
+            BufferedImage watermarkedImage = bufferPool.acquire(originalImage.getWidth(), originalImage.getHeight(), 
+                    WatermarkCompositor.selectImageType(originalImage, formatName));
+            try {
+                plan.apply(originalImage, watermarkedImage);
+                FileUtils.writeImage(watermarkedImage, formatName, outputFile, jpegQuality);
+            } finally {
+                bufferPool.release(watermarkedImage);
+                bufferPool.release(originalImage);
+            }
+            outputFiles.add(outputFile);
+        }
+        return outputFiles;
+    }
+    
+    /**
+     * 获取批量处理使用的图像缓冲池（可查看复用统计）
+     */
+    public ImageBufferPool getBufferPool() {
+        return bufferPool;
+    }
+    
+    /**
+     * 一次解码生成导出配置中的所有尺寸版本（如原尺寸、网页和缩略图），水印在每个尺寸上按比例绘制，
+     * 输出文件按FINAL质量渲染，返回输出文件
+     */
+    public List<File> exportDerivatives(File inputFile, File outputDir, List<? extends WatermarkSpec> specs, 
+                                        ExportProfile profile) throws IOException {
+        return new DerivativeRenderer(compositor, bufferPool).export(inputFile, outputDir, specs, profile, RenderQuality.FINAL);
+    }
+    
+    /**
+     * 同一张图片按多个水印方案分别导出（如不同客户的不同标志），原图只读取和解码一次
+     */
+    public void exportVariants(File inputFile, List<WatermarkPlan> plans, List<File> outputFiles, 
+                               String formatName, int jpegQuality) throws IOException {
+        new VariantRenderer(bufferPool).export(inputFile, plans, outputFiles, formatName, jpegQuality);
+    }
+    
+    /**
+     * 创建增量渲染器（用于预览，参数变化时只重绘受影响的区域）
+     */
+    public IncrementalWatermarkRenderer createIncrementalRenderer() {
+        return new IncrementalWatermarkRenderer(compositor);
+    }
+    
+    /**
+     * 创建水印图层栈（任意数量的文本和图片水印，修改单个图层时只重新生成该图层）
+     */
+    public WatermarkLayerStack createLayerStack() {
+        return new WatermarkLayerStack(compositor);
+    }
+    
     /**
      * 添加文本水印（新方法，支持字体和描边）
      */
@@ -75,18 +223,18 @@ public class WatermarkProcessor {
             boolean stroke,
             boolean tiling
     ) {
-        return textProcessor.addTextWatermark(
-                originalImage, 
+        TextWatermarkSpec spec = new TextWatermarkSpec(
                 text, 
                 color, 
                 fontFamily,
                 fontSize, 
-                positionStr, 
+                Position.valueOf(positionStr), 
                 rotation, 
                 shadow, 
                 stroke,
                 tiling
         );
+        return compositor.composite(originalImage, Collections.singletonList(spec));
     }
     
     /**
@@ -106,13 +254,12 @@ public class WatermarkProcessor {
             double customX, 
             double customY
     ) {
-        return textProcessor.addTextWatermark(
-                originalImage, 
+        TextWatermarkSpec spec = new TextWatermarkSpec(
                 text, 
                 color, 
                 fontFamily,
                 fontSize, 
-                positionStr, 
+                Position.valueOf(positionStr), 
                 rotation, 
                 shadow, 
                 stroke,
@@ -120,6 +267,7 @@ public class WatermarkProcessor {
                 customX,
                 customY
         );
+        return compositor.composite(originalImage, Collections.singletonList(spec));
     }
     
     /**
@@ -162,15 +310,15 @@ public class WatermarkProcessor {
             double rotation, 
             boolean tiling
     ) {
-        return imageProcessor.addImageWatermark(
-                originalImage,
+        ImageWatermarkSpec spec = new ImageWatermarkSpec(
                 watermarkImage,
                 scale,
                 opacity,
-                positionStr,
+                Position.valueOf(positionStr),
                 rotation,
                 tiling
         );
+        return compositor.composite(originalImage, Collections.singletonList(spec));
     }
     
     /**
@@ -187,17 +335,17 @@ public class WatermarkProcessor {
             double customX,
             double customY
     ) {
-        return imageProcessor.addImageWatermark(
-                originalImage,
+        ImageWatermarkSpec spec = new ImageWatermarkSpec(
                 watermarkImage,
                 scale,
                 opacity,
-                positionStr,
+                Position.valueOf(positionStr),
                 rotation,
                 tiling,
                 customX,
                 customY
         );
+        return compositor.composite(originalImage, Collections.singletonList(spec));
     }
     
     /**
@@ -0,0 +1,37 @@
+package com.photowatermark;
+
+/**
+ * 水印参数接口 - 描述合成引擎中按顺序绘制的一个水印
+ */
+public interface WatermarkSpec {
+    /**
+     * 默认边距：预设位置的水印与图片边缘相距20像素
+     */
+    int DEFAULT_MARGIN = 20;
+    
+    /**
+     * 是否为平铺水印
+     */
+    boolean isTiling();
+    
+    /**
+     * 水印位置（平铺水印忽略）
+     */
+    Position getPosition();
+    
+    /**
+     * 预设位置与图片边缘的距离（像素，平铺水印忽略）
+     */
+    int getMargin();
+    
+    /**
+     * 返回位置不同、其余参数相同的副本
+     */
+    WatermarkSpec withPosition(Position position);
+    
+    /**
+     * 返回按比例缩放后的副本（字号、图片缩放比例、边距等像素尺寸乘以factor），
+     * 用于在缩小后的图片上绘制与原尺寸比例相同的水印
+     */
+    WatermarkSpec scaled(double factor);
+}
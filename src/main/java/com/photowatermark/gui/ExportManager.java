@@ -1,15 +1,14 @@
 package com.photowatermark.gui;
 
+import com.photowatermark.FileUtils;
+import com.photowatermark.ImageBufferPool;
+import com.photowatermark.RenderQuality;
+import com.photowatermark.WatermarkCompositor;
 import javafx.scene.image.WritableImage;
 import javax.imageio.ImageIO;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
-import javax.imageio.IIOImage;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Iterator;
 
 /**
  * 导出管理器 - 负责处理图片的导出功能
@@ -17,12 +16,42 @@ import java.util.Iterator;
 public class ExportManager {
     private final UiUtils uiUtils;
     private final ImageConverter imageConverter;
+    // 缩放和格式转换的临时缓冲区在多次导出之间复用
+    private final ImageBufferPool bufferPool = ImageBufferPool.getDefault();
     
     public ExportManager(UiUtils uiUtils, ImageConverter imageConverter) {
         this.uiUtils = uiUtils;
         this.imageConverter = imageConverter;
     }
     
+    /**
+     * 按FINAL质量重新合成当前图片并导出；预览使用的是草稿质量，不直接用于导出。
+     * 原图先缩放到输出尺寸，水印再按比例在输出分辨率上绘制，缩小导出时不会合成整张原图后再丢弃，
+     * 细文字也不会被缩放模糊。无法重新合成时退回缩放预览图像
+     */
+    public void exportWatermarkedImage(WatermarkProcessor watermarkProcessor, BufferedImage previewImage, File outputFile, ImageFile selectedImageFile, int scalePercentage, int jpegQuality) {
+        BufferedImage finalImage;
+        try {
+            String formatName = outputFile.getName().substring(outputFile.getName().lastIndexOf('.') + 1);
+            finalImage = watermarkProcessor.renderWatermarkedImage(RenderQuality.FINAL, formatName, scalePercentage);
+        } catch (IOException e) {
+            uiUtils.showError("导出失败", "无法生成水印图片：" + e.getMessage());
+            e.printStackTrace();
+            return;
+        }
+        
+        if (finalImage == null) {
+            exportWatermarkedImage(previewImage, outputFile, selectedImageFile, scalePercentage, jpegQuality);
+            return;
+        }
+        try {
+            // 已经是输出尺寸，不再缩放
+            exportWatermarkedImage(finalImage, outputFile, selectedImageFile, 100, jpegQuality);
+        } finally {
+            bufferPool.release(finalImage);
+        }
+    }
+    
     /**
      * 导出带有水印的图片
      */
@@ -46,13 +75,23 @@ public class ExportManager {
             // 根据目标格式进行必要的格式转换
             BufferedImage imageToExport = convertImageFormatIfNeeded(scaledImage, extension);
             
-            // 写入文件
-            if ("JPEG".equals(extension)) {
-                // 对于JPEG格式，使用质量参数
-                saveJpegWithQuality(imageToExport, outputFile, jpegQuality);
-            } else {
-                // 对于其他格式，直接保存
-                ImageIO.write(imageToExport, extension, outputFile);
+            try {
+                // 写入文件
+                if ("JPEG".equals(extension)) {
+                    // 对于JPEG格式，使用质量参数
+                    saveJpegWithQuality(imageToExport, outputFile, jpegQuality);
+                } else {
+                    // 对于其他格式，直接保存
+                    ImageIO.write(imageToExport, extension, outputFile);
+                }
+            } finally {
+                // 缩放和转换使用的临时缓冲区归还给缓冲池
+                if (imageToExport != scaledImage) {
+                    bufferPool.release(imageToExport);
+                }
+                if (scaledImage != watermarkedImage) {
+                    bufferPool.release(scaledImage);
+                }
             }
             
             uiUtils.showInfo("导出成功", "图片已成功导出到：" + outputFile.getAbsolutePath());
@@ -67,33 +106,7 @@ public class ExportManager {
      * 按照指定质量保存JPEG图片
      */
     private void saveJpegWithQuality(BufferedImage image, File outputFile, int quality) throws IOException {
-        // 获取JPEG ImageWriter
-        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpg");
-        if (!writers.hasNext()) {
-            // 如果无法获取writer，降级处理
-            ImageIO.write(image, "jpg", outputFile);
-            return;
-        }
-        
-        ImageWriter writer = writers.next();
-        ImageWriteParam writeParam = writer.getDefaultWriteParam();
-        
-        // 设置压缩模式和质量参数
-        writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-        // 将0-100的范围转换为0.0-1.0
-        float qualityFloat = quality / 100.0f;
-        writeParam.setCompressionQuality(qualityFloat);
-        
-        try {
-            // 创建输出流并写入
-            writer.setOutput(ImageIO.createImageOutputStream(outputFile));
-            // 创建IIOImage对象
-            IIOImage iioImage = new IIOImage(image, null, null);
-            // 写入图像
-            writer.write(null, iioImage, writeParam);
-        } finally {
-            writer.dispose();
-        }
+        FileUtils.writeImage(image, "jpg", outputFile, quality);
     }
     
     /**
@@ -109,13 +122,17 @@ public class ExportManager {
         int newWidth = (int) (source.getWidth() * scalePercentage / 100.0);
         int newHeight = (int) (source.getHeight() * scalePercentage / 100.0);
         
-        // 创建缩放后的图片
-        BufferedImage scaledImage = new BufferedImage(newWidth, newHeight, source.getType());
+        // 创建缩放后的图片（从缓冲池取得，内容会被完全覆盖）；缓冲池不支持的类型改用合成时的图像类型
+        int imageType = ImageBufferPool.isPoolableType(source.getType())
+                ? source.getType()
+                : WatermarkCompositor.selectImageType(source, null);
+        BufferedImage scaledImage = bufferPool.acquire(newWidth, newHeight, imageType);
         
         // 绘制并缩放
         java.awt.Graphics2D g = scaledImage.createGraphics();
         g.setRenderingHint(java.awt.RenderingHints.KEY_INTERPOLATION, 
                           java.awt.RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setComposite(java.awt.AlphaComposite.Src);
         g.drawImage(source, 0, 0, newWidth, newHeight, null);
         g.dispose();
         
@@ -127,11 +144,16 @@ public class ExportManager {
      * 特别是处理透明通道的情况
      */
     private BufferedImage convertImageFormatIfNeeded(BufferedImage source, String format) {
-        // 如果是JPEG格式且原图有alpha通道，需要转换为RGB模式
+        // 合成结果已按原图选择类型，不透明图片不会带alpha通道，这里无需再复制；
+        // 只有带透明通道的图片导出为JPEG时才需要转换为RGB模式
         if ("JPEG".equals(format) && source.getColorModel().hasAlpha()) {
-            BufferedImage rgbImage = new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_RGB);
-            // 绘制白色背景
-            rgbImage.createGraphics().drawImage(source, 0, 0, null);
+            BufferedImage rgbImage = bufferPool.acquire(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_RGB);
+            // 缓冲区可能被复用，先清空为黑色背景，再叠加带透明通道的图片
+            java.awt.Graphics2D g = rgbImage.createGraphics();
+            g.setColor(java.awt.Color.BLACK);
+            g.fillRect(0, 0, source.getWidth(), source.getHeight());
+            g.drawImage(source, 0, 0, null);
+            g.dispose();
             return rgbImage;
         }
         // 其他情况直接返回原图
@@ -1,6 +1,7 @@
 package com.photowatermark.gui;
 
 import com.photowatermark.CustomPositionImageFile;
+import com.photowatermark.ImageMetadata;
 import java.io.File;
 
 /**
@@ -9,6 +10,8 @@ import java.io.File;
 public class ImageFile implements CustomPositionImageFile {
     private final File file;
     private final String fileName;
+    // 模板变量使用的元数据，随列表条目保存，刷新预览时不再重复读取
+    private final ImageMetadata metadata;
     
     // 自定义水印位置属性
     private double customTextWatermarkX = 0.5; // 默认中心位置（0.0-1.0范围）
@@ -19,6 +22,7 @@ public class ImageFile implements CustomPositionImageFile {
     public ImageFile(File file) {
         this.file = file;
         this.fileName = file.getName();
+        this.metadata = new ImageMetadata(file);
     }
 
     public File getFile() {
@@ -29,6 +33,10 @@ public class ImageFile implements CustomPositionImageFile {
         return fileName;
     }
 
+    public ImageMetadata getMetadata() {
+        return metadata;
+    }
+
     @Override
     public String toString() {
         return fileName;
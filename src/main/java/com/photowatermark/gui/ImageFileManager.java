@@ -1,5 +1,6 @@
 package com.photowatermark.gui;
 
+import com.photowatermark.OffHeapImages;
 import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
@@ -28,15 +29,26 @@ public class ImageFileManager {
     // 图片相关数据
     private final ObservableList<ImageFile> imageFiles = FXCollections.observableArrayList();
     private final ObjectProperty<ImageFile> selectedImageFileProperty = new SimpleObjectProperty<>();
+    // 选中图片在列表中的位置（未选中时为-1），在选择变化时计算一次
+    private int selectedImageIndex = -1;
     private BufferedImage originalImage;
     private BufferedImage watermarkedImage;
     
+    // 原图是否存放在堆外（直接内存，或设置了目录时为该目录下的内存映射临时文件）
+    private boolean offHeapStorage;
+    private File offHeapDirectory;
+    
     // 服务类
     private final ImageConverter imageConverter;
     
     // 图片选择变化回调
     private Consumer<ImageFile> onImageSelectedCallback;
     
+    // 系统属性：为true时原图存放在堆外
+    public static final String OFF_HEAP_STORAGE_PROPERTY = "photowatermark.offHeapStorage";
+    // 系统属性：堆外原图的内存映射临时文件所在目录，未设置时使用直接内存
+    public static final String OFF_HEAP_DIRECTORY_PROPERTY = "photowatermark.offHeapDirectory";
+    
     // 支持的图片文件扩展名
     private static final List<String> SUPPORTED_IMAGE_EXTENSIONS = Arrays.asList(
             "png", "jpg", "jpeg", "bmp", "tiff");
@@ -46,8 +58,14 @@ public class ImageFileManager {
         this.uiUtils = uiUtils;
         this.imageConverter = imageConverter;
         
+        String offHeapDirectory = System.getProperty(OFF_HEAP_DIRECTORY_PROPERTY);
+        setOffHeapStorage(Boolean.getBoolean(OFF_HEAP_STORAGE_PROPERTY),
+                offHeapDirectory != null ? new File(offHeapDirectory) : null);
+        
         // 监听选择变化
         selectedImageFileProperty.addListener((observable, oldValue, newValue) -> {
+            // 列表只会追加或清空，已有条目的位置不变
+            selectedImageIndex = newValue != null ? imageFiles.indexOf(newValue) : -1;
             if (newValue != null) {
                 handleImageSelection(newValue);
             }
@@ -59,7 +77,7 @@ public class ImageFileManager {
      */
     private void handleImageSelection(ImageFile imageFile) {
         try {
-            originalImage = ImageIO.read(imageFile.getFile());
+            originalImage = loadOriginalImage(imageFile.getFile());
             watermarkedImage = null;
             
             // 显示原始图片预览
@@ -78,6 +96,19 @@ public class ImageFileManager {
         }
     }
     
+    /**
+     * 读取原图；开启堆外存储时复制到堆外，解码得到的堆内图像随即成为垃圾（只存活很短的时间）
+     */
+    private BufferedImage loadOriginalImage(File file) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null || !offHeapStorage) {
+            return image;
+        }
+        return offHeapDirectory != null
+                ? OffHeapImages.copyOfMapped(image, offHeapDirectory)
+                : OffHeapImages.copyOf(image);
+    }
+    
     /**
      * 导入图片文件
      */
@@ -200,6 +231,13 @@ public class ImageFileManager {
         return selectedImageFileProperty.get();
     }
     
+    /**
+     * 选中图片在列表中的位置（从0开始），未选中时为-1
+     */
+    public int getSelectedImageIndex() {
+        return selectedImageIndex;
+    }
+    
     public void setSelectedImageFile(ImageFile imageFile) {
         selectedImageFileProperty.set(imageFile);
     }
@@ -220,6 +258,21 @@ public class ImageFileManager {
         return selectedImageFileProperty.get() != null && originalImage != null;
     }
     
+    /**
+     * 设置是否把原图存放在堆外（对之后选择的图片生效）。大尺寸原图不再占用Java堆，
+     * 水印预览画布仍在堆内，每次刷新预览时复用。初始值取自系统属性OFF_HEAP_STORAGE_PROPERTY和OFF_HEAP_DIRECTORY_PROPERTY
+     *
+     * @param directory 内存映射临时文件所在目录，null表示使用直接内存
+     */
+    public void setOffHeapStorage(boolean enabled, File directory) {
+        this.offHeapStorage = enabled;
+        this.offHeapDirectory = directory;
+    }
+    
+    public boolean isOffHeapStorage() {
+        return offHeapStorage;
+    }
+    
     /**
      * 获取预览ImageView
      */
@@ -1,5 +1,6 @@
 package com.photowatermark.gui;
 
+import com.photowatermark.FontRegistry;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
@@ -46,7 +47,10 @@ public class MainController {
     @FXML private Slider textRotationSlider;
     @FXML private Label textRotationValue;
     @FXML private CheckBox enableShadow;
+    @FXML private Slider shadowBlurSlider;
+    @FXML private Label shadowBlurValue;
     @FXML private CheckBox enableStroke;
+    @FXML private CheckBox autoContrast;
     @FXML private CheckBox useExifDate;
     @FXML private ComboBox<String> dateFormatComboBox;
     @FXML private RadioButton textWatermarkRadio;
@@ -645,8 +649,8 @@ public class MainController {
         // 初始化各个管理器
         this.parameterManager = new WatermarkParameterManager(
                 watermarkText, fontFamilyComboBox, textFontSizeSlider, textColorPicker,
-                textOpacitySlider, textRotationSlider, enableShadow, enableStroke,
-                useExifDate, dateFormatComboBox, imageScaleSlider, imageOpacitySlider,
+                textOpacitySlider, textRotationSlider, enableShadow, shadowBlurSlider, enableStroke,
+                autoContrast, useExifDate, dateFormatComboBox, imageScaleSlider, imageOpacitySlider,
                 imageRotationSlider, enableTextTiling, enableImageTiling
         );
         
@@ -676,6 +680,9 @@ public class MainController {
         // 设置自定义位置绑定
         setupCustomPositionBinding();
         
+        // 字体列表在后台枚举，完成后替换下拉框中的默认列表
+        loadFontFamilies();
+        
         // 水印类型切换
         if (textWatermarkRadio != null) {
             textWatermarkRadio.selectedProperty().addListener((obs, oldVal, newVal) -> {
@@ -738,6 +745,26 @@ public class MainController {
         }
     }
     
+    /**
+     * 加载系统字体列表（异步），保留当前选中的字体
+     */
+    private void loadFontFamilies() {
+        FontRegistry.getDefault().getReady().thenAccept(families -> Platform.runLater(() -> {
+            if (families.isEmpty()) {
+                return;
+            }
+            String currentFamily = fontFamilyComboBox.getValue();
+            fontFamilyComboBox.getItems().setAll(families);
+            if (currentFamily != null && !currentFamily.equals(fontFamilyComboBox.getValue())) {
+                fontFamilyComboBox.setValue(currentFamily);
+            }
+        })).exceptionally(e -> {
+            // 枚举失败时继续使用默认字体列表
+            System.err.println("无法枚举系统字体: " + e.getMessage());
+            return null;
+        });
+    }
+    
     /**
      * 绑定滑块与标签
      */
@@ -762,6 +789,18 @@ public class MainController {
             updatePreviewIfPossible();
         });
         
+        // 自动对比度实时预览
+        autoContrast.selectedProperty().addListener((obs, oldVal, newVal) -> {
+            updatePreviewIfPossible();
+        });
+        
+        // 阴影模糊程度只在添加阴影时可调
+        shadowBlurSlider.disableProperty().bind(enableShadow.selectedProperty().not());
+        shadowBlurSlider.valueProperty().addListener((obs, oldVal, newVal) -> {
+            shadowBlurValue.setText(String.format("%.1f", newVal));
+            updatePreviewIfPossible();
+        });
+        
         // 文本水印平铺效果实时预览
         enableTextTiling.selectedProperty().addListener((obs, oldVal, newVal) -> {
             updatePreviewIfPossible();
@@ -1028,6 +1067,7 @@ public class MainController {
                         if (response == ButtonType.OK) {
                             // 执行导出
                             exportManager.exportWatermarkedImage(
+                                    watermarkProcessor,
                                     imageFileManager.getWatermarkedImage(),
                                     outputFile,
                                     imageFileManager.getSelectedImageFile(),
@@ -1039,6 +1079,7 @@ public class MainController {
                 } else {
                     // 文件不存在，直接导出
                     exportManager.exportWatermarkedImage(
+                            watermarkProcessor,
                             imageFileManager.getWatermarkedImage(),
                             outputFile,
                             imageFileManager.getSelectedImageFile(),
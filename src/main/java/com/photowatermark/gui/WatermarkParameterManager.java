@@ -24,7 +24,9 @@ public class WatermarkParameterManager {
     private final Slider textOpacitySlider;
     private final Slider textRotationSlider;
     private final CheckBox enableShadow;
+    private final Slider shadowBlurSlider;
     private final CheckBox enableStroke;
+    private final CheckBox autoContrast;
     private final CheckBox useExifDate;
     private final ComboBox<String> dateFormatComboBox;
     private final Slider imageScaleSlider;
@@ -57,7 +59,9 @@ public class WatermarkParameterManager {
             Slider textOpacitySlider,
             Slider textRotationSlider,
             CheckBox enableShadow,
+            Slider shadowBlurSlider,
             CheckBox enableStroke,
+            CheckBox autoContrast,
             CheckBox useExifDate,
             ComboBox<String> dateFormatComboBox,
             Slider imageScaleSlider,
@@ -73,7 +77,9 @@ public class WatermarkParameterManager {
         this.textOpacitySlider = textOpacitySlider;
         this.textRotationSlider = textRotationSlider;
         this.enableShadow = enableShadow;
+        this.shadowBlurSlider = shadowBlurSlider;
         this.enableStroke = enableStroke;
+        this.autoContrast = autoContrast;
         this.useExifDate = useExifDate;
         this.dateFormatComboBox = dateFormatComboBox;
         this.imageScaleSlider = imageScaleSlider;
@@ -96,10 +102,12 @@ public class WatermarkParameterManager {
         imageScaleSlider.valueProperty().addListener(obs -> parametersChanged.set(true));
         imageOpacitySlider.valueProperty().addListener(obs -> parametersChanged.set(true));
         imageRotationSlider.valueProperty().addListener(obs -> parametersChanged.set(true));
+        shadowBlurSlider.valueProperty().addListener(obs -> parametersChanged.set(true));
         
         textColorPicker.valueProperty().addListener(obs -> parametersChanged.set(true));
         enableShadow.selectedProperty().addListener(obs -> parametersChanged.set(true));
         enableStroke.selectedProperty().addListener(obs -> parametersChanged.set(true));
+        autoContrast.selectedProperty().addListener(obs -> parametersChanged.set(true));
         useExifDate.selectedProperty().addListener(obs -> parametersChanged.set(true));
         enableTextTiling.selectedProperty().addListener(obs -> parametersChanged.set(true));
         enableImageTiling.selectedProperty().addListener(obs -> parametersChanged.set(true));
@@ -162,10 +170,18 @@ public class WatermarkParameterManager {
         return enableShadow;
     }
     
+    public Slider getShadowBlur() {
+        return shadowBlurSlider;
+    }
+    
     public CheckBox getEnableStroke() {
         return enableStroke;
     }
     
+    public CheckBox getAutoContrast() {
+        return autoContrast;
+    }
+    
     public CheckBox getUseExifDate() {
         return useExifDate;
     }
@@ -214,10 +230,24 @@ public class WatermarkParameterManager {
         return enableShadow.isSelected();
     }
     
+    /**
+     * 阴影模糊程度（像素），0为硬边阴影
+     */
+    public double getShadowBlurValue() {
+        return shadowBlurSlider.getValue();
+    }
+    
     public boolean isStrokeEnabled() {
         return enableStroke.isSelected();
     }
     
+    /**
+     * 是否按水印下方的背景亮度自动调整文本颜色
+     */
+    public boolean isAutoContrastEnabled() {
+        return autoContrast.isSelected();
+    }
+    
     public boolean isUseExifDate() {
         return useExifDate.isSelected();
     }
@@ -7,5 +7,6 @@ public enum WatermarkPosition {
     TOP_LEFT, TOP_CENTER, TOP_RIGHT,
     CENTER_LEFT, CENTER, CENTER_RIGHT,
     BOTTOM_LEFT, BOTTOM_CENTER, BOTTOM_RIGHT,
-    CUSTOM
+    CUSTOM,
+    AUTO
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.photowatermark.gui;
 
+import com.photowatermark.RenderQuality;
+import com.photowatermark.WatermarkSpec;
 import com.photowatermark.gui.WatermarkService;
 import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
@@ -53,89 +55,141 @@ public class WatermarkProcessor {
         }
         
         try {
-            // 检查是否有水印内容
-            boolean hasTextWatermark = parameterManager.hasTextWatermark();
-            boolean hasImageWatermark = parameterManager.hasImageWatermark();
-            
-            if (!hasTextWatermark && !hasImageWatermark) {
+            List<WatermarkSpec> specs = buildWatermarkSpecs();
+            if (specs.isEmpty()) {
                 return;
             }
             
-            // 准备文本水印参数
-            String fontFamily = parameterManager.getFontFamilyValue();
-            int fontSize = parameterManager.getFontSizeValue();
-            javafx.scene.paint.Color color = parameterManager.getTextColorValue();
-            float textOpacity = parameterManager.getTextOpacityValue();
-            double textRotation = parameterManager.getTextRotationValue();
-            boolean shadow = parameterManager.isShadowEnabled();
-            boolean stroke = parameterManager.isStrokeEnabled();
-            boolean textTiling = parameterManager.isTextTilingEnabled();
-            
-            // 准备图片水印参数
-            float imageScale = parameterManager.getImageScaleValue();
-            float imageOpacity = parameterManager.getImageOpacityValue();
-            double imageRotation = parameterManager.getImageRotationValue();
-            boolean imageTiling = parameterManager.isImageTilingEnabled();
-            
-            // 转换JavaFX颜色为AWT颜色
-            java.awt.Color awtColor = new java.awt.Color(
-                    (float) color.getRed(),
-                    (float) color.getGreen(),
-                    (float) color.getBlue(),
-                    textOpacity
-            );
-            
-            // 复制原始图像作为基础
-            BufferedImage baseImage = new BufferedImage(
-                    imageFileManager.getOriginalImage().getWidth(), 
-                    imageFileManager.getOriginalImage().getHeight(), 
-                    BufferedImage.TYPE_INT_ARGB
-            );
-            java.awt.Graphics2D g2d = baseImage.createGraphics();
-            g2d.drawImage(imageFileManager.getOriginalImage(), 0, 0, null);
-            g2d.dispose();
-            
-            // 应用文本水印（如果有）
-            if (hasTextWatermark) {
-                baseImage = watermarkService.applyTextWatermark(
-                        baseImage,
-                        parameterManager.getWatermarkTextValue(),
-                        awtColor,
-                        fontFamily,
-                        fontSize,
-                        parameterManager.getTextWatermarkPosition().name(),
-                        textRotation,
-                        shadow,
-                        stroke,
-                        textTiling,
-                        parameterManager.isUseExifDate(),
-                        imageFileManager.getSelectedImageFile()
-                );
-            }
-            
-            // 应用图片水印（如果有）
-            if (hasImageWatermark) {
-                baseImage = watermarkService.applyImageWatermark(
-                        baseImage,
-                        parameterManager.getWatermarkImageFile(),
-                        imageScale,
-                        imageOpacity,
-                        parameterManager.getImageWatermarkPosition().name(),
-                        imageRotation,
-                        imageTiling,
-                        imageFileManager.getSelectedImageFile()
-                );
-            }
+            // 增量合成：只重绘参数发生变化的水印所在区域，平铺或切换图片时整帧合成
+            BufferedImage baseImage = watermarkService.renderPreview(imageFileManager.getOriginalImage(), specs);
             
             // 更新预览
             imageFileManager.updatePreviewImage(baseImage);
-            uiUtils.updateStatus("水印应用成功");
+            
+            // 文本不是有效的模板时按原文绘制，在状态栏提示原因（输入过程中不弹出对话框）
+            String templateError = parameterManager.isUseExifDate() 
+                    ? null : watermarkService.getTextTemplateError(parameterManager.getWatermarkTextValue());
+            uiUtils.updateStatus(templateError == null ? "水印应用成功" : "水印文本按原文绘制，模板无效：" + templateError);
         } catch (Exception e) {
             uiUtils.showError("应用水印失败", "无法应用水印: " + e.getMessage());
             e.printStackTrace();
         }
     }
     
+    /**
+     * 根据当前参数收集所有启用的水印（文本在前、图片在后）；没有水印内容时返回空列表
+     */
+    private List<WatermarkSpec> buildWatermarkSpecs() throws IOException {
+        // 收集所有启用的水印，交给合成引擎一次性绘制
+        List<WatermarkSpec> specs = new ArrayList<>();
+        
+        // 检查是否有水印内容
+        boolean hasTextWatermark = parameterManager.hasTextWatermark();
+        boolean hasImageWatermark = parameterManager.hasImageWatermark();
+        
+        if (!hasTextWatermark && !hasImageWatermark) {
+            return specs;
+        }
+        
+        // 准备文本水印参数
+        String fontFamily = parameterManager.getFontFamilyValue();
+        int fontSize = parameterManager.getFontSizeValue();
+        javafx.scene.paint.Color color = parameterManager.getTextColorValue();
+        float textOpacity = parameterManager.getTextOpacityValue();
+        double textRotation = parameterManager.getTextRotationValue();
+        boolean shadow = parameterManager.isShadowEnabled();
+        double shadowBlur = parameterManager.getShadowBlurValue();
+        boolean stroke = parameterManager.isStrokeEnabled();
+        boolean autoContrast = parameterManager.isAutoContrastEnabled();
+        boolean textTiling = parameterManager.isTextTilingEnabled();
+        
+        // 准备图片水印参数
+        float imageScale = parameterManager.getImageScaleValue();
+        float imageOpacity = parameterManager.getImageOpacityValue();
+        double imageRotation = parameterManager.getImageRotationValue();
+        boolean imageTiling = parameterManager.isImageTilingEnabled();
+        
+        // 转换JavaFX颜色为AWT颜色
+        java.awt.Color awtColor = new java.awt.Color(
+                (float) color.getRed(),
+                (float) color.getGreen(),
+                (float) color.getBlue(),
+                textOpacity
+        );
+        
+        // 文本水印（如果有）
+        if (hasTextWatermark) {
+            specs.add(watermarkService.createTextWatermarkSpec(
+                    parameterManager.getWatermarkTextValue(),
+                    awtColor,
+                    fontFamily,
+                    fontSize,
+                    parameterManager.getTextWatermarkPosition().name(),
+                    textRotation,
+                    shadow,
+                    shadowBlur,
+                    stroke,
+                    autoContrast,
+                    textTiling,
+                    parameterManager.isUseExifDate(),
+                    imageFileManager.getSelectedImageFile(),
+                    // 模板变量{index}使用图片在列表中的序号（从1开始）
+                    imageFileManager.getSelectedImageIndex() + 1
+            ));
+        }
+        
+        // 图片水印（如果有）
+        if (hasImageWatermark) {
+            specs.add(watermarkService.createImageWatermarkSpec(
+                    parameterManager.getWatermarkImageFile(),
+                    imageScale,
+                    imageOpacity,
+                    parameterManager.getImageWatermarkPosition().name(),
+                    imageRotation,
+                    imageTiling,
+                    imageFileManager.getSelectedImageFile()
+            ));
+        }
+        
+        return specs;
+    }
+    
+    /**
+     * 按指定的渲染质量重新合成当前图片（导出时使用FINAL），目标图像类型根据输出格式选择；
+     * 没有选中图片或没有水印内容时返回null
+     */
+    public BufferedImage renderWatermarkedImage(RenderQuality quality, String formatName) throws IOException {
+        if (!imageFileManager.hasSelectedImage()) {
+            return null;
+        }
+        
+        List<WatermarkSpec> specs = buildWatermarkSpecs();
+        if (specs.isEmpty()) {
+            return null;
+        }
+        return watermarkService.applyWatermarks(imageFileManager.getOriginalImage(), specs, formatName, quality);
+    }
+    
+    /**
+     * 按缩放百分比重新合成当前图片：原图先缩放到输出尺寸，水印的字号、缩放比例和边距同比调整后
+     * 在输出分辨率上绘制；返回的图像从缓冲池取得。没有选中图片或没有水印内容时返回null
+     */
+    public BufferedImage renderWatermarkedImage(RenderQuality quality, String formatName, int scalePercentage) 
+            throws IOException {
+        if (!imageFileManager.hasSelectedImage()) {
+            return null;
+        }
+        
+        List<WatermarkSpec> specs = buildWatermarkSpecs();
+        if (specs.isEmpty()) {
+            return null;
+        }
+        BufferedImage originalImage = imageFileManager.getOriginalImage();
+        int width = Math.max(1, (int) (originalImage.getWidth() * scalePercentage / 100.0));
+        int height = Math.max(1, (int) (originalImage.getHeight() * scalePercentage / 100.0));
+        return watermarkService.applyWatermarks(originalImage, specs, width, height, formatName, quality);
+    }
+    
     /**
      * 检查水印参数是否有效
      */
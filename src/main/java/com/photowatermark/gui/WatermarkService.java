@@ -1,23 +1,84 @@
 package com.photowatermark.gui;
 
 import com.photowatermark.CustomPositionImageFile;
+import com.photowatermark.ImageWatermarkSpec;
+import com.photowatermark.IncrementalWatermarkRenderer;
+import com.photowatermark.TemplateContext;
+import com.photowatermark.TextTemplate;
+import com.photowatermark.TextWatermarkSpec;
+import com.photowatermark.WatermarkAsset;
+import com.photowatermark.WatermarkAssetCache;
 import com.photowatermark.WatermarkProcessor;
+import com.photowatermark.WatermarkSpec;
 import com.photowatermark.Position;
+import com.photowatermark.RenderQuality;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import javax.imageio.ImageIO;
+import java.util.Collections;
+import java.util.List;
 import java.awt.Color;
 
 /**
  * 水印服务类，处理水印相关的核心业务逻辑
  */
 public class WatermarkService {
+    // 使用EXIF日期时的水印文本
+    private static final TextTemplate EXIF_DATE_TEMPLATE = TextTemplate.compile("{date}");
+    
+    // 预览和导出串行渲染，不占用公共线程池
     private final WatermarkProcessor processor;
+    // 水印图片缓存：同一文件未修改时只解码一次，缩放/旋转结果也随之复用
+    private final WatermarkAssetCache assetCache;
+    // 预览渲染器：调整参数时只重绘水印新旧位置所在的区域
+    private final IncrementalWatermarkRenderer previewRenderer;
+    // 最近一次编译的水印文本及其模板（无效时为null）和错误原因，文本不变时直接复用
+    private String textTemplatePattern;
+    private TextTemplate textTemplate;
+    private String textTemplateError;
 
     public WatermarkService() {
-        this.processor = new WatermarkProcessor();
+        this.processor = new WatermarkProcessor(false);
+        this.assetCache = new WatermarkAssetCache();
+        this.previewRenderer = processor.createIncrementalRenderer();
+    }
+
+    /**
+     * 获取水印图片缓存
+     */
+    public WatermarkAssetCache getAssetCache() {
+        return assetCache;
+    }
+
+    /**
+     * 一次性合成多个水印，原图只拷贝一次
+     */
+    public BufferedImage applyWatermarks(BufferedImage originalImage, List<? extends WatermarkSpec> specs) {
+        return processor.applyWatermarks(originalImage, specs);
+    }
+
+    /**
+     * 按指定的渲染质量一次性合成所有水印，目标图像类型根据输出格式选择
+     */
+    public BufferedImage applyWatermarks(BufferedImage originalImage, List<? extends WatermarkSpec> specs, 
+                                        String formatName, RenderQuality quality) {
+        return processor.applyWatermarks(originalImage, specs, formatName, quality);
+    }
+
+    /**
+     * 按输出尺寸合成：先缩放原图，再在输出分辨率上绘制按比例缩放的水印；返回的图像从缓冲池取得
+     */
+    public BufferedImage applyWatermarks(BufferedImage originalImage, List<? extends WatermarkSpec> specs, 
+                                        int width, int height, String formatName, RenderQuality quality) {
+        return processor.applyWatermarks(originalImage, specs, width, height, formatName, quality);
+    }
+
+    /**
+     * 渲染预览图像（增量更新、草稿质量，返回的图像会在下次预览时被复用，不要修改）
+     */
+    public BufferedImage renderPreview(BufferedImage originalImage, List<? extends WatermarkSpec> specs) {
+        return previewRenderer.render(originalImage, specs, RenderQuality.DRAFT);
     }
 
     /**
@@ -28,110 +89,153 @@ public class WatermarkService {
                                           int fontSize, String position, double rotation, 
                                           boolean shadow, boolean stroke, boolean tiling, 
                                           boolean useExifDate, ImageFile imageFile) throws IOException {
-        // 处理日期水印
-        String watermarkText = text;
-        if (useExifDate && imageFile != null) {
-            try {
-                String dateStr = com.photowatermark.ExifExtractor.extractDateTime(imageFile.getFile());
-                if (dateStr != null) {
-                    watermarkText = dateStr;
-                }
-            } catch (Exception e) {
-                // 如果日期提取失败，使用默认文本
-            }
+        TextWatermarkSpec spec = createTextWatermarkSpec(text, color, fontFamily, fontSize, position, 
+                rotation, shadow, stroke, tiling, useExifDate, imageFile);
+        return processor.applyWatermarks(baseImage, Collections.singletonList(spec));
+    }
+
+    /**
+     * 应用图片水印
+     */
+    public BufferedImage applyImageWatermark(BufferedImage baseImage, File watermarkImageFile, 
+                                          float scale, float opacity, String position, 
+                                          double rotation, boolean tiling, ImageFile imageFile) throws IOException {
+        ImageWatermarkSpec spec = createImageWatermarkSpec(watermarkImageFile, scale, opacity, position, 
+                rotation, tiling, imageFile);
+        return processor.applyWatermarks(baseImage, Collections.singletonList(spec));
+    }
+
+    /**
+     * 创建文本水印参数（处理EXIF日期和自定义位置），图片序号按1计算
+     */
+    public TextWatermarkSpec createTextWatermarkSpec(String text, java.awt.Color color, String fontFamily, 
+                                                   int fontSize, String position, double rotation, 
+                                                   boolean shadow, boolean stroke, boolean tiling, 
+                                                   boolean useExifDate, ImageFile imageFile) {
+        return createTextWatermarkSpec(text, color, fontFamily, fontSize, position, rotation, 
+                shadow, stroke, tiling, useExifDate, imageFile, 1);
+    }
+
+    /**
+     * 创建文本水印参数（处理EXIF日期、文本模板和自定义位置）；
+     * 文本中的模板变量（如{date:yyyy.MM.dd}、{camera}、{index}、{filename}）按图片求值，index为图片序号
+     */
+    public TextWatermarkSpec createTextWatermarkSpec(String text, java.awt.Color color, String fontFamily, 
+                                                   int fontSize, String position, double rotation, 
+                                                   boolean shadow, boolean stroke, boolean tiling, 
+                                                   boolean useExifDate, ImageFile imageFile, int index) {
+        return createTextWatermarkSpec(text, color, fontFamily, fontSize, position, rotation, 
+                shadow, 0, stroke, false, tiling, useExifDate, imageFile, index);
+    }
+
+    /**
+     * 创建文本水印参数，shadowBlur为阴影模糊程度（像素，0为硬边阴影），
+     * autoContrast为true时绘制前按水印下方的背景亮度调整颜色。
+     * 文本不是有效的模板时按原文绘制，错误原因见getTextTemplateError
+     */
+    public TextWatermarkSpec createTextWatermarkSpec(String text, java.awt.Color color, String fontFamily, 
+                                                   int fontSize, String position, double rotation, 
+                                                   boolean shadow, double shadowBlur, boolean stroke, 
+                                                   boolean autoContrast, boolean tiling, boolean useExifDate, 
+                                                   ImageFile imageFile, int index) {
+        // 处理日期水印和模板变量
+        List<String> segments = Collections.singletonList(text);
+        TextTemplate template = useExifDate ? EXIF_DATE_TEMPLATE : getTextTemplate(text);
+        if (template != null && imageFile != null) {
+            // 求值不会失败：元数据读取失败时退回文件修改时间，日期格式已在编译时校验
+            segments = template.evaluateSegments(new TemplateContext(imageFile.getMetadata(), index));
         }
         
         // 如果是自定义位置，需要获取自定义坐标
-        if (position.equals(Position.CUSTOM.name())) {
+        double customX = 0.5; // 默认中心位置
+        double customY = 0.5;
+        if (position.equals(Position.CUSTOM.name()) && imageFile instanceof CustomPositionImageFile) {
             // 从ImageFile中获取自定义坐标
-            double customX = 0.5; // 默认中心位置
-            double customY = 0.5;
-            if (imageFile instanceof CustomPositionImageFile) {
-                CustomPositionImageFile customFile = (CustomPositionImageFile) imageFile;
-                customX = customFile.getCustomTextWatermarkX();
-                customY = customFile.getCustomTextWatermarkY();
-            }
-            
-            // 调用支持自定义位置的处理器方法
-            return processor.addTextWatermark(
-                    baseImage,
-                    watermarkText,
-                    color,
-                    fontFamily,
-                    fontSize,
-                    position,
-                    rotation,
-                    shadow,
-                    stroke,
-                    tiling,
-                    customX,
-                    customY
-            );
+            CustomPositionImageFile customFile = (CustomPositionImageFile) imageFile;
+            customX = customFile.getCustomTextWatermarkX();
+            customY = customFile.getCustomTextWatermarkY();
         }
         
-        // 调用处理器添加文本水印
-        return processor.addTextWatermark(
-                baseImage,
-                watermarkText,
+        return new TextWatermarkSpec(
+                text,
                 color,
                 fontFamily,
                 fontSize,
-                position,
+                Position.valueOf(position),
                 rotation,
                 shadow,
                 stroke,
-                tiling
-        );
+                tiling,
+                customX,
+                customY,
+                shadowBlur
+        ).withAutoContrast(autoContrast).withText(segments);
     }
 
     /**
-     * 应用图片水印
+     * 编译水印文本中的模板变量；文本没有变量或不是有效的模板时返回null，按原文绘制
      */
-    public BufferedImage applyImageWatermark(BufferedImage baseImage, File watermarkImageFile, 
-                                          float scale, float opacity, String position, 
-                                          double rotation, boolean tiling, ImageFile imageFile) throws IOException {
-        if (watermarkImageFile == null || !watermarkImageFile.exists()) {
-            throw new IOException("水印图片不存在");
+    private synchronized TextTemplate getTextTemplate(String text) {
+        if (text == null || text.indexOf('{') < 0) {
+            return null;
         }
-        
-        BufferedImage watermarkImg = ImageIO.read(watermarkImageFile);
+        compileTextTemplate(text);
+        return textTemplate != null && !textTemplate.isConstant() ? textTemplate : null;
+    }
+
+    /**
+     * 水印文本作为模板无效的原因（如变量未知、花括号未闭合），有效或没有变量时返回null
+     */
+    public synchronized String getTextTemplateError(String text) {
+        if (text == null || text.indexOf('{') < 0) {
+            return null;
+        }
+        compileTextTemplate(text);
+        return textTemplateError;
+    }
+
+    private void compileTextTemplate(String text) {
+        if (text.equals(textTemplatePattern)) {
+            return;
+        }
+        textTemplatePattern = text;
+        try {
+            textTemplate = TextTemplate.compile(text);
+            textTemplateError = null;
+        } catch (IllegalArgumentException e) {
+            textTemplate = null;
+            textTemplateError = e.getMessage();
+        }
+    }
+
+    /**
+     * 创建图片水印参数（读取水印图片并处理自定义位置）
+     */
+    public ImageWatermarkSpec createImageWatermarkSpec(File watermarkImageFile, float scale, float opacity, 
+                                                     String position, double rotation, boolean tiling, 
+                                                     ImageFile imageFile) throws IOException {
+        // 从缓存获取已解码的水印图片（文件不存在时抛出IOException）
+        WatermarkAsset watermarkAsset = assetCache.get(watermarkImageFile);
         
         // 如果是自定义位置，需要获取自定义坐标
-        if (position.equals(Position.CUSTOM.name())) {
-            // 默认使用中心位置
-            double customX = 0.5;
-            double customY = 0.5;
-            
+        double customX = 0.5; // 默认中心位置
+        double customY = 0.5;
+        if (position.equals(Position.CUSTOM.name()) && imageFile instanceof CustomPositionImageFile) {
             // 从ImageFile中获取自定义坐标
-            if (imageFile instanceof CustomPositionImageFile) {
-                CustomPositionImageFile customFile = (CustomPositionImageFile) imageFile;
-                customX = customFile.getCustomImageWatermarkX();
-                customY = customFile.getCustomImageWatermarkY();
-            }
-            
-            // 调用支持自定义位置的处理器方法
-            return processor.addImageWatermark(
-                    baseImage,
-                    watermarkImg,
-                    scale,
-                    opacity,
-                    position,
-                    rotation,
-                    tiling,
-                    customX,
-                    customY
-            );
+            CustomPositionImageFile customFile = (CustomPositionImageFile) imageFile;
+            customX = customFile.getCustomImageWatermarkX();
+            customY = customFile.getCustomImageWatermarkY();
         }
         
-        // 调用处理器添加图片水印
-        return processor.addImageWatermark(
-                baseImage,
-                watermarkImg,
+        return new ImageWatermarkSpec(
+                watermarkAsset,
                 scale,
                 opacity,
-                position,
+                Position.valueOf(position),
                 rotation,
-                tiling
+                tiling,
+                customX,
+                customY
         );
     }
 
@@ -149,9 +253,9 @@ public class WatermarkService {
         // 获取图片水印参数
         boolean hasImageWatermark = !isTextWatermark && watermarkImageFile != null && watermarkImageFile.exists();
         
-        BufferedImage watermarkImg = null;
+        WatermarkAsset watermarkAsset = null;
         if (hasImageWatermark) {
-            watermarkImg = ImageIO.read(watermarkImageFile);
+            watermarkAsset = assetCache.get(watermarkImageFile);
         }
         
         // 根据情况应用不同类型的水印
@@ -171,15 +275,17 @@ public class WatermarkService {
             );
         } else if (hasImageWatermark) {
             // 仅应用图片水印
-            return processor.addImageWatermark(
-                    originalImage,
-                    watermarkImg,
+            ImageWatermarkSpec spec = new ImageWatermarkSpec(
+                    watermarkAsset,
                     1.0f,    // 默认缩放为1.0
                     opacity,
-                    position,
+                    Position.valueOf(position),
                     rotation,
-                    tiling
+                    tiling,
+                    0.5,
+                    0.5
             );
+            return processor.applyWatermarks(originalImage, Collections.singletonList(spec));
         }
         
         return null;
@@ -199,10 +305,7 @@ public class WatermarkService {
             // 处理日期水印
             String watermarkText = text;
             if (useExifDate) {
-                String dateStr = com.photowatermark.ExifExtractor.extractDateTime(imageFile.getFile());
-                if (dateStr != null) {
-                    watermarkText = dateStr;
-                }
+                watermarkText = EXIF_DATE_TEMPLATE.evaluate(new TemplateContext(imageFile.getMetadata(), 1));
             }
             
             return processor.addTextWatermark(
@@ -219,21 +322,17 @@ public class WatermarkService {
             );
         } else {
             // 图片水印
-            if (watermarkImageFile == null || !watermarkImageFile.exists()) {
-                throw new IOException("水印图片不存在");
-            }
-            
-            BufferedImage watermarkImg = ImageIO.read(watermarkImageFile);
-            
-            return processor.addImageWatermark(
-                    original,
-                    watermarkImg,
+            ImageWatermarkSpec spec = new ImageWatermarkSpec(
+                    assetCache.get(watermarkImageFile),
                     1.0f,    // 默认缩放为1.0
                     opacity,
-                    position,
+                    Position.valueOf(position),
                     rotation,
-                    tiling
+                    tiling,
+                    0.5,
+                    0.5
             );
+            return processor.applyWatermarks(original, Collections.singletonList(spec));
         }
     }
 }
\ No newline at end of file
@@ -25,7 +25,11 @@ public class WatermarkTemplate implements Serializable {
     private float textOpacity;
     private double textRotation;
     private boolean isShadowEnabled;
+    // 旧模板中没有该字段，反序列化后为0（硬边阴影）
+    private double shadowBlur;
     private boolean isStrokeEnabled;
+    // 旧模板中没有该字段，反序列化后为false
+    private boolean isAutoContrastEnabled;
     private boolean isUseExifDate;
     private boolean isTextTilingEnabled;
     
@@ -70,7 +74,9 @@ public class WatermarkTemplate implements Serializable {
         this.textOpacity = parameterManager.getTextOpacityValue();
         this.textRotation = parameterManager.getTextRotationValue();
         this.isShadowEnabled = parameterManager.isShadowEnabled();
+        this.shadowBlur = parameterManager.getShadowBlurValue();
         this.isStrokeEnabled = parameterManager.isStrokeEnabled();
+        this.isAutoContrastEnabled = parameterManager.isAutoContrastEnabled();
         this.isUseExifDate = parameterManager.isUseExifDate();
         this.isTextTilingEnabled = parameterManager.isTextTilingEnabled();
         
@@ -117,7 +123,9 @@ public class WatermarkTemplate implements Serializable {
         parameterManager.getTextOpacity().setValue(this.textOpacity);
         parameterManager.getTextRotation().setValue(this.textRotation);
         parameterManager.getEnableShadow().setSelected(this.isShadowEnabled);
+        parameterManager.getShadowBlur().setValue(this.shadowBlur);
         parameterManager.getEnableStroke().setSelected(this.isStrokeEnabled);
+        parameterManager.getAutoContrast().setSelected(this.isAutoContrastEnabled);
         parameterManager.getUseExifDate().setSelected(this.isUseExifDate);
         parameterManager.getEnableTextTiling().setSelected(this.isTextTilingEnabled);
         
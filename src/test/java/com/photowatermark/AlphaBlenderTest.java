@@ -0,0 +1,101 @@
+package com.photowatermark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import org.junit.jupiter.api.Test;
+
+class AlphaBlenderTest {
+
+    private static final int[] TARGET_TYPES = {
+            BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR};
+
+    @Test
+    void fullOpacityMatchesDrawImage() {
+        WatermarkAsset.Variant variant = WatermarkAsset.of(TestImages.createLogo(120, 80)).getVariant(1.0f, 0);
+        for (int targetType : TARGET_TYPES) {
+            // 水印部分超出图像边界
+            for (int[] position : new int[][] {{40, 30}, {-30, -20}, {250, 170}}) {
+                BufferedImage expected = drawWithJava2D(variant, targetType, position[0], position[1], 1.0f);
+                BufferedImage actual = blend(variant, targetType, position[0], position[1], 1.0f);
+                assertEquals(0, TestImages.countDifferentPixels(expected, actual),
+                        "imageType=" + targetType + ", x=" + position[0] + ", y=" + position[1]);
+            }
+        }
+    }
+
+    @Test
+    void extraAlphaWithinRoundingOfDrawImage() {
+        WatermarkAsset.Variant variant = WatermarkAsset.of(TestImages.createLogo(120, 80)).getVariant(0.75f, 20);
+        for (int targetType : TARGET_TYPES) {
+            for (float opacity : new float[] {0.1f, 0.35f, 0.5f, 0.9f}) {
+                BufferedImage expected = drawWithJava2D(variant, targetType, 60, 45, opacity);
+                BufferedImage actual = blend(variant, targetType, 60, 45, opacity);
+                assertTrue(TestImages.maxChannelDifference(expected, actual) <= 3,
+                        "imageType=" + targetType + ", opacity=" + opacity);
+            }
+        }
+    }
+
+    @Test
+    void honorsTranslationAndClip() {
+        WatermarkAsset.Variant variant = WatermarkAsset.of(TestImages.createLogo(120, 80)).getVariant(1.0f, 0);
+        BufferedImage expected = TestImages.createPhoto(300, 200, BufferedImage.TYPE_INT_RGB);
+        BufferedImage actual = TestImages.createPhoto(300, 200, BufferedImage.TYPE_INT_RGB);
+
+        Graphics2D reference = expected.createGraphics();
+        reference.translate(0, 50);
+        reference.clipRect(0, 0, 300, 50);
+        reference.drawImage(variant.getImage(), 90, 10, null);
+        reference.dispose();
+
+        Graphics2D g2d = actual.createGraphics();
+        g2d.translate(0, 50);
+        g2d.clipRect(0, 0, 300, 50);
+        assertTrue(AlphaBlender.blend(actual, g2d, variant.getBlendSource(), 90, 10, 1.0f));
+        g2d.dispose();
+
+        assertEquals(0, TestImages.countDifferentPixels(expected, actual));
+    }
+
+    @Test
+    void rejectsUnsupportedState() {
+        WatermarkAsset.Variant variant = WatermarkAsset.of(TestImages.createLogo(60, 40)).getVariant(1.0f, 0);
+        BufferedImage target = TestImages.createPhoto(100, 100, BufferedImage.TYPE_INT_RGB);
+        BufferedImage untouched = TestImages.createPhoto(100, 100, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = target.createGraphics();
+        g2d.scale(1.5, 1.5);
+        assertFalse(AlphaBlender.blend(target, g2d, variant.getBlendSource(), 10, 10, 1.0f));
+        g2d.dispose();
+
+        BufferedImage gray = new BufferedImage(100, 100, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D grayGraphics = gray.createGraphics();
+        assertFalse(AlphaBlender.blend(gray, grayGraphics, variant.getBlendSource(), 10, 10, 1.0f));
+        grayGraphics.dispose();
+
+        assertEquals(0, TestImages.countDifferentPixels(untouched, target));
+    }
+
+    private static BufferedImage drawWithJava2D(
+            WatermarkAsset.Variant variant, int targetType, int x, int y, float opacity) {
+        BufferedImage image = TestImages.createPhoto(300, 200, targetType);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
+        g2d.drawImage(variant.getImage(), x, y, null);
+        g2d.dispose();
+        return image;
+    }
+
+    private static BufferedImage blend(WatermarkAsset.Variant variant, int targetType, int x, int y, float opacity) {
+        BufferedImage image = TestImages.createPhoto(300, 200, targetType);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
+        assertTrue(AlphaBlender.blend(image, g2d, variant.getBlendSource(), x, y, opacity));
+        g2d.dispose();
+        return image;
+    }
+}
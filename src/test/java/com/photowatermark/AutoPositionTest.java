@@ -0,0 +1,76 @@
+package com.photowatermark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+
+class AutoPositionTest {
+
+    /**
+     * 细节丰富的照片，只有左上角是平坦的纯色
+     */
+    private static BufferedImage createPhotoWithQuietCorner() {
+        BufferedImage image = TestImages.createPhoto(600, 400, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        for (int x = 0; x < image.getWidth(); x += 6) {
+            g2d.setColor(x % 12 == 0 ? Color.BLACK : Color.WHITE);
+            g2d.fillRect(x, 0, 3, image.getHeight());
+        }
+        g2d.setColor(new Color(90, 120, 150));
+        g2d.fillRect(0, 0, 220, 140);
+        g2d.dispose();
+        return image;
+    }
+
+    @Test
+    void addImageWatermarkResolvesAuto() {
+        BufferedImage original = createPhotoWithQuietCorner();
+        BufferedImage logo = TestImages.createLogo(80, 60);
+        ImageWatermarkProcessor processor = new ImageWatermarkProcessor();
+
+        BufferedImage auto = processor.addImageWatermark(original, logo, 1.0f, 0.8f, "AUTO", 0, false);
+        BufferedImage topLeft = processor.addImageWatermark(original, logo, 1.0f, 0.8f, "TOP_LEFT", 0, false);
+        BufferedImage bottomRight = processor.addImageWatermark(original, logo, 1.0f, 0.8f, "BOTTOM_RIGHT", 0, false);
+
+        assertEquals(0, TestImages.countDifferentPixels(topLeft, auto));
+        assertTrue(TestImages.countDifferentPixels(bottomRight, auto) > 0);
+    }
+
+    @Test
+    void addTextWatermarkResolvesAuto() {
+        BufferedImage original = createPhotoWithQuietCorner();
+        TextWatermarkProcessor processor = new TextWatermarkProcessor();
+
+        BufferedImage auto = processor.addTextWatermark(
+                original, "SAMPLE", Color.WHITE, "SansSerif", 32, "AUTO", 0, false, false, false);
+        BufferedImage topLeft = processor.addTextWatermark(
+                original, "SAMPLE", Color.WHITE, "SansSerif", 32, "TOP_LEFT", 0, false, false, false);
+
+        assertEquals(0, TestImages.countDifferentPixels(topLeft, auto));
+    }
+
+    @Test
+    void unresolvedAutoIsRejected() {
+        TextWatermarkProcessor processor = new TextWatermarkProcessor();
+        assertThrows(IllegalArgumentException.class,
+                () -> processor.calculateTextPosition(600, 400, 100, 30, 6, Position.AUTO, 0.5, 0.5, 20));
+
+        WatermarkCompositor compositor = new WatermarkCompositor();
+        BufferedImage image = createPhotoWithQuietCorner();
+        Graphics2D g2d = image.createGraphics();
+        ImageWatermarkSpec spec = new ImageWatermarkSpec(
+                TestImages.createLogo(80, 60), 1.0f, 0.8f, Position.AUTO, 0, false, 0.5, 0.5);
+        try {
+            assertThrows(IllegalArgumentException.class, () -> compositor.drawWatermarks(
+                    g2d, image.getWidth(), image.getHeight(), Collections.singletonList(spec)));
+        } finally {
+            g2d.dispose();
+        }
+    }
+}
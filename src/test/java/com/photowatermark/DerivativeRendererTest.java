@@ -0,0 +1,34 @@
+package com.photowatermark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import org.junit.jupiter.api.Test;
+
+class DerivativeRendererTest {
+
+    @Test
+    void offHeapDownscaleMatchesOnHeap() {
+        for (boolean alpha : new boolean[] {false, true}) {
+            BufferedImage original = TestImages.createPhoto(1200, 900,
+                    alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            BufferedImage offHeap = OffHeapImages.copyOf(original);
+            assertTrue(OffHeapImages.isOffHeap(offHeap));
+
+            for (RenderQuality quality : RenderQuality.values()) {
+                BufferedImage expected = DerivativeRenderer.downscale(
+                        original, 300, 225, quality, new ImageBufferPool(0));
+
+                ImageBufferPool pool = new ImageBufferPool(ImageBufferPool.DEFAULT_MAX_BYTES);
+                BufferedImage actual = DerivativeRenderer.downscale(offHeap, 300, 225, quality, pool);
+
+                String message = "alpha=" + alpha + ", quality=" + quality;
+                assertEquals(expected.getType(), actual.getType(), message);
+                assertEquals(0, TestImages.countDifferentPixels(expected, actual), message);
+                // 堆内副本和中间一步用完后都已归还
+                assertEquals(2, pool.getPooledCount(), message);
+            }
+        }
+    }
+}
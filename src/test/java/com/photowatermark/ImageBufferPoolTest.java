@@ -0,0 +1,164 @@
+package com.photowatermark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ImageBufferPoolTest {
+
+    @Test
+    void reusesReleasedBuffer() {
+        ImageBufferPool pool = new ImageBufferPool(ImageBufferPool.DEFAULT_MAX_BYTES);
+        BufferedImage first = pool.acquire(640, 480, BufferedImage.TYPE_INT_RGB);
+        pool.release(first);
+        // 重复归还被忽略
+        pool.release(first);
+        assertEquals(1, pool.getPooledCount());
+
+        assertSame(first, pool.acquire(640, 480, BufferedImage.TYPE_INT_RGB));
+        // 尺寸或类型不同时不复用
+        pool.release(first);
+        assertNotSame(first, pool.acquire(640, 480, BufferedImage.TYPE_3BYTE_BGR));
+        assertNotSame(first, pool.acquire(480, 640, BufferedImage.TYPE_INT_RGB));
+
+        assertEquals(1, pool.getHitCount());
+        assertEquals(3, pool.getMissCount());
+        assertEquals(2, pool.getReleaseCount());
+        assertEquals(1, pool.getPooledCount());
+    }
+
+    @Test
+    void discardsLeastRecentlyUsedOverLimit() {
+        BufferedImage probe = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
+        // 只能容纳两个缓冲区
+        ImageBufferPool pool = new ImageBufferPool(ImageBufferPool.sizeOf(probe) * 2);
+        BufferedImage a = pool.acquire(100, 100, BufferedImage.TYPE_INT_RGB);
+        BufferedImage b = pool.acquire(100, 100, BufferedImage.TYPE_INT_ARGB);
+        BufferedImage c = pool.acquire(100, 100, BufferedImage.TYPE_INT_ARGB_PRE);
+        pool.release(a);
+        pool.release(b);
+        pool.release(c);
+
+        assertEquals(2, pool.getPooledCount());
+        assertEquals(1, pool.getDiscardCount());
+        assertNotSame(a, pool.acquire(100, 100, BufferedImage.TYPE_INT_RGB));
+        assertSame(c, pool.acquire(100, 100, BufferedImage.TYPE_INT_ARGB_PRE));
+    }
+
+    @Test
+    void compositeOverwritesReusedBuffer() {
+        BufferedImage original = TestImages.createPhoto(800, 600, BufferedImage.TYPE_INT_ARGB);
+        WatermarkAsset logo = WatermarkAsset.of(TestImages.createLogo(160, 100));
+        List<WatermarkSpec> specs = Arrays.asList(
+                new ImageWatermarkSpec(logo, 1.0f, 0.5f, Position.CENTER, 15, false, 0.5, 0.5),
+                new TextWatermarkSpec("Sample", new Color(255, 255, 255, 160), "SansSerif", 48,
+                        Position.BOTTOM_RIGHT, 0, true, false, false));
+        WatermarkCompositor compositor = new WatermarkCompositor();
+
+        for (RenderQuality quality : RenderQuality.values()) {
+            BufferedImage expected = new BufferedImage(800, 600, BufferedImage.TYPE_INT_ARGB);
+            compositor.composite(original, expected, specs, quality);
+
+            // 上一次使用留下的不透明内容不能透过透明和半透明区域
+            BufferedImage reused = dirtyBuffer(800, 600, BufferedImage.TYPE_INT_ARGB);
+            compositor.composite(original, reused, specs, quality);
+
+            assertEquals(0, TestImages.countDifferentPixels(expected, reused), "quality=" + quality);
+        }
+    }
+
+    @Test
+    void downscaleOverwritesReusedBuffers() {
+        BufferedImage original = TestImages.createPhoto(1000, 750, BufferedImage.TYPE_INT_ARGB);
+
+        for (RenderQuality quality : RenderQuality.values()) {
+            BufferedImage expected = DerivativeRenderer.downscale(original, 240, 180, quality, new ImageBufferPool(0));
+
+            // 每一步的缓冲区都从放入脏缓冲区的池中取得
+            ImageBufferPool pool = new ImageBufferPool(ImageBufferPool.DEFAULT_MAX_BYTES);
+            pool.release(dirtyBuffer(500, 375, BufferedImage.TYPE_INT_ARGB));
+            pool.release(dirtyBuffer(250, 188, BufferedImage.TYPE_INT_ARGB));
+            pool.release(dirtyBuffer(240, 180, BufferedImage.TYPE_INT_ARGB));
+            BufferedImage actual = DerivativeRenderer.downscale(original, 240, 180, quality, pool);
+
+            assertEquals(3, pool.getHitCount(), "quality=" + quality);
+            assertEquals(0, TestImages.countDifferentPixels(expected, actual), "quality=" + quality);
+        }
+    }
+
+    @Test
+    void decodeOverwritesReusedBuffer(@TempDir Path tempDir) throws Exception {
+        BufferedImage photo = TestImages.createPhoto(320, 240, BufferedImage.TYPE_INT_ARGB);
+        File file = tempDir.resolve("photo.png").toFile();
+        ImageIO.write(photo, "png", file);
+        BufferedImage expected = ImageIO.read(file);
+
+        ImageBufferPool pool = new ImageBufferPool(ImageBufferPool.DEFAULT_MAX_BYTES);
+        BufferedImage dirty = dirtyBuffer(320, 240, expected.getType());
+        pool.release(dirty);
+        BufferedImage decoded = FileUtils.readImage(file, pool);
+
+        assertSame(dirty, decoded);
+        assertEquals(0, TestImages.countDifferentPixels(expected, decoded));
+    }
+
+    @Test
+    void decodesPalettePngWithFilePalette(@TempDir Path tempDir) throws Exception {
+        // 与默认颜色表不同的调色板：1位和8位各一张
+        byte[] reds = {(byte) 255, 0, 0, (byte) 200};
+        byte[] greens = {0, (byte) 255, 0, (byte) 100};
+        byte[] blues = {0, 0, (byte) 255, 50};
+        BufferedImage binary = new BufferedImage(64, 48, BufferedImage.TYPE_BYTE_BINARY,
+                new IndexColorModel(1, 2, reds, greens, blues));
+        BufferedImage indexed = new BufferedImage(64, 48, BufferedImage.TYPE_BYTE_INDEXED,
+                new IndexColorModel(8, 4, reds, greens, blues));
+        for (BufferedImage image : new BufferedImage[] {binary, indexed}) {
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    image.getRaster().setSample(x, y, 0, (x / 8 + y / 8) % ((IndexColorModel) image.getColorModel()).getMapSize());
+                }
+            }
+        }
+
+        ImageBufferPool pool = new ImageBufferPool(ImageBufferPool.DEFAULT_MAX_BYTES);
+        for (BufferedImage image : new BufferedImage[] {binary, indexed}) {
+            File file = tempDir.resolve("palette" + image.getType() + ".png").toFile();
+            ImageIO.write(image, "png", file);
+
+            // 同类型的调色板缓冲区不会被放入池中，解码时也不从池中取
+            pool.release(new BufferedImage(64, 48, image.getType()));
+            BufferedImage decoded = FileUtils.readImage(file, pool);
+            assertEquals(0, TestImages.countDifferentPixels(image, decoded), "type=" + image.getType());
+            pool.release(decoded);
+        }
+        assertEquals(0, pool.getPooledCount());
+        assertEquals(0, pool.getHitCount() + pool.getMissCount());
+        assertThrows(IllegalArgumentException.class,
+                () -> pool.acquire(64, 48, BufferedImage.TYPE_BYTE_INDEXED));
+    }
+
+    /**
+     * 模拟归还前留下内容的缓冲区：不透明的纯色
+     */
+    private static BufferedImage dirtyBuffer(int width, int height, int imageType) {
+        BufferedImage image = new BufferedImage(width, height, imageType);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(Color.MAGENTA);
+        g2d.fillRect(0, 0, width, height);
+        g2d.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,37 @@
+package com.photowatermark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OffHeapImagesTest {
+
+    @Test
+    void mappedCopyKeepsPixelsWithoutTempFiles(@TempDir Path tempDir) throws Exception {
+        File directory = tempDir.toFile();
+        for (boolean alpha : new boolean[] {false, true}) {
+            BufferedImage original = TestImages.createPhoto(640, 480,
+                    alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            BufferedImage mapped = OffHeapImages.copyOfMapped(original, directory);
+            assertTrue(OffHeapImages.isOffHeap(mapped));
+
+            // 临时文件在映射后删除（或在图像回收时解除映射后删除），映射本身仍然可用
+            BufferedImage copy = new BufferedImage(640, 480, original.getType());
+            Graphics2D g2d = copy.createGraphics();
+            g2d.setComposite(AlphaComposite.Src);
+            OffHeapImages.draw(g2d, mapped);
+            g2d.dispose();
+
+            String message = "alpha=" + alpha;
+            assertEquals(0, TestImages.countDifferentPixels(original, copy), message);
+            assertEquals(0, directory.list().length, message);
+        }
+    }
+}
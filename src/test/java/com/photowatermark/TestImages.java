@@ -0,0 +1,124 @@
+package com.photowatermark;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * 测试用图片 - 生成带渐变和细节的测试图片，并逐像素比较两张图片
+ */
+final class TestImages {
+
+    private TestImages() {
+    }
+
+    /**
+     * 模拟照片：对角渐变加上交叉的抗锯齿线条（保证有边缘细节）
+     */
+    static BufferedImage createPhoto(int width, int height, int imageType) {
+        BufferedImage image = new BufferedImage(width, height, imageType);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setPaint(new GradientPaint(0, 0, new Color(240, 180, 60), width, height, new Color(30, 60, 160)));
+        g2d.fillRect(0, 0, width, height);
+        g2d.setColor(new Color(255, 255, 255, 180));
+        g2d.setStroke(new BasicStroke(3f));
+        for (int i = 0; i < width; i += 37) {
+            g2d.drawLine(i, 0, width - i, height);
+        }
+        g2d.dispose();
+        return image;
+    }
+
+    /**
+     * 带透明边缘和半透明区域的水印图片
+     */
+    static BufferedImage createLogo(int width, int height) {
+        BufferedImage logo = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = logo.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setColor(new Color(200, 30, 30, 255));
+        g2d.fillOval(width / 8, height / 8, width * 3 / 4, height * 3 / 4);
+        g2d.setColor(new Color(255, 255, 255, 120));
+        g2d.fillRect(width / 4, height / 3, width / 2, height / 3);
+        g2d.dispose();
+        return logo;
+    }
+
+    /**
+     * 两张同尺寸图片中ARGB值不同的像素数
+     */
+    static long countDifferentPixels(BufferedImage expected, BufferedImage actual) {
+        if (expected.getWidth() != actual.getWidth() || expected.getHeight() != actual.getHeight()) {
+            throw new IllegalArgumentException("图片尺寸不一致");
+        }
+        long count = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 两张同尺寸图片中任一通道（含透明通道）差值超过tolerance的像素数
+     */
+    static long countDifferentPixels(BufferedImage expected, BufferedImage actual, int tolerance) {
+        long count = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int p = expected.getRGB(x, y);
+                int q = actual.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    if (Math.abs(((p >>> shift) & 0xff) - ((q >>> shift) & 0xff)) > tolerance) {
+                        count++;
+                        break;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 两张同尺寸图片各通道（含透明通道）的最大差值
+     */
+    static int maxChannelDifference(BufferedImage expected, BufferedImage actual) {
+        int max = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int p = expected.getRGB(x, y);
+                int q = actual.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    max = Math.max(max, Math.abs(((p >>> shift) & 0xff) - ((q >>> shift) & 0xff)));
+                }
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 两张同尺寸图片在指定范围内各颜色通道差值的平均值
+     */
+    static double meanChannelDifference(BufferedImage expected, BufferedImage actual, Rectangle bounds) {
+        Rectangle area = bounds.intersection(new Rectangle(0, 0, expected.getWidth(), expected.getHeight()));
+        long total = 0;
+        for (int y = area.y; y < area.y + area.height; y++) {
+            for (int x = area.x; x < area.x + area.width; x++) {
+                int p = expected.getRGB(x, y);
+                int q = actual.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    total += Math.abs(((p >>> shift) & 0xff) - ((q >>> shift) & 0xff));
+                }
+            }
+        }
+        return total / (3.0 * Math.max(1, (long) area.width * area.height));
+    }
+}
@@ -0,0 +1,65 @@
+package com.photowatermark;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import org.junit.jupiter.api.Test;
+
+class TextWatermarkProcessorTest {
+
+    // 两种栅格化方式在图章范围内允许的平均通道差（0-255）
+    private static final double MAX_MEAN_DIFFERENCE = 12.0;
+    // 抗锯齿时明显不同（通道差超过64）的像素占图章面积的上限；不抗锯齿时边缘像素的取舍本来就不稳定，不做要求
+    private static final double MAX_STRONG_DIFFERENCE_RATIO = 0.01;
+
+    @Test
+    void distanceFieldMatchesOutline() {
+        TextWatermarkProcessor processor = new TextWatermarkProcessor();
+        for (RenderQuality quality : RenderQuality.values()) {
+            for (int fontSize : new int[] {12, 24, 48, 96, 128}) {
+                for (double rotation : new double[] {0, 30}) {
+                    TextWatermarkSpec spec = new TextWatermarkSpec("Photo Studio 2024", new Color(255, 255, 255, 220),
+                            "SansSerif", fontSize, Position.CENTER, rotation, true, true, false);
+                    TextStamp outlineStamp = processor.renderTextStamp(spec, quality, false);
+                    TextStamp fieldStamp = processor.renderTextStamp(spec, quality, true);
+
+                    // 两个图章按锚点对齐画到同一背景上比较
+                    Rectangle bounds = placement(outlineStamp).union(placement(fieldStamp));
+                    BufferedImage outline = onBackground(outlineStamp, bounds);
+                    BufferedImage field = onBackground(fieldStamp, bounds);
+
+                    String message = quality + ", size=" + fontSize + ", rotation=" + rotation;
+                    double mean = TestImages.meanChannelDifference(outline, field,
+                            new Rectangle(0, 0, bounds.width, bounds.height));
+                    assertTrue(mean < MAX_MEAN_DIFFERENCE, message + ": " + mean);
+                    if (quality.isAntialiasing()) {
+                        long strong = TestImages.countDifferentPixels(outline, field, 64);
+                        double ratio = strong / (double) (bounds.width * bounds.height);
+                        assertTrue(ratio < MAX_STRONG_DIFFERENCE_RATIO, message + ": " + ratio);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 图章相对于锚点的范围
+     */
+    private static Rectangle placement(TextStamp stamp) {
+        return new Rectangle(-stamp.getAnchorX(), -stamp.getAnchorY(),
+                stamp.getImage().getWidth(), stamp.getImage().getHeight());
+    }
+
+    private static BufferedImage onBackground(TextStamp stamp, Rectangle bounds) {
+        BufferedImage canvas = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = canvas.createGraphics();
+        g2d.setColor(Color.GRAY);
+        g2d.fillRect(0, 0, bounds.width, bounds.height);
+        g2d.drawImage(stamp.getImage(), -stamp.getAnchorX() - bounds.x, -stamp.getAnchorY() - bounds.y, null);
+        g2d.dispose();
+        return canvas;
+    }
+}
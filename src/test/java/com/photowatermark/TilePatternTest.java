@@ -0,0 +1,61 @@
+package com.photowatermark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import org.junit.jupiter.api.Test;
+
+class TilePatternTest {
+
+    @Test
+    void fillMatchesDrawingEveryTile() {
+        int tileWidth = 80;
+        int tileHeight = 60;
+        BufferedImage unit = TestImages.createLogo(50, 30);
+        // 单元越过图块的右边和下边，需要环绕到对侧
+        Rectangle unitBounds = new Rectangle(50, 40, unit.getWidth(), unit.getHeight());
+        int originX = -tileWidth;
+        int originY = -tileHeight;
+
+        for (int imageType : new int[] {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR}) {
+            BufferedImage expected = TestImages.createPhoto(400, 300, imageType);
+            Graphics2D reference = expected.createGraphics();
+            for (int tileX = originX - tileWidth; tileX < expected.getWidth(); tileX += tileWidth) {
+                for (int tileY = originY - tileHeight; tileY < expected.getHeight(); tileY += tileHeight) {
+                    reference.drawImage(unit, tileX + unitBounds.x, tileY + unitBounds.y, null);
+                }
+            }
+            reference.dispose();
+
+            BufferedImage cell = TilePattern.createTileCell(tileWidth, tileHeight, unitBounds, null,
+                    g -> g.drawImage(unit, unitBounds.x, unitBounds.y, null));
+            BufferedImage actual = TestImages.createPhoto(400, 300, imageType);
+            Graphics2D g2d = actual.createGraphics();
+            TilePattern.fill(g2d, cell, originX, originY, actual.getWidth(), actual.getHeight());
+            g2d.dispose();
+
+            assertEquals(0, TestImages.countDifferentPixels(expected, actual), "imageType=" + imageType);
+        }
+    }
+
+    @Test
+    void fillRespectsClip() {
+        BufferedImage unit = TestImages.createLogo(40, 40);
+        Rectangle unitBounds = new Rectangle(10, 10, unit.getWidth(), unit.getHeight());
+        BufferedImage cell = TilePattern.createTileCell(60, 60, unitBounds, null,
+                g -> g.drawImage(unit, unitBounds.x, unitBounds.y, null));
+
+        BufferedImage original = TestImages.createPhoto(300, 200, BufferedImage.TYPE_INT_RGB);
+        BufferedImage image = TestImages.createPhoto(300, 200, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.clipRect(0, 100, 300, 100);
+        TilePattern.fill(g2d, cell, 0, 0, image.getWidth(), image.getHeight());
+        g2d.dispose();
+
+        // 裁剪区域之外的行保持不变
+        assertEquals(0, TestImages.countDifferentPixels(
+                original.getSubimage(0, 0, 300, 100), image.getSubimage(0, 0, 300, 100)));
+    }
+}
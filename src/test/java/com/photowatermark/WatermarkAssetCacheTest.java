@@ -0,0 +1,89 @@
+package com.photowatermark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Path;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WatermarkAssetCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void reusesDecodedAsset() throws Exception {
+        File file = writeLogo("logo.png", 64, 64);
+        WatermarkAssetCache cache = new WatermarkAssetCache();
+
+        WatermarkAsset first = cache.get(file);
+        assertSame(first, cache.get(file));
+        assertEquals(1, cache.getLoadCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void variantGrowthCountsAgainstLimit() throws Exception {
+        File small = writeLogo("small.png", 64, 64);
+        File large = writeLogo("large.png", 128, 128);
+        WatermarkAsset probe = WatermarkAsset.of(TestImages.createLogo(128, 128));
+        // 两个资源刚解码时都能放下
+        long limit = probe.getSizeInBytes() * 2;
+        WatermarkAssetCache cache = new WatermarkAssetCache(limit);
+
+        cache.get(small);
+        WatermarkAsset asset = cache.get(large);
+        assertEquals(2, cache.size());
+
+        // 变体和平铺图块使占用超过限制后，最久未使用的资源被淘汰
+        for (int i = 1; i <= 4; i++) {
+            asset.getVariant(2.0f, 15 * i, RenderQuality.BALANCED).getBlendSource();
+            asset.getTileCell(2.0f, 15 * i, 0.5f, RenderQuality.BALANCED);
+        }
+        assertEquals(1, cache.size());
+        assertSame(asset, cache.get(large));
+        assertTrue(cache.getSizeInBytes() >= asset.getSizeInBytes());
+    }
+
+    @Test
+    void specsFromSameImageShareAsset() {
+        BufferedImage logo = TestImages.createLogo(160, 100);
+        ImageWatermarkSpec first = new ImageWatermarkSpec(logo, 0.5f, 0.8f, Position.CENTER, 15, false);
+        ImageWatermarkSpec second = new ImageWatermarkSpec(logo, 0.5f, 0.8f, Position.CENTER, 15, false);
+
+        // 同一张图片共用资源（及其变体缓存），参数相同的水印相等
+        assertSame(first.getWatermarkAsset(), second.getWatermarkAsset());
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+
+        // 内容相同的另一张图片是不同的水印
+        ImageWatermarkSpec copy = new ImageWatermarkSpec(TestImages.createLogo(160, 100), 0.5f, 0.8f,
+                Position.CENTER, 15, false);
+        assertNotSame(first.getWatermarkAsset(), copy.getWatermarkAsset());
+        assertNotEquals(first, copy);
+
+        // 图层换成由同一张图片重新创建的相同参数时不重新栅格化
+        WatermarkLayerStack stack = new WatermarkLayerStack(new WatermarkCompositor());
+        WatermarkLayerStack.Layer layer = stack.addLayer(first);
+        BufferedImage photo = TestImages.createPhoto(640, 480, BufferedImage.TYPE_INT_RGB);
+        stack.render(photo, RenderQuality.BALANCED);
+        long rasterized = stack.getRasterizeCount();
+        stack.setSpec(layer, second);
+        stack.render(photo, RenderQuality.BALANCED);
+        assertEquals(rasterized, stack.getRasterizeCount());
+    }
+
+    private File writeLogo(String name, int width, int height) throws Exception {
+        File file = tempDir.resolve(name).toFile();
+        BufferedImage logo = TestImages.createLogo(width, height);
+        ImageIO.write(logo, "png", file);
+        return file;
+    }
+}
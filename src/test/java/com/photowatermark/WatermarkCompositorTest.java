@@ -0,0 +1,82 @@
+package com.photowatermark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class WatermarkCompositorTest {
+
+    private static ForkJoinPool renderPool;
+
+    @BeforeAll
+    static void createPool() {
+        // 固定并行度，单核机器上同样会切分条带
+        renderPool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void shutdownPool() {
+        renderPool.shutdown();
+    }
+
+    @Test
+    void bandParallelMatchesSerial() {
+        // 超过并行渲染的像素阈值
+        BufferedImage original = TestImages.createPhoto(2400, 1800, BufferedImage.TYPE_INT_RGB);
+        assertTrue((long) original.getWidth() * original.getHeight() >= WatermarkCompositor.PARALLEL_MIN_PIXELS);
+
+        WatermarkAsset logo = WatermarkAsset.of(TestImages.createLogo(300, 200));
+        List<WatermarkSpec> specs = Arrays.asList(
+                new ImageWatermarkSpec(logo, 0.8f, 0.35f, Position.CENTER, 30, true, 0.5, 0.5),
+                new ImageWatermarkSpec(logo, 1.0f, 0.7f, Position.TOP_LEFT, 0, false, 0.5, 0.5),
+                new TextWatermarkSpec("© 2024 Photo", new Color(255, 255, 255, 200), "SansSerif", 96,
+                        Position.BOTTOM_RIGHT, 0, true, true, false),
+                new TextWatermarkSpec("SAMPLE", new Color(255, 0, 0, 120), "SansSerif", 64,
+                        Position.CENTER, -20, false, false, true));
+
+        for (RenderQuality quality : RenderQuality.values()) {
+            BufferedImage serial = new WatermarkCompositor().composite(original, specs, "jpg", quality);
+            BufferedImage parallel = new WatermarkCompositor(
+                    new TextWatermarkProcessor(), new ImageWatermarkProcessor(), renderPool)
+                    .composite(original, specs, "jpg", quality);
+
+            assertEquals(0, TestImages.countDifferentPixels(serial, parallel), "quality=" + quality);
+        }
+    }
+
+    @Test
+    void autoContrastSwitchesColorOnMatchingBackground() {
+        BufferedImage white = new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = white.createGraphics();
+        g2d.setColor(Color.WHITE);
+        g2d.fillRect(0, 0, white.getWidth(), white.getHeight());
+        g2d.dispose();
+
+        TextWatermarkSpec spec = new TextWatermarkSpec("SAMPLE", Color.WHITE, "SansSerif", 48,
+                Position.CENTER, 0, false, false, false);
+        WatermarkCompositor compositor = new WatermarkCompositor();
+
+        // 白底白字看不见；开启自动对比度后改用黑色
+        BufferedImage plain = compositor.composite(white, Collections.singletonList(spec), "png", RenderQuality.FINAL);
+        assertEquals(0, TestImages.countDifferentPixels(white, plain));
+        BufferedImage adjusted = compositor.composite(
+                white, Collections.singletonList(spec.withAutoContrast(true)), "png", RenderQuality.FINAL);
+        assertTrue(TestImages.countDifferentPixels(white, adjusted) > 0);
+
+        TextWatermarkSpec resolved = (TextWatermarkSpec) compositor.resolveAutomatic(
+                white, Collections.singletonList(spec.withAutoContrast(true)), RenderQuality.FINAL).get(0);
+        assertEquals(Color.BLACK.getRGB(), resolved.getColor().getRGB());
+        assertFalse(resolved.isAutoContrast());
+    }
+}
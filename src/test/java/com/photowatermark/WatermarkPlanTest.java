@@ -0,0 +1,83 @@
+package com.photowatermark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+class WatermarkPlanTest {
+
+    @Test
+    void autoPositionMatchesCompositor() {
+        WatermarkAsset logo = WatermarkAsset.of(TestImages.createLogo(120, 80));
+        List<WatermarkSpec> specs = Arrays.asList(
+                new ImageWatermarkSpec(logo, 1.0f, 0.8f, Position.AUTO, 0, false, 0.5, 0.5),
+                new TextWatermarkSpec("SAMPLE", Color.WHITE, "SansSerif", 40,
+                        Position.AUTO, 0, true, false, false),
+                new TextWatermarkSpec("© 2024", Color.WHITE, "SansSerif", 24,
+                        Position.BOTTOM_LEFT, 0, false, false, false));
+        WatermarkCompositor compositor = new WatermarkCompositor();
+
+        // 两张同尺寸、平坦区域不同的图片：布局按尺寸缓存，自动位置仍按各自的内容选择
+        BufferedImage[] images = {createPhotoWithQuietRegion(0, 0), createPhotoWithQuietRegion(380, 260)};
+        for (RenderQuality quality : RenderQuality.values()) {
+            WatermarkPlan plan = WatermarkPlan.compile(compositor, specs, quality);
+            for (BufferedImage original : images) {
+                BufferedImage expected = compositor.composite(original, specs, "jpg", quality);
+                BufferedImage actual = plan.apply(original, "jpg");
+
+                assertEquals(0, TestImages.countDifferentPixels(expected, actual), "quality=" + quality);
+            }
+        }
+    }
+
+    @Test
+    void parallelCompositorRendersPlanInBands() {
+        BufferedImage original = TestImages.createPhoto(2400, 1800, BufferedImage.TYPE_INT_RGB);
+        WatermarkAsset logo = WatermarkAsset.of(TestImages.createLogo(300, 200));
+        List<WatermarkSpec> specs = Arrays.asList(
+                new ImageWatermarkSpec(logo, 0.8f, 0.35f, Position.CENTER, 30, true, 0.5, 0.5),
+                new ImageWatermarkSpec(logo, 1.0f, 0.7f, Position.AUTO, 15, false, 0.5, 0.5),
+                new TextWatermarkSpec("SAMPLE", Color.WHITE, "SansSerif", 96,
+                        Position.BOTTOM_LEFT, 0, true, true, false).withAutoContrast(true));
+
+        ForkJoinPool renderPool = new ForkJoinPool(4);
+        try {
+            WatermarkCompositor parallel = new WatermarkCompositor(
+                    new TextWatermarkProcessor(), new ImageWatermarkProcessor(), renderPool);
+            for (RenderQuality quality : RenderQuality.values()) {
+                BufferedImage serial = WatermarkPlan.compile(new WatermarkCompositor(), specs, quality)
+                        .apply(original, "jpg");
+                BufferedImage banded = WatermarkPlan.compile(parallel, specs, quality).apply(original, "jpg");
+
+                assertEquals(0, TestImages.countDifferentPixels(serial, banded), "quality=" + quality);
+            }
+            // 线程池中的工作线程只在提交了条带任务后才会创建
+            assertTrue(renderPool.getPoolSize() > 0);
+        } finally {
+            renderPool.shutdown();
+        }
+    }
+
+    /**
+     * 细节丰富的照片，只有指定位置的一块区域是平坦的纯色
+     */
+    private static BufferedImage createPhotoWithQuietRegion(int x, int y) {
+        BufferedImage image = TestImages.createPhoto(600, 400, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        for (int i = 0; i < image.getWidth(); i += 6) {
+            g2d.setColor(i % 12 == 0 ? Color.BLACK : Color.WHITE);
+            g2d.fillRect(i, 0, 3, image.getHeight());
+        }
+        g2d.setColor(new Color(90, 120, 150));
+        g2d.fillRect(x, y, 220, 140);
+        g2d.dispose();
+        return image;
+    }
+}
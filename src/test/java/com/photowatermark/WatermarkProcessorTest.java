@@ -0,0 +1,212 @@
+package com.photowatermark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WatermarkProcessorTest {
+
+    // 缩小导出与全尺寸渲染后缩小在水印范围内允许的平均通道差（0-255）
+    private static final double MAX_MEAN_DIFFERENCE = 10.0;
+
+    private static List<WatermarkSpec> createSpecs() {
+        WatermarkAsset logo = WatermarkAsset.of(TestImages.createLogo(240, 160));
+        return Arrays.asList(
+                new ImageWatermarkSpec(logo, 1.0f, 0.6f, Position.BOTTOM_RIGHT, 0, false, 0.5, 0.5),
+                new ImageWatermarkSpec(logo, 0.5f, 0.3f, Position.CENTER, 25, true, 0.5, 0.5),
+                new TextWatermarkSpec("Sample 2024", new Color(255, 255, 255, 200), "SansSerif", 64,
+                        Position.TOP_LEFT, 0, true, true, false));
+    }
+
+    @Test
+    void fullSizeExportMatchesDirectComposite() {
+        BufferedImage original = TestImages.createPhoto(1600, 1200, BufferedImage.TYPE_INT_RGB);
+        List<WatermarkSpec> specs = createSpecs();
+        WatermarkProcessor processor = new WatermarkProcessor();
+
+        for (String formatName : new String[] {"jpg", "png"}) {
+            for (RenderQuality quality : RenderQuality.values()) {
+                BufferedImage expected = processor.applyWatermarks(original, specs, formatName, quality);
+                BufferedImage actual = processor.applyWatermarks(
+                        original, specs, original.getWidth(), original.getHeight(), formatName, quality);
+
+                String message = formatName + ", quality=" + quality;
+                assertEquals(expected.getType(), actual.getType(), message);
+                assertEquals(0, TestImages.countDifferentPixels(expected, actual), message);
+            }
+        }
+    }
+
+    @Test
+    void quarterSizeExportMatchesDownscaledFullRender() {
+        BufferedImage original = TestImages.createPhoto(1600, 1200, BufferedImage.TYPE_INT_RGB);
+        List<WatermarkSpec> specs = Arrays.asList(
+                new TextWatermarkSpec("Sample 2024", new Color(255, 255, 255, 220), "SansSerif", 160,
+                        Position.CENTER, 0, true, true, false),
+                new TextWatermarkSpec("Studio", new Color(40, 40, 40, 230), "SansSerif", 128,
+                        Position.BOTTOM_RIGHT, 0, true, true, false));
+        WatermarkProcessor processor = new WatermarkProcessor();
+        WatermarkCompositor compositor = new WatermarkCompositor();
+
+        for (RenderQuality quality : new RenderQuality[] {RenderQuality.BALANCED, RenderQuality.FINAL}) {
+            // 旧方式：全尺寸合成后整体缩小
+            BufferedImage full = processor.applyWatermarks(original, specs, "png", quality);
+            BufferedImage expected = DerivativeRenderer.downscale(full, 400, 300, quality, new ImageBufferPool(0));
+            BufferedImage actual = processor.applyWatermarks(original, specs, 400, 300, "png", quality);
+
+            // 阴影和描边随字号缩放，水印范围内与整体缩小的结果只差细节锐度（不缩放时平均差约为15）
+            for (WatermarkSpec spec : specs) {
+                Rectangle bounds = compositor.getWatermarkBounds(spec.scaled(0.25), 400, 300, quality);
+                double difference = TestImages.meanChannelDifference(expected, actual, bounds);
+                assertTrue(difference < MAX_MEAN_DIFFERENCE, quality + ": " + difference);
+            }
+        }
+    }
+
+    @Test
+    void exportBatchAppliesPlanToEveryFile(@TempDir Path tempDir) throws Exception {
+        List<WatermarkSpec> specs = createSpecs();
+        WatermarkProcessor processor = new WatermarkProcessor();
+        BufferedImage first = TestImages.createPhoto(800, 600, BufferedImage.TYPE_INT_RGB);
+        BufferedImage second = TestImages.createPhoto(600, 800, BufferedImage.TYPE_INT_RGB);
+        List<File> inputFiles = Arrays.asList(writePng(tempDir, "first.png", first), writePng(tempDir, "second.png", second));
+        File outputDir = tempDir.resolve("out").toFile();
+        outputDir.mkdir();
+
+        WatermarkPlan plan = processor.compilePlan(specs, RenderQuality.FINAL);
+        List<File> outputFiles = processor.exportBatch(inputFiles, outputDir, plan, "png", 0);
+
+        assertEquals(Arrays.asList(new File(outputDir, "first.png"), new File(outputDir, "second.png")), outputFiles);
+        BufferedImage[] originals = {first, second};
+        for (int i = 0; i < originals.length; i++) {
+            BufferedImage expected = processor.applyWatermarks(originals[i], specs, "png", RenderQuality.FINAL);
+            assertEquals(0, TestImages.countDifferentPixels(expected, ImageIO.read(outputFiles.get(i))), "i=" + i);
+        }
+        // 输出到原图所在目录且格式相同时不能覆盖原图
+        assertThrows(IOException.class,
+                () -> processor.exportBatch(inputFiles, tempDir.toFile(), plan, "png", 0));
+    }
+
+    @Test
+    void streamWatermarksMatchesInMemoryComposite(@TempDir Path tempDir) throws Exception {
+        List<WatermarkSpec> specs = createSpecs();
+        WatermarkProcessor processor = new WatermarkProcessor();
+        BufferedImage original = TestImages.createPhoto(1200, 1500, BufferedImage.TYPE_INT_RGB);
+        File inputFile = writePng(tempDir, "large.png", original);
+        File outputFile = tempDir.resolve("large.tif").toFile();
+
+        processor.streamWatermarks(inputFile, outputFile, specs);
+
+        BufferedImage expected = processor.applyWatermarks(original, specs, "tif", RenderQuality.FINAL);
+        assertEquals(0, TestImages.countDifferentPixels(expected, ImageIO.read(outputFile)));
+    }
+
+    @Test
+    void exportDerivativesWritesEveryOutput(@TempDir Path tempDir) throws Exception {
+        List<WatermarkSpec> specs = createSpecs();
+        WatermarkProcessor processor = new WatermarkProcessor();
+        BufferedImage original = TestImages.createPhoto(1600, 1200, BufferedImage.TYPE_INT_RGB);
+        File inputFile = writePng(tempDir, "photo.png", original);
+        File outputDir = tempDir.resolve("out").toFile();
+        outputDir.mkdir();
+        ExportProfile profile = new ExportProfile(
+                new ExportProfile.Output("", ExportProfile.Output.ORIGINAL_SIZE, "png", 0),
+                new ExportProfile.Output("_thumb", 400, "png", 0));
+
+        List<File> outputFiles = processor.exportDerivatives(inputFile, outputDir, specs, profile);
+
+        assertEquals(Arrays.asList(new File(outputDir, "photo.png"), new File(outputDir, "photo_thumb.png")), outputFiles);
+        BufferedImage expected = processor.applyWatermarks(original, specs, "png", RenderQuality.FINAL);
+        assertEquals(0, TestImages.countDifferentPixels(expected, ImageIO.read(outputFiles.get(0))));
+        BufferedImage thumbnail = ImageIO.read(outputFiles.get(1));
+        assertEquals(400, thumbnail.getWidth());
+        assertEquals(300, thumbnail.getHeight());
+    }
+
+    @Test
+    void exportVariantsWritesOnePlanPerFile(@TempDir Path tempDir) throws Exception {
+        List<WatermarkSpec> specs = createSpecs();
+        WatermarkProcessor processor = new WatermarkProcessor();
+        BufferedImage original = TestImages.createPhoto(800, 600, BufferedImage.TYPE_INT_RGB);
+        File inputFile = writePng(tempDir, "photo.png", original);
+        List<WatermarkPlan> plans = Arrays.asList(
+                processor.compilePlan(specs, RenderQuality.FINAL),
+                processor.compilePlan(specs.subList(2, 3), RenderQuality.FINAL));
+        List<File> outputFiles = Arrays.asList(
+                tempDir.resolve("photo_a.png").toFile(), tempDir.resolve("photo_b.png").toFile());
+
+        processor.exportVariants(inputFile, plans, outputFiles, "png", 0);
+
+        for (int i = 0; i < plans.size(); i++) {
+            BufferedImage expected = processor.applyWatermarks(
+                    original, plans.get(i).getSpecs(), "png", RenderQuality.FINAL);
+            assertEquals(0, TestImages.countDifferentPixels(expected, ImageIO.read(outputFiles.get(i))), "i=" + i);
+        }
+    }
+
+    @Test
+    void layerStackMatchesDirectComposite() {
+        List<WatermarkSpec> specs = createSpecs();
+        WatermarkProcessor processor = new WatermarkProcessor();
+        BufferedImage original = TestImages.createPhoto(800, 600, BufferedImage.TYPE_INT_RGB);
+        WatermarkLayerStack stack = processor.createLayerStack();
+        for (WatermarkSpec spec : specs) {
+            stack.addLayer(spec);
+        }
+
+        for (RenderQuality quality : RenderQuality.values()) {
+            BufferedImage expected = processor.applyWatermarks(original, specs, null, quality);
+            BufferedImage actual = stack.render(original, quality);
+            assertEquals(0, TestImages.countDifferentPixels(expected, actual), "quality=" + quality);
+        }
+        // 单个图层的参数变化时只重新生成该图层
+        long rasterized = stack.getRasterizeCount();
+        stack.setSpec(stack.getLayers().get(2), specs.get(2).withPosition(Position.BOTTOM_LEFT));
+        stack.render(original, RenderQuality.FINAL);
+        assertEquals(rasterized + 1, stack.getRasterizeCount());
+    }
+
+    @Test
+    void scaledExportKeepsRelativePlacement() {
+        List<WatermarkSpec> specs = createSpecs();
+        WatermarkCompositor compositor = new WatermarkCompositor();
+
+        for (WatermarkSpec spec : specs) {
+            WatermarkSpec half = spec.scaled(0.5);
+            assertEquals(WatermarkSpec.DEFAULT_MARGIN / 2, half.getMargin());
+
+            // 半尺寸输出中水印的中心是全尺寸的一半；旋转后的水印图带有不随比例缩放的几像素留白，尺寸只近似一半
+            Rectangle full = compositor.getWatermarkBounds(spec, 1600, 1200, RenderQuality.FINAL);
+            Rectangle scaled = compositor.getWatermarkBounds(half, 800, 600, RenderQuality.FINAL);
+            if (full == null) {
+                // 平铺水印覆盖整张图片，没有单一的范围
+                assertNull(scaled);
+                continue;
+            }
+            String message = full + " / " + scaled;
+            assertTrue(Math.abs(full.getCenterX() / 2 - scaled.getCenterX()) <= 1, message);
+            assertTrue(Math.abs(full.getCenterY() / 2 - scaled.getCenterY()) <= 1, message);
+            assertTrue(Math.abs(full.width / 2.0 - scaled.width) <= 4, message);
+            assertTrue(Math.abs(full.height / 2.0 - scaled.height) <= 4, message);
+        }
+    }
+
+    private static File writePng(Path directory, String name, BufferedImage image) throws IOException {
+        File file = directory.resolve(name).toFile();
+        ImageIO.write(image, "png", file);
+        return file;
+    }
+}
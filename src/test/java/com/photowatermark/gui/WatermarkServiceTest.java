@@ -0,0 +1,80 @@
+package com.photowatermark.gui;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.photowatermark.ExifExtractor;
+import com.photowatermark.Position;
+import com.photowatermark.TextWatermarkSpec;
+import java.awt.Color;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WatermarkServiceTest {
+
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void evaluatesTemplatePerImage() throws Exception {
+        ImageFile imageFile = new ImageFile(createFile("IMG_0042.jpg"));
+        TextWatermarkSpec spec = new WatermarkService().createTextWatermarkSpec("{filename} #{index:3}", Color.WHITE,
+                "SansSerif", 24, Position.BOTTOM_RIGHT.name(), 0, false, false, false, false, imageFile, 7);
+
+        assertEquals("IMG_0042 #007", spec.getText());
+    }
+
+    @Test
+    void reportsInvalidTemplate() throws Exception {
+        ImageFile imageFile = new ImageFile(createFile("photo.jpg"));
+        WatermarkService service = new WatermarkService();
+
+        // 拍摄时间没有时区，格式中的时区字段无效；按原文绘制并给出原因
+        String text = "{date:yyyy z}";
+        TextWatermarkSpec spec = service.createTextWatermarkSpec(text, Color.WHITE, "SansSerif", 24,
+                Position.BOTTOM_RIGHT.name(), 0, false, false, false, false, imageFile, 1);
+        assertEquals(text, spec.getText());
+        assertNotNull(service.getTextTemplateError(text));
+
+        assertNull(service.getTextTemplateError("{filename}"));
+        assertNull(service.getTextTemplateError("plain text"));
+    }
+
+    @Test
+    void reusesMetadataUntilFileChanges() throws Exception {
+        File file = createFile("scan.jpg");
+        file.setLastModified(1_600_000_000_000L);
+        ImageFile imageFile = new ImageFile(file);
+        WatermarkService service = new WatermarkService();
+        String text = "{date:yyyy-MM-dd HH:mm:ss}";
+
+        // 没有EXIF时使用文件修改时间；多次刷新预览共用一次读取结果
+        String first = service.createTextWatermarkSpec(text, Color.WHITE, "SansSerif", 24,
+                Position.BOTTOM_RIGHT.name(), 0, false, false, false, false, imageFile, 1).getText();
+        LocalDateTime loaded = imageFile.getMetadata().getDateTime();
+        service.createTextWatermarkSpec(text, Color.WHITE, "SansSerif", 24,
+                Position.BOTTOM_RIGHT.name(), 0, false, false, false, false, imageFile, 1);
+        assertSame(loaded, imageFile.getMetadata().getDateTime());
+
+        // 文件被修改后重新读取
+        file.setLastModified(1_700_000_000_000L);
+        String second = service.createTextWatermarkSpec(text, Color.WHITE, "SansSerif", 24,
+                Position.BOTTOM_RIGHT.name(), 0, false, false, false, false, imageFile, 1).getText();
+        assertNotEquals(first, second);
+        assertEquals(FORMAT.format(ExifExtractor.getFileLastModifiedDateTime(file)), second);
+    }
+
+    private File createFile(String name) throws Exception {
+        return Files.write(tempDir.resolve(name), new byte[] {1, 2, 3}).toFile();
+    }
+}